@@ -0,0 +1,51 @@
+package com.kc.uiwatch.benchmark;
+
+import com.kc.uiwatch.LogExecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 单次采样的处理开销: 堆栈转换为帧id、去重合并、入队
+ * 对应 LogExecutor.startCollectionLogTask,即采样线程每个采样间隔执行一次的路径
+ */
+@State(Scope.Thread)
+public class CollectionBenchmark {
+
+    private static final String[] KEY_WORDS = {"com.kc.demo.feature1", "com.kc.demo.feature7"};
+
+    @Param({"30", "60", "120"})
+    public int depth;
+
+    @Param({"0.0", "0.5", "0.9"})
+    public double repeatRatio;
+
+    /**
+     * 是否开启关键词筛选,匹配结果按帧缓存
+     */
+    @Param({"false", "true"})
+    public boolean keyWords;
+
+    private StackTraceElement[][] sequence;
+    private LogExecutor executor;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        sequence = new StackFixtures(depth, repeatRatio).sequence;
+        executor = LogExecutor.getInstance();
+        executor.setNeedCacheToFile(false);
+        executor.setPrintLog(false);
+        executor.setKeyWords(keyWords ? KEY_WORDS : null);
+        executor.setCacheDataSize(10, 30);
+        executor.discardCollectedLog();
+    }
+
+    @Benchmark
+    public void collectStack() {
+        executor.collectStack(sequence[index++ & (StackFixtures.SEQUENCE_SIZE - 1)]);
+    }
+}
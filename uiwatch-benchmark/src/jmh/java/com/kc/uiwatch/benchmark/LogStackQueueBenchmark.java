@@ -0,0 +1,50 @@
+package com.kc.uiwatch.benchmark;
+
+import com.kc.uiwatch.FrameTable;
+import com.kc.uiwatch.LogStackQueue;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 堆栈队列的入队(含按签名合并重复堆栈)、裁剪和计数
+ */
+@State(Scope.Thread)
+public class LogStackQueueBenchmark {
+
+    @Param({"30", "60", "120"})
+    public int depth;
+
+    @Param({"0.0", "0.5", "0.9"})
+    public double repeatRatio;
+
+    @Param({"10"})
+    public int cacheDataSize;
+
+    private int[][] frameIds;
+    private LogStackQueue queue;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        StackTraceElement[][] sequence = new StackFixtures(depth, repeatRatio).sequence;
+        FrameTable frameTable = new FrameTable();
+        frameIds = new int[sequence.length][];
+        for (int i = 0; i < sequence.length; i++) {
+            frameIds[i] = new int[sequence[i].length];
+            frameTable.encode(sequence[i], frameIds[i]);
+        }
+        queue = new LogStackQueue(cacheDataSize + 1);
+    }
+
+    @Benchmark
+    public int addAndSize() {
+        int[] ids = frameIds[index++ & (StackFixtures.SEQUENCE_SIZE - 1)];
+        queue.add(ids, ids.length);
+        queue.trim(cacheDataSize);
+        return queue.size();
+    }
+}
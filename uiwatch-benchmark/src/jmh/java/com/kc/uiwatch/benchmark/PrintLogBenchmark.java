@@ -0,0 +1,36 @@
+package com.kc.uiwatch.benchmark;
+
+import com.kc.uiwatch.LogUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 长日志按logcat长度上限分段输出的开销,android.util.Log 为不输出的桩代码
+ */
+@State(Scope.Thread)
+public class PrintLogBenchmark {
+
+    @Param({"1000", "8000", "32000"})
+    public int length;
+
+    private String message;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder(length);
+        while (builder.length() < length) {
+            builder.append("com.kc.demo.feature1.Component7.method42(Component7.java:62)\n");
+        }
+        builder.setLength(length);
+        message = builder.toString();
+    }
+
+    @Benchmark
+    public void printLog() {
+        LogUtils.printLog("UiWatcher", message);
+    }
+}
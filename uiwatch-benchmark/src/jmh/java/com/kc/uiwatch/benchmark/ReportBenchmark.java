@@ -0,0 +1,65 @@
+package com.kc.uiwatch.benchmark;
+
+import com.kc.uiwatch.LogExecutor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 一次卡顿的输出开销,对应 LogExecutor.startOutputLogTask
+ * 每次操作先采集cacheDataSize个样本再输出, {@link #collectOnly()} 为只采集的基线,两者之差即输出的开销
+ */
+@State(Scope.Thread)
+public class ReportBenchmark {
+
+    @Param({"60"})
+    public int depth;
+
+    @Param({"0.5"})
+    public double repeatRatio;
+
+    @Param({"10"})
+    public int cacheDataSize;
+
+    /**
+     * false时不打印也不保存文本,只生成结构化的BlockEvent
+     */
+    @Param({"true", "false"})
+    public boolean printLog;
+
+    private StackTraceElement[][] sequence;
+    private LogExecutor executor;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        sequence = new StackFixtures(depth, repeatRatio).sequence;
+        executor = LogExecutor.getInstance();
+        executor.setNeedCacheToFile(false);
+        executor.setPrintLog(printLog);
+        executor.setKeyWords(null);
+        executor.setCacheDataSize(cacheDataSize, 30);
+        executor.discardCollectedLog();
+    }
+
+    @Benchmark
+    public void collectAndOutput() {
+        collect();
+        executor.outputBlock(cacheDataSize * 30);
+    }
+
+    @Benchmark
+    public void collectOnly() {
+        collect();
+        executor.discardCollectedLog();
+    }
+
+    private void collect() {
+        for (int i = 0; i < cacheDataSize; i++) {
+            executor.collectStack(sequence[index++ & (StackFixtures.SEQUENCE_SIZE - 1)]);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.kc.uiwatch.benchmark;
+
+import java.util.Random;
+
+/**
+ * 模拟主线程堆栈
+ * 栈底为固定的框架调用(ZygoteInit、ActivityThread、Looper等),栈顶为应用代码,
+ * 按重复比例生成采样序列:重复时与上一次采样相同,否则从不同的堆栈中随机选取
+ */
+class StackFixtures {
+
+    private static final String[] FRAMEWORK_FRAMES = {
+            "com.android.internal.os.ZygoteInit#main",
+            "com.android.internal.os.RuntimeInit$MethodAndArgsCaller#run",
+            "java.lang.reflect.Method#invoke",
+            "android.app.ActivityThread#main",
+            "android.os.Looper#loop",
+            "android.os.Handler#dispatchMessage",
+            "android.view.Choreographer$FrameDisplayEventReceiver#run",
+            "android.view.Choreographer#doFrame",
+            "android.view.Choreographer#doCallbacks",
+            "android.view.ViewRootImpl$TraversalRunnable#run",
+            "android.view.ViewRootImpl#doTraversal",
+            "android.view.ViewRootImpl#performTraversals",
+            "android.view.ViewRootImpl#performMeasure",
+            "android.view.View#measure",
+            "android.widget.FrameLayout#onMeasure",
+            "android.view.ViewGroup#measureChildWithMargins",
+            "android.widget.LinearLayout#onMeasure",
+            "android.widget.LinearLayout#measureVertical",
+    };
+
+    /**
+     * 采样序列长度,必须为2的幂
+     */
+    static final int SEQUENCE_SIZE = 1024;
+
+    /**
+     * 不同堆栈的数量
+     */
+    private static final int DISTINCT_STACKS = 64;
+
+    /**
+     * 应用代码中不同方法的数量
+     */
+    private static final int APP_METHODS = 400;
+
+    /**
+     * 按顺序使用的采样
+     */
+    final StackTraceElement[][] sequence = new StackTraceElement[SEQUENCE_SIZE][];
+
+    /**
+     * @param depth       堆栈深度
+     * @param repeatRatio 与上一次采样相同的比例
+     */
+    StackFixtures(int depth, double repeatRatio) {
+        Random random = new Random(42);
+        StackTraceElement[][] distinct = new StackTraceElement[DISTINCT_STACKS][];
+        for (int i = 0; i < DISTINCT_STACKS; i++) {
+            distinct[i] = createStack(random, depth);
+        }
+        StackTraceElement[] previous = distinct[0];
+        for (int i = 0; i < SEQUENCE_SIZE; i++) {
+            if (i == 0 || random.nextDouble() >= repeatRatio) {
+                previous = distinct[random.nextInt(DISTINCT_STACKS)];
+            }
+            sequence[i] = previous;
+        }
+    }
+
+    /**
+     * 生成栈顶在前的堆栈,每次都创建新的StackTraceElement,与Thread.getStackTrace()一致
+     */
+    private static StackTraceElement[] createStack(Random random, int depth) {
+        StackTraceElement[] stack = new StackTraceElement[depth];
+        int frameworkCount = Math.min(FRAMEWORK_FRAMES.length, depth / 2);
+        for (int i = 0; i < frameworkCount; i++) {
+            String[] frame = FRAMEWORK_FRAMES[i].split("#");
+            stack[depth - 1 - i] = new StackTraceElement(frame[0], frame[1],
+                    simpleName(frame[0]) + ".java", 100 + i * 7);
+        }
+        for (int i = frameworkCount; i < depth; i++) {
+            int method = random.nextInt(APP_METHODS);
+            String className = "com.kc.demo.feature" + (method % 12) + ".Component" + (method % 40);
+            stack[depth - 1 - i] = new StackTraceElement(className, "method" + method,
+                    "Component" + (method % 40) + ".java", 20 + method);
+        }
+        return stack;
+    }
+
+    private static String simpleName(String className) {
+        String name = className.substring(className.lastIndexOf('.') + 1);
+        int inner = name.indexOf('$');
+        return inner < 0 ? name : name.substring(0, inner);
+    }
+}
@@ -0,0 +1,44 @@
+package com.kc.uiwatch.benchmark;
+
+import com.kc.uiwatch.TimeUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * 卡顿日志时间戳的格式化,与每次新建Date并用SimpleDateFormat格式化的方式对比
+ */
+@State(Scope.Thread)
+public class TimeFormatBenchmark {
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+    private final StringBuilder builder = new StringBuilder(64);
+    private long timeMillis;
+
+    @Setup
+    public void setUp() {
+        timeMillis = System.currentTimeMillis();
+    }
+
+    @Benchmark
+    public int appendFormatTime() {
+        builder.setLength(0);
+        TimeUtils.appendFormatTime(builder, timeMillis++);
+        return builder.length();
+    }
+
+    @Benchmark
+    public String getFormatTime() {
+        return TimeUtils.getFormatTime(timeMillis++);
+    }
+
+    @Benchmark
+    public String simpleDateFormat() {
+        return dateFormat.format(new Date(timeMillis++));
+    }
+}
@@ -0,0 +1,199 @@
+package com.kc.uiwatch.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 脚本化的帧时间线
+ * 由空闲帧和主线程工作段组成,每个工作段占用主线程一段时间并对应一个堆栈,
+ * 工作段结束后的下一个vsync才会回调下一帧。可从文本文件读取:
+ * <pre>
+ * # 注释
+ * idle 120                                   120个空闲帧
+ * work 8 android.os.Looper.loop;com.a.B.bind  主线程工作8ms,堆栈按 根;...;栈顶 书写
+ * </pre>
+ */
+public class FrameTimeline {
+
+    /**
+     * 帧间隔
+     */
+    public static final long FRAME_INTERVAL_NANOS = 16666667;
+
+    /**
+     * 时间线开始的时间,帧回调把0视为未开始
+     */
+    static final long START_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 主线程空闲时的堆栈
+     */
+    static final StackTraceElement[] IDLE_STACK = parseStack(
+            "com.android.internal.os.ZygoteInit.main;android.app.ActivityThread.main;"
+                    + "android.os.Looper.loop;android.os.MessageQueue.next;android.os.MessageQueue.nativePollOnce");
+
+    /**
+     * 主线程工作段
+     */
+    public static class Segment {
+        final long startNanos;
+        final long endNanos;
+        final StackTraceElement[] stack;
+
+        Segment(long startNanos, long endNanos, StackTraceElement[] stack) {
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.stack = stack;
+        }
+
+        public long getDurationMs() {
+            return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+        }
+
+        public StackTraceElement[] getStack() {
+            return stack;
+        }
+    }
+
+    private final List<Segment> segments = new ArrayList<>();
+    private long[] frameTimes = new long[256];
+    private int frameCount = 0;
+    private long nowNanos = START_NANOS;
+
+    public FrameTimeline() {
+        addFrame(nowNanos);
+    }
+
+    /**
+     * 追加空闲帧
+     */
+    public FrameTimeline idle(int frames) {
+        for (int i = 0; i < frames; i++) {
+            nowNanos += FRAME_INTERVAL_NANOS;
+            addFrame(nowNanos);
+        }
+        return this;
+    }
+
+    /**
+     * 追加主线程工作段,结束后的下一个vsync回调下一帧
+     *
+     * @param durationMs 工作时长
+     * @param stack      堆栈,栈顶在前
+     */
+    public FrameTimeline work(double durationMs, StackTraceElement[] stack) {
+        long duration = (long) (durationMs * 1000000);
+        segments.add(new Segment(nowNanos, nowNanos + duration, stack));
+        long frames = Math.max(1, (duration + FRAME_INTERVAL_NANOS - 1) / FRAME_INTERVAL_NANOS);
+        nowNanos += frames * FRAME_INTERVAL_NANOS;
+        addFrame(nowNanos);
+        return this;
+    }
+
+    /**
+     * 帧回调的时间
+     */
+    public long getFrameTime(int index) {
+        return frameTimes[index];
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * 给定时间主线程的堆栈
+     */
+    public StackTraceElement[] stackAt(long timeNanos) {
+        Segment segment = segmentAt(timeNanos);
+        return segment == null ? IDLE_STACK : segment.stack;
+    }
+
+    /**
+     * 给定时间正在执行的工作段,空闲时为null
+     */
+    Segment segmentAt(long timeNanos) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Segment segment = segments.get(mid);
+            if (timeNanos < segment.startNanos) {
+                high = mid - 1;
+            } else if (timeNanos >= segment.endNanos) {
+                low = mid + 1;
+            } else {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private void addFrame(long timeNanos) {
+        if (frameCount == frameTimes.length) {
+            long[] newTimes = new long[frameCount * 2];
+            System.arraycopy(frameTimes, 0, newTimes, 0, frameCount);
+            frameTimes = newTimes;
+        }
+        frameTimes[frameCount++] = timeNanos;
+    }
+
+    /**
+     * 读取文本格式的时间线
+     */
+    public static FrameTimeline read(File file) throws IOException {
+        FrameTimeline timeline = new FrameTimeline();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] parts = line.split("\\s+");
+                if (parts[0].equals("idle") && parts.length == 2) {
+                    timeline.idle(Integer.parseInt(parts[1]));
+                } else if (parts[0].equals("work") && parts.length == 3) {
+                    timeline.work(Double.parseDouble(parts[1]), parseStack(parts[2]));
+                } else {
+                    throw new IOException(file + ":" + lineNumber + " 无法解析: " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return timeline;
+    }
+
+    /**
+     * 解析 根;...;栈顶 格式的堆栈,每帧为 类名.方法名
+     *
+     * @return 栈顶在前的堆栈
+     */
+    public static StackTraceElement[] parseStack(String folded) {
+        String[] frames = folded.split(";");
+        StackTraceElement[] stack = new StackTraceElement[frames.length];
+        for (int i = 0; i < frames.length; i++) {
+            String frame = frames[i];
+            int dot = frame.lastIndexOf('.');
+            String className = dot < 0 ? frame : frame.substring(0, dot);
+            String methodName = dot < 0 ? "run" : frame.substring(dot + 1);
+            String simpleName = className.substring(className.lastIndexOf('.') + 1);
+            stack[frames.length - 1 - i] = new StackTraceElement(className, methodName, simpleName + ".java", i + 1);
+        }
+        return stack;
+    }
+}
@@ -0,0 +1,219 @@
+package com.kc.uiwatch.replay;
+
+import com.kc.uiwatch.BlockEvent;
+import com.kc.uiwatch.BlockEventDispatcher;
+import com.kc.uiwatch.LogExecutor;
+import com.kc.uiwatch.UiWatchFrameCallback;
+import com.kc.uiwatch.UiWatcher;
+
+import android.view.Choreographer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 帧时间线回放
+ * 按虚拟时钟把时间线中的帧交给真实的 UiWatchFrameCallback,采样由 {@link ReplaySampler} 按同样的时钟进行,
+ * 收集和输出使用真实的LogExecutor。统计卡顿的检出率、误报、采样次数和采样、输出在本机的耗时,
+ * 用于在JVM上调整 minSkipFrameTime 和采样间隔
+ * <p>
+ * 用法: ReplayHarness 时间线文件 [--minSkip=17,34] [--delay=10,30] [--watchdog=0,0.5] [--jank=50] [--cache=10]
+ * 多个取值时逐一组合回放
+ */
+public class ReplayHarness {
+
+    /**
+     * 超出该时长的工作段视为真实卡顿
+     */
+    private final int jankThresholdMs;
+    private final int cacheDataSize;
+
+    public ReplayHarness(int jankThresholdMs, int cacheDataSize) {
+        this.jankThresholdMs = jankThresholdMs;
+        this.cacheDataSize = cacheDataSize;
+    }
+
+    /**
+     * 回放一次时间线
+     *
+     * @param timeline         时间线
+     * @param minSkipFrameTime 帧率阈值
+     * @param delayMs          采样间隔
+     * @param watchdogRatio    看门狗触发比例,0为持续采样
+     */
+    public ReplayReport replay(final FrameTimeline timeline, int minSkipFrameTime, int delayMs, float watchdogRatio) {
+        final List<BlockEvent> events = new ArrayList<>();
+        final List<Long> eventTimes = new ArrayList<>();
+        final long[] outputTime = new long[1];
+
+        LogExecutor executor = LogExecutor.getInstance();
+        executor.setNeedCacheToFile(false);
+        executor.setPrintLog(false);
+        executor.setKeyWords(null);
+        executor.setStackAggregator(null);
+        executor.setFrameMetricsMonitor(null);
+        executor.setCacheDataSize(cacheDataSize, delayMs);
+        executor.discardCollectedLog();
+        //在输出线程上直接记录事件及其虚拟时间
+        executor.setEventDispatcher(new BlockEventDispatcher(1, UiWatcher.OVERFLOW_DROP_OLDEST, null, null, 1, 0) {
+            @Override
+            public boolean dispatch(BlockEvent event) {
+                events.add(event);
+                eventTimes.add(outputTime[0]);
+                return true;
+            }
+        });
+
+        ReplaySampler sampler = new ReplaySampler(timeline, executor, delayMs, new ReplaySampler.Listener() {
+            @Override
+            public void beforeOutput(long nowNanos, int skipFrameCount) {
+                outputTime[0] = nowNanos;
+            }
+        });
+        final boolean[] posted = {true};
+        UiWatchFrameCallback callback = new UiWatchFrameCallback(minSkipFrameTime, watchdogRatio);
+        callback.setSampler(sampler);
+        callback.setFrameSource(new UiWatchFrameCallback.FrameSource() {
+            @Override
+            public void postFrameCallback(Choreographer.FrameCallback frameCallback) {
+                posted[0] = true;
+            }
+        });
+        for (int i = 0; i < timeline.getFrameCount() && posted[0]; i++) {
+            long frameTime = timeline.getFrameTime(i);
+            sampler.advanceTo(frameTime);
+            posted[0] = false;
+            callback.doFrame(frameTime);
+        }
+        callback.setExit(true);
+        sampler.stopMonitor();
+        executor.setEventDispatcher(null);
+
+        ReplayReport report = new ReplayReport();
+        report.minSkipFrameTime = minSkipFrameTime;
+        report.delayMs = delayMs;
+        report.watchdogRatio = watchdogRatio;
+        report.sampleCount = sampler.sampleCount;
+        report.collectNanos = sampler.collectNanos;
+        report.outputNanos = sampler.outputNanos;
+        report.reportCount = events.size();
+        evaluate(timeline, events, eventTimes, report);
+        return report;
+    }
+
+    /**
+     * 将输出与时间线中的卡顿对应
+     * 卡顿结束后的第一帧输出的事件对应该卡顿,事件采样中包含卡顿的栈顶帧时视为检出
+     */
+    private void evaluate(FrameTimeline timeline, List<BlockEvent> events, List<Long> eventTimes, ReplayReport report) {
+        Set<FrameTimeline.Segment> detected = new HashSet<>();
+        for (FrameTimeline.Segment segment : timeline.getSegments()) {
+            if (segment.getDurationMs() > jankThresholdMs) {
+                report.groundTruthCount++;
+            }
+        }
+        for (int i = 0; i < events.size(); i++) {
+            long outputNanos = eventTimes.get(i);
+            //输出所在帧之前结束的最后一个工作段
+            FrameTimeline.Segment segment = timeline.segmentAt(outputNanos - 1);
+            if (segment == null) {
+                segment = lastSegmentEndingBefore(timeline, outputNanos);
+            }
+            if (segment == null || segment.getDurationMs() <= jankThresholdMs
+                    || outputNanos - segment.endNanos > FrameTimeline.FRAME_INTERVAL_NANOS
+                    || detected.contains(segment)) {
+                report.falsePositiveCount++;
+                continue;
+            }
+            if (containsTopFrame(events.get(i), segment.stack[0])) {
+                detected.add(segment);
+                report.detectedCount++;
+            } else {
+                report.misattributedCount++;
+            }
+        }
+    }
+
+    private static FrameTimeline.Segment lastSegmentEndingBefore(FrameTimeline timeline, long timeNanos) {
+        List<FrameTimeline.Segment> segments = timeline.getSegments();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            if (segments.get(i).endNanos <= timeNanos) {
+                return segments.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsTopFrame(BlockEvent event, StackTraceElement topFrame) {
+        for (BlockEvent.Sample sample : event.getSamples()) {
+            if (topFrame.equals(sample.getTopFrame())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("用法: ReplayHarness 时间线文件 [--minSkip=17,34] [--delay=10,30] "
+                    + "[--watchdog=0,0.5] [--jank=50] [--cache=10]");
+            System.exit(1);
+        }
+        File file = null;
+        int[] minSkips = {17};
+        int[] delays = {30};
+        float[] ratios = {0};
+        int jank = 50;
+        int cache = 10;
+        for (String arg : args) {
+            if (arg.startsWith("--minSkip=")) {
+                minSkips = parseInts(arg);
+            } else if (arg.startsWith("--delay=")) {
+                delays = parseInts(arg);
+            } else if (arg.startsWith("--watchdog=")) {
+                String[] values = value(arg).split(",");
+                ratios = new float[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    ratios[i] = Float.parseFloat(values[i]);
+                }
+            } else if (arg.startsWith("--jank=")) {
+                jank = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--cache=")) {
+                cache = Integer.parseInt(value(arg));
+            } else {
+                file = new File(arg);
+            }
+        }
+        FrameTimeline timeline = FrameTimeline.read(file);
+        ReplayHarness harness = new ReplayHarness(jank, cache);
+        System.out.println(timeline.getFrameCount() + " frames, "
+                + TimeUnit.NANOSECONDS.toMillis(timeline.getFrameTime(timeline.getFrameCount() - 1)
+                - timeline.getFrameTime(0)) + " ms, jank > " + jank + " ms");
+        System.out.println(ReplayReport.header());
+        for (int minSkip : minSkips) {
+            for (int delay : delays) {
+                for (float ratio : ratios) {
+                    System.out.println(harness.replay(timeline, minSkip, delay, ratio));
+                }
+            }
+        }
+    }
+
+    private static String value(String arg) {
+        return arg.substring(arg.indexOf('=') + 1);
+    }
+
+    private static int[] parseInts(String arg) {
+        String[] values = value(arg).split(",");
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = Integer.parseInt(values[i]);
+        }
+        return result;
+    }
+}
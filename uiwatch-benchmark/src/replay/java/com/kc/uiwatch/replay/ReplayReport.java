@@ -0,0 +1,76 @@
+package com.kc.uiwatch.replay;
+
+import java.util.Locale;
+
+/**
+ * 一次回放的检测结果
+ */
+public class ReplayReport {
+
+    /**
+     * 回放参数
+     */
+    int minSkipFrameTime;
+    int delayMs;
+    float watchdogRatio;
+
+    /**
+     * 时间线中超出卡顿阈值的工作段数量
+     */
+    int groundTruthCount;
+
+    /**
+     * 检测到且采样中包含其堆栈的卡顿
+     */
+    int detectedCount;
+
+    /**
+     * 检测到但采样中不包含其堆栈的卡顿
+     */
+    int misattributedCount;
+
+    /**
+     * 与任何卡顿都不对应的输出
+     */
+    int falsePositiveCount;
+
+    /**
+     * 输出的卡顿数量
+     */
+    int reportCount;
+
+    long sampleCount;
+    long collectNanos;
+    long outputNanos;
+
+    public double getRecall() {
+        return groundTruthCount == 0 ? 1 : (double) detectedCount / groundTruthCount;
+    }
+
+    public int getFalsePositiveCount() {
+        return falsePositiveCount;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 表头,与 {@link #toString()} 的列对应
+     */
+    public static String header() {
+        return String.format(Locale.US, "%8s %6s %8s | %6s %8s %8s %6s %6s | %8s %10s %10s",
+                "minSkip", "delay", "watchdog", "truth", "detected", "misattr", "fp", "recall",
+                "samples", "collect/us", "output/us");
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%8d %6d %8.2f | %6d %8d %8d %6d %6.2f | %8d %10.2f %10.2f",
+                minSkipFrameTime, delayMs, watchdogRatio,
+                groundTruthCount, detectedCount, misattributedCount, falsePositiveCount, getRecall(),
+                sampleCount,
+                sampleCount == 0 ? 0 : collectNanos / 1000.0 / sampleCount,
+                reportCount == 0 ? 0 : outputNanos / 1000.0 / reportCount);
+    }
+}
@@ -0,0 +1,111 @@
+package com.kc.uiwatch.replay;
+
+import com.kc.uiwatch.BlockSampler;
+import com.kc.uiwatch.LogExecutor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按虚拟时钟采样的 {@link BlockSampler}
+ * 与LogNotifier的调度方式一致:持续模式下每个采样间隔采样一次,输出后立刻重新开始;
+ * 看门狗模式下每帧重新布置,帧超时delay后才开始采样。
+ * 采样的堆栈取自时间线,收集和输出直接调用真实的LogExecutor
+ */
+class ReplaySampler implements BlockSampler {
+
+    /**
+     * 没有待执行的采样
+     */
+    private static final long NO_TICK = Long.MIN_VALUE;
+
+    private final FrameTimeline timeline;
+    private final LogExecutor executor;
+    private final long intervalNanos;
+    private final Listener listener;
+
+    private long nowNanos;
+    private long nextTickNanos = NO_TICK;
+    private boolean collectedSinceArm = false;
+
+    //------------- 统计 -------------------
+    long sampleCount = 0;
+    long collectNanos = 0;
+    long outputCount = 0;
+    long outputNanos = 0;
+
+    /**
+     * 输出卡顿时的回调,用于记录输出时的虚拟时间
+     */
+    interface Listener {
+        void beforeOutput(long nowNanos, int skipFrameCount);
+    }
+
+    ReplaySampler(FrameTimeline timeline, LogExecutor executor, int intervalMs, Listener listener) {
+        this.timeline = timeline;
+        this.executor = executor;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        this.listener = listener;
+    }
+
+    /**
+     * 执行时间早于给定时间的采样,并将时钟推进到该时间
+     */
+    void advanceTo(long timeNanos) {
+        while (nextTickNanos != NO_TICK && nextTickNanos < timeNanos) {
+            nowNanos = nextTickNanos;
+            collect();
+            nextTickNanos = nowNanos + intervalNanos;
+        }
+        nowNanos = timeNanos;
+    }
+
+    @Override
+    public void startMonitor() {
+        nextTickNanos = nowNanos;
+    }
+
+    @Override
+    public void stopMonitor() {
+        nextTickNanos = NO_TICK;
+        executor.discardCollectedLog();
+    }
+
+    @Override
+    public void pauseMonitor() {
+        stopMonitor();
+    }
+
+    @Override
+    public void startOutputAndResetCollectionMonitor(int skipFrameCount) {
+        output(skipFrameCount);
+        nextTickNanos = nowNanos;
+    }
+
+    @Override
+    public void armWatchdog(int skipFrameCount, long delay) {
+        if (skipFrameCount > 0) {
+            output(skipFrameCount);
+        } else if (collectedSinceArm) {
+            executor.discardCollectedLog();
+        }
+        collectedSinceArm = false;
+        nextTickNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    private void collect() {
+        StackTraceElement[] stack = timeline.stackAt(nowNanos);
+        long start = System.nanoTime();
+        executor.collectStack(stack);
+        collectNanos += System.nanoTime() - start;
+        sampleCount++;
+        collectedSinceArm = true;
+    }
+
+    private void output(int skipFrameCount) {
+        listener.beforeOutput(nowNanos, skipFrameCount);
+        long start = System.nanoTime();
+        executor.outputBlock(skipFrameCount);
+        outputNanos += System.nanoTime() - start;
+        outputCount++;
+    }
+}
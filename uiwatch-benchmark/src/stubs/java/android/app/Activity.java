@@ -0,0 +1,15 @@
+package android.app;
+
+import android.content.Context;
+import android.view.Window;
+
+public class Activity extends Context {
+
+    public Window getWindow() {
+        return null;
+    }
+
+    public Application getApplication() {
+        return null;
+    }
+}
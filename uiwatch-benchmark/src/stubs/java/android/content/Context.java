@@ -0,0 +1,14 @@
+package android.content;
+
+public class Context {
+
+    public static final String POWER_SERVICE = "power";
+
+    public Object getSystemService(String name) {
+        return null;
+    }
+
+    public Context getApplicationContext() {
+        return this;
+    }
+}
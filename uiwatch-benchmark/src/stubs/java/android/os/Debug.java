@@ -0,0 +1,10 @@
+package android.os;
+
+import java.lang.management.ManagementFactory;
+
+public class Debug {
+
+    public static long threadCpuTimeNanos() {
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+}
@@ -0,0 +1,10 @@
+package android.os;
+
+import java.io.File;
+
+public class Environment {
+
+    public static File getExternalStorageDirectory() {
+        return new File(System.getProperty("java.io.tmpdir"));
+    }
+}
@@ -0,0 +1,73 @@
+package android.os;
+
+/**
+ * 基准测试直接调用采样和输出方法,不经过消息队列,消息全部被丢弃
+ */
+public class Handler {
+
+    public Handler() {
+    }
+
+    public Handler(Looper looper) {
+    }
+
+    public void handleMessage(Message msg) {
+    }
+
+    public Looper getLooper() {
+        return null;
+    }
+
+    public final Message obtainMessage(int what) {
+        return Message.obtain(this, what);
+    }
+
+    public final Message obtainMessage(int what, Object obj) {
+        return Message.obtain(this, what, obj);
+    }
+
+    public boolean sendMessage(Message msg) {
+        return true;
+    }
+
+    public boolean sendMessageDelayed(Message msg, long delayMillis) {
+        return true;
+    }
+
+    public final boolean sendMessageAtTime(Message msg, long uptimeMillis) {
+        return true;
+    }
+
+    public boolean sendEmptyMessage(int what) {
+        return true;
+    }
+
+    public boolean sendEmptyMessageDelayed(int what, long delayMillis) {
+        return true;
+    }
+
+    public boolean post(Runnable r) {
+        return true;
+    }
+
+    public boolean postDelayed(Runnable r, long delayMillis) {
+        return true;
+    }
+
+    public final boolean postAtTime(Runnable r, long uptimeMillis) {
+        return true;
+    }
+
+    public void removeCallbacks(Runnable r) {
+    }
+
+    public void removeMessages(int what) {
+    }
+
+    public void removeCallbacksAndMessages(Object token) {
+    }
+
+    public boolean hasMessages(int what) {
+        return false;
+    }
+}
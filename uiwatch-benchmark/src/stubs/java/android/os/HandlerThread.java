@@ -0,0 +1,28 @@
+package android.os;
+
+public class HandlerThread extends Thread {
+
+    public HandlerThread(String name) {
+        super(name);
+    }
+
+    public HandlerThread(String name, int priority) {
+        super(name);
+    }
+
+    @Override
+    public void run() {
+    }
+
+    public Looper getLooper() {
+        return null;
+    }
+
+    public boolean quit() {
+        return true;
+    }
+
+    public boolean quitSafely() {
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package android.os;
+
+import android.util.Printer;
+
+public class Looper {
+
+    public static Looper getMainLooper() {
+        return null;
+    }
+
+    public static Looper myLooper() {
+        return null;
+    }
+
+    public static void prepare() {
+    }
+
+    public static void loop() {
+    }
+
+    public Thread getThread() {
+        return null;
+    }
+
+    public void setMessageLogging(Printer printer) {
+    }
+
+    public void quit() {
+    }
+}
@@ -0,0 +1,32 @@
+package android.os;
+
+public class Message {
+
+    public int what;
+    public int arg1;
+    public int arg2;
+    public Object obj;
+
+    public static Message obtain() {
+        return new Message();
+    }
+
+    public static Message obtain(Handler h, int what) {
+        Message message = new Message();
+        message.what = what;
+        return message;
+    }
+
+    public static Message obtain(Handler h, int what, Object obj) {
+        Message message = obtain(h, what);
+        message.obj = obj;
+        return message;
+    }
+
+    public Handler getTarget() {
+        return null;
+    }
+
+    public void recycle() {
+    }
+}
@@ -0,0 +1,12 @@
+package android.os;
+
+public class Process {
+
+    public static long getStartElapsedRealtime() {
+        return 0;
+    }
+
+    public static int myPid() {
+        return 0;
+    }
+}
@@ -0,0 +1,10 @@
+package android.os;
+
+public class Trace {
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
@@ -0,0 +1,30 @@
+package android.util;
+
+/**
+ * 不输出到logcat,只保留最后一条日志,避免日志的生成被JIT优化掉
+ */
+public class Log {
+
+    public static volatile String lastMessage;
+
+    public static int e(String tag, String msg) {
+        lastMessage = msg;
+        return msg.length();
+    }
+
+    public static int w(String tag, String msg) {
+        return e(tag, msg);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return e(tag, msg);
+    }
+
+    public static int i(String tag, String msg) {
+        return e(tag, msg);
+    }
+
+    public static int d(String tag, String msg) {
+        return e(tag, msg);
+    }
+}
@@ -0,0 +1,16 @@
+package android.view;
+
+import android.os.Handler;
+
+public class Window {
+
+    public interface OnFrameMetricsAvailableListener {
+        void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation);
+    }
+
+    public void addOnFrameMetricsAvailableListener(OnFrameMetricsAvailableListener listener, Handler handler) {
+    }
+
+    public void removeOnFrameMetricsAvailableListener(OnFrameMetricsAvailableListener listener) {
+    }
+}
@@ -0,0 +1,7 @@
+package androidx.annotation;
+
+public @interface RequiresApi {
+    int api() default 1;
+
+    int value() default 1;
+}
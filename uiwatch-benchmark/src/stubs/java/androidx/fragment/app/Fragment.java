@@ -0,0 +1,8 @@
+package androidx.fragment.app;
+
+public class Fragment {
+
+    public boolean isVisible() {
+        return false;
+    }
+}
@@ -0,0 +1,10 @@
+package androidx.fragment.app;
+
+import android.app.Activity;
+
+public class FragmentActivity extends Activity {
+
+    public FragmentManager getSupportFragmentManager() {
+        return null;
+    }
+}
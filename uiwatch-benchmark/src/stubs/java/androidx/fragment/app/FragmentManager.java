@@ -0,0 +1,19 @@
+package androidx.fragment.app;
+
+public abstract class FragmentManager {
+
+    public abstract static class FragmentLifecycleCallbacks {
+
+        public void onFragmentResumed(FragmentManager fm, Fragment f) {
+        }
+
+        public void onFragmentPaused(FragmentManager fm, Fragment f) {
+        }
+    }
+
+    public void registerFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb, boolean recursive) {
+    }
+
+    public void unregisterFragmentLifecycleCallbacks(FragmentLifecycleCallbacks cb) {
+    }
+}
@@ -0,0 +1,443 @@
+package com.kc.uiwatch;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一次卡顿的结构化数据
+ * 包含卡顿时长、时间、采样到的堆栈及次数等,创建时只保存数据,
+ * 文本和JSON在首次获取时才生成并缓存,只关心时长或栈顶帧的监听不需要承担生成文本的开销
+ */
+public class BlockEvent {
+
+    /**
+     * 卡顿时长,毫秒
+     */
+    private final int durationMs;
+
+    /**
+     * 采样延迟,毫秒
+     */
+    private final int delayMs;
+
+    /**
+     * 检测到卡顿的时间
+     */
+    private final long timeMillis;
+
+    /**
+     * 因不包含关键词被丢弃的采样次数
+     */
+    private final int filteredSampleCount;
+
+    /**
+     * 卡顿期间主线程消息的耗时,未开启时为null
+     */
+    private final MessageHistory messageHistory;
+
+    /**
+     * 卡顿期间慢帧的分阶段耗时,未开启时为null
+     */
+    private final long[][] slowFrames;
+
+    /**
+     * 采样到的堆栈,按首次出现的顺序
+     */
+    private final List<Sample> samples;
+
+    /**
+     * 卡顿的线程名称,主线程为null
+     */
+    private final String threadName;
+
+    /**
+     * 卡顿期间主线程等锁时推测的持有者
+     */
+    private final List<LockContention> contentions;
+
+    /**
+     * 卡顿时的页面,未开启页面归因时为null
+     */
+    private final String screen;
+
+    /**
+     * 分发队列溢出时合并到该事件的其他卡顿数量
+     */
+    private volatile int coalescedCount = 0;
+
+    private String text;
+    private String json;
+
+    BlockEvent(int durationMs, int delayMs, long timeMillis, int filteredSampleCount,
+               MessageHistory messageHistory, long[][] slowFrames, List<Sample> samples) {
+        this(durationMs, delayMs, timeMillis, filteredSampleCount, messageHistory, slowFrames, samples, null, null, null);
+    }
+
+    BlockEvent(int durationMs, int delayMs, long timeMillis, int filteredSampleCount,
+               MessageHistory messageHistory, long[][] slowFrames, List<Sample> samples, String threadName,
+               List<LockContention> contentions, String screen) {
+        this.durationMs = durationMs;
+        this.delayMs = delayMs;
+        this.timeMillis = timeMillis;
+        this.filteredSampleCount = filteredSampleCount;
+        this.messageHistory = messageHistory;
+        this.slowFrames = slowFrames;
+        this.samples = Collections.unmodifiableList(samples);
+        this.threadName = threadName;
+        this.contentions = contentions == null
+                ? Collections.<LockContention>emptyList() : Collections.unmodifiableList(contentions);
+        this.screen = screen;
+    }
+
+    public int getDurationMs() {
+        return durationMs;
+    }
+
+    public int getDelayMs() {
+        return delayMs;
+    }
+
+    /**
+     * 检测到卡顿的时间
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * 卡顿开始的时间
+     */
+    public long getStartTimeMillis() {
+        return timeMillis - durationMs;
+    }
+
+    /**
+     * 卡顿的线程名称,主线程返回 "main"
+     */
+    public String getThreadName() {
+        return threadName == null ? "main" : threadName;
+    }
+
+    /**
+     * 是否为主线程的卡顿
+     */
+    public boolean isMainThread() {
+        return threadName == null;
+    }
+
+    /**
+     * 卡顿时的页面(Activity 或 Activity/Fragment),未开启页面归因时为null
+     */
+    public String getScreen() {
+        return screen;
+    }
+
+    public int getFilteredSampleCount() {
+        return filteredSampleCount;
+    }
+
+    /**
+     * 卡顿期间主线程消息的耗时,未开启Looper检测时为null
+     */
+    public MessageHistory getMessageHistory() {
+        return messageHistory;
+    }
+
+    /**
+     * 卡顿期间慢帧按 {@link FrameMetricsMonitor#PHASE_NAMES} 顺序的耗时(纳秒),未开启时为null
+     */
+    public long[][] getSlowFrames() {
+        return slowFrames;
+    }
+
+    /**
+     * 采样到的不同堆栈
+     */
+    public List<Sample> getSamples() {
+        return samples;
+    }
+
+    /**
+     * 卡顿期间主线程处于BLOCKED或WAITING时推测的锁持有者,没有时为空
+     */
+    public List<LockContention> getContentions() {
+        return contentions;
+    }
+
+    /**
+     * 总采样次数
+     */
+    public int getSampleCount() {
+        int count = 0;
+        for (Sample sample : samples) {
+            count += sample.count;
+        }
+        return count;
+    }
+
+    /**
+     * 分发队列溢出时被合并到该事件的较短卡顿的数量
+     */
+    public int getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    /**
+     * 卡顿日志文本,首次获取时生成
+     */
+    public synchronized String toText() {
+        if (text == null) {
+            StringBuilder builder = new StringBuilder();
+            appendHeader(builder);
+            for (Sample sample : samples) {
+                appendSampleStart(builder, sample.count, sample.state);
+                StackTraceElement[] frames = sample.frames;
+                for (int i = 0; i < frames.length; i++) {
+                    if (i != 0) {
+                        builder.append("\n");
+                    }
+                    builder.append(frames[i].toString());
+                }
+                appendSampleEnd(builder);
+            }
+            appendContentions(builder);
+            text = builder.toString();
+        }
+        return text;
+    }
+
+    /**
+     * JSON格式的卡顿数据,首次获取时生成
+     */
+    public synchronized String toJson() {
+        if (json == null) {
+            try {
+                json = buildJson().toString();
+            } catch (JSONException e) {
+                e.printStackTrace();
+                json = "{}";
+            }
+        }
+        return json;
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+    void addCoalesced(int count) {
+        coalescedCount += count;
+    }
+
+    /**
+     * 输出线程已生成了文本时直接复用
+     */
+    synchronized void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * 输出卡顿日志的头部: 时长、延迟、时间、消息耗时和慢帧
+     */
+    void appendHeader(StringBuilder builder) {
+        builder.append("block:");
+        builder.append(durationMs);
+        builder.append(" \n");
+        builder.append("delay:");
+        builder.append(delayMs);
+        builder.append(" \n");
+        builder.append("time:");
+        TimeUtils.appendFormatTime(builder, timeMillis);
+        builder.append(" \n");
+        if (screen != null) {
+            builder.append("screen:");
+            builder.append(screen);
+            builder.append(" \n");
+        }
+        if (threadName != null) {
+            builder.append("thread:");
+            builder.append(threadName);
+            builder.append(" \n");
+        }
+        if (filteredSampleCount > 0) {
+            builder.append("filtered:");
+            builder.append(filteredSampleCount);
+            builder.append(" \n");
+        }
+        builder.append(" \n");
+        //附带卡顿期间主线程消息的耗时
+        if (messageHistory != null && messageHistory.size() > 0) {
+            messageHistory.appendTo(builder);
+        }
+        //附带卡顿期间慢帧的分阶段耗时
+        FrameMetricsMonitor.appendSlowFrames(builder, slowFrames);
+    }
+
+    /**
+     * 将队列中的帧id还原为帧对象,需在清除队列前调用
+     */
+    static List<Sample> buildSamples(FrameTable frameTable, LogStackQueue queue) {
+        List<Sample> samples = new ArrayList<>(queue.entryCount());
+        for (int index = 0; index < queue.entryCount(); index++) {
+            LogStackInfo stackInfo = queue.get(index);
+            int[] frameIds = stackInfo.getFrameIds();
+            StackTraceElement[] frames = new StackTraceElement[stackInfo.getFrameCount()];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = frameTable.getFrame(frameIds[i]);
+            }
+            samples.add(new Sample(stackInfo.getCount(), frames, stackInfo.getState()));
+        }
+        return samples;
+    }
+
+    static void appendSampleStart(StringBuilder builder, int count, Thread.State state) {
+        builder.append("~~~");
+        builder.append("\n");
+        if (count > 1) {
+            builder.append("count:");
+            builder.append(count);
+            builder.append("\n");
+        }
+        //只标注非运行中的采样
+        if (state != null && state != Thread.State.RUNNABLE) {
+            builder.append("state:");
+            builder.append(state);
+            builder.append("\n");
+        }
+    }
+
+    static void appendSampleEnd(StringBuilder builder) {
+        builder.append("\n");
+        builder.append("~~~");
+        builder.append("\n");
+        builder.append("\n");
+    }
+
+    /**
+     * 输出锁竞争信息,位于所有堆栈之后
+     */
+    void appendContentions(StringBuilder builder) {
+        for (LockContention contention : contentions) {
+            contention.appendTo(builder);
+        }
+    }
+
+    private JSONObject buildJson() throws JSONException {
+        JSONObject object = new JSONObject();
+        object.put("block", durationMs);
+        object.put("delay", delayMs);
+        object.put("time", timeMillis);
+        object.put("filtered", filteredSampleCount);
+        object.put("thread", getThreadName());
+        if (screen != null) {
+            object.put("screen", screen);
+        }
+        if (messageHistory != null) {
+            JSONArray messages = new JSONArray();
+            for (int i = 0; i < messageHistory.size(); i++) {
+                JSONObject message = new JSONObject();
+                message.put("duration", messageHistory.getDurationMs(i));
+                message.put("handler", messageHistory.getHandlerClass(i));
+                message.put("callback", messageHistory.getCallbackClass(i));
+                messages.put(message);
+            }
+            object.put("messages", messages);
+        }
+        if (slowFrames != null) {
+            JSONArray frames = new JSONArray();
+            for (long[] phases : slowFrames) {
+                JSONObject frame = new JSONObject();
+                for (int phase = 0; phase < phases.length; phase++) {
+                    frame.put(FrameMetricsMonitor.PHASE_NAMES[phase], TimeUnit.NANOSECONDS.toMicros(phases[phase]));
+                }
+                frames.put(frame);
+            }
+            object.put("phases", frames);
+        }
+        JSONArray stacks = new JSONArray();
+        for (Sample sample : samples) {
+            JSONObject stack = new JSONObject();
+            stack.put("count", sample.count);
+            if (sample.state != null) {
+                stack.put("state", sample.state.name());
+            }
+            JSONArray frames = new JSONArray();
+            for (StackTraceElement frame : sample.frames) {
+                frames.put(frame.toString());
+            }
+            stack.put("frames", frames);
+            stacks.put(stack);
+        }
+        object.put("info", stacks);
+        if (!contentions.isEmpty()) {
+            JSONArray locks = new JSONArray();
+            for (LockContention contention : contentions) {
+                JSONObject lock = new JSONObject();
+                lock.put("state", contention.getState().name());
+                lock.put("at", contention.getWaitFrame().toString());
+                if (contention.getHolderName() != null) {
+                    lock.put("holder", contention.getHolderName());
+                    lock.put("holderState", contention.getHolderState().name());
+                    JSONArray frames = new JSONArray();
+                    for (StackTraceElement frame : contention.getHolderStack()) {
+                        frames.put(frame.toString());
+                    }
+                    lock.put("frames", frames);
+                }
+                locks.put(lock);
+            }
+            object.put("locks", locks);
+        }
+        return object;
+    }
+
+    /**
+     * 一个不同的堆栈及其采样次数
+     */
+    public static class Sample {
+        private final int count;
+        private final StackTraceElement[] frames;
+        private final Thread.State state;
+
+        Sample(int count, StackTraceElement[] frames, Thread.State state) {
+            this.count = count;
+            this.frames = frames;
+            this.state = state;
+        }
+
+        /**
+         * 连续或重复采样到的次数
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * 堆栈帧,栈顶在前
+         */
+        public StackTraceElement[] getFrames() {
+            return frames;
+        }
+
+        /**
+         * 首次采样到该堆栈时的线程状态,未知时为null
+         */
+        public Thread.State getState() {
+            return state;
+        }
+
+        /**
+         * 栈顶帧
+         */
+        public StackTraceElement getTopFrame() {
+            return frames.length == 0 ? null : frames[0];
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.kc.uiwatch;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 卡顿事件的异步分发
+ * 输出线程只把事件放入有界队列,由单独的分发线程回调监听,监听耗时(上传、写文件等)不会影响采样。
+ * 队列满时按溢出策略处理:丢弃最旧、合并最短或短暂等待;
+ * 可选的批量监听在积累到指定数量或超出指定时间后一次性回调
+ */
+public class BlockEventDispatcher {
+
+    /**
+     * 默认队列容量
+     */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * 阻塞策略下最长等待时间,超出后丢弃最旧的事件,避免长时间阻塞采样
+     */
+    static final long MAX_BLOCK_MS = 50;
+
+    private final int capacity;
+    private final int overflowPolicy;
+    private final UiWatcher.BlockEventListener listener;
+    private final UiWatcher.BlockBatchListener batchListener;
+    private final int batchSize;
+    private final long batchIntervalMs;
+
+    /**
+     * 待分发的事件,由lock保护
+     */
+    private final ArrayDeque<BlockEvent> queue;
+    private final Object lock = new Object();
+
+    /**
+     * 因队列溢出被丢弃的事件数量
+     */
+    private long droppedCount = 0;
+
+    private boolean running = false;
+    private Thread dispatchThread;
+
+    /**
+     * 等待批量回调的事件,只在分发线程访问
+     */
+    private final List<BlockEvent> pendingBatch = new ArrayList<>();
+    private long batchStartMillis = 0;
+
+    /**
+     * @param capacity        队列容量
+     * @param overflowPolicy  溢出策略 {@link UiWatcher#OVERFLOW_DROP_OLDEST} 等
+     * @param listener        单个事件的监听,可为null
+     * @param batchListener   批量监听,可为null
+     * @param batchSize       积累到该数量时批量回调
+     * @param batchIntervalMs 首个事件等待超出该时间时批量回调
+     */
+    public BlockEventDispatcher(int capacity, int overflowPolicy,
+                                UiWatcher.BlockEventListener listener,
+                                UiWatcher.BlockBatchListener batchListener, int batchSize, long batchIntervalMs) {
+        this.capacity = Math.max(capacity, 1);
+        this.overflowPolicy = overflowPolicy;
+        this.listener = listener;
+        this.batchListener = batchListener;
+        this.batchSize = Math.max(batchSize, 1);
+        this.batchIntervalMs = batchIntervalMs;
+        this.queue = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * 开启分发线程
+     */
+    public void start() {
+        synchronized (lock) {
+            if (running) {
+                return;
+            }
+            running = true;
+            dispatchThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    dispatchLoop();
+                }
+            }, "BlockDispatcher_Thread");
+            dispatchThread.start();
+        }
+    }
+
+    /**
+     * 停止分发,已入队的事件分发完后线程退出
+     */
+    public void stop() {
+        synchronized (lock) {
+            running = false;
+            dispatchThread = null;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 放入一个事件,在输出线程调用
+     *
+     * @return 事件是否入队,溢出时被丢弃或合并返回false
+     */
+    public boolean dispatch(BlockEvent event) {
+        synchronized (lock) {
+            if (!running) {
+                return false;
+            }
+            if (queue.size() < capacity) {
+                return enqueue(event);
+            }
+            switch (overflowPolicy) {
+                case UiWatcher.OVERFLOW_COALESCE:
+                    return coalesce(event);
+                case UiWatcher.OVERFLOW_BLOCK:
+                    long deadline = System.currentTimeMillis() + MAX_BLOCK_MS;
+                    long remaining = MAX_BLOCK_MS;
+                    while (queue.size() >= capacity && running && remaining > 0) {
+                        try {
+                            lock.wait(remaining);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            break;
+                        }
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                    if (queue.size() < capacity) {
+                        return enqueue(event);
+                    }
+                    //等待超时,退化为丢弃最旧
+                    queue.pollFirst();
+                    onDropped();
+                    return enqueue(event);
+                case UiWatcher.OVERFLOW_DROP_OLDEST:
+                default:
+                    queue.pollFirst();
+                    onDropped();
+                    return enqueue(event);
+            }
+        }
+    }
+
+    /**
+     * 因队列溢出被丢弃或合并的事件数量
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    private void onDropped() {
+        droppedCount++;
+        MonitorCounters.getInstance().onEventDropped();
+    }
+
+    private boolean enqueue(BlockEvent event) {
+        queue.addLast(event);
+        lock.notifyAll();
+        return true;
+    }
+
+    /**
+     * 丢弃队列和新事件中卡顿时长最短的一个,其次数计入相邻的事件,保留最严重的卡顿
+     */
+    private boolean coalesce(BlockEvent event) {
+        BlockEvent shortest = null;
+        for (BlockEvent queued : queue) {
+            if (shortest == null || queued.getDurationMs() < shortest.getDurationMs()) {
+                shortest = queued;
+            }
+        }
+        onDropped();
+        if (shortest == null || event.getDurationMs() <= shortest.getDurationMs()) {
+            queue.peekLast().addCoalesced(event.getCoalescedCount() + 1);
+            return false;
+        }
+        for (Iterator<BlockEvent> iterator = queue.iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == shortest) {
+                iterator.remove();
+                break;
+            }
+        }
+        event.addCoalesced(shortest.getCoalescedCount() + 1);
+        return enqueue(event);
+    }
+
+    /**
+     * 分发线程循环
+     */
+    private void dispatchLoop() {
+        List<BlockEvent> events = new ArrayList<>();
+        while (true) {
+            boolean exit;
+            synchronized (lock) {
+                while (queue.isEmpty() && running) {
+                    long waitMillis = batchWaitMillis();
+                    if (waitMillis == 0) {
+                        break;
+                    }
+                    try {
+                        lock.wait(waitMillis < 0 ? 0 : waitMillis);
+                    } catch (InterruptedException e) {
+                        //只由stop结束
+                    }
+                }
+                events.addAll(queue);
+                queue.clear();
+                //唤醒阻塞策略下等待的输出线程
+                lock.notifyAll();
+                exit = !running;
+            }
+            for (BlockEvent event : events) {
+                deliver(event);
+            }
+            events.clear();
+            if (batchListener != null && !pendingBatch.isEmpty()
+                    && (exit || System.currentTimeMillis() - batchStartMillis >= batchIntervalMs)) {
+                deliverBatch();
+            }
+            if (exit) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 距离批量回调的剩余等待时间,没有待批量回调的事件时返回-1
+     */
+    private long batchWaitMillis() {
+        if (batchListener == null || pendingBatch.isEmpty()) {
+            return -1;
+        }
+        return Math.max(batchStartMillis + batchIntervalMs - System.currentTimeMillis(), 0);
+    }
+
+    private void deliver(BlockEvent event) {
+        if (listener != null) {
+            try {
+                listener.onUiBlock(event);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+        if (batchListener != null) {
+            if (pendingBatch.isEmpty()) {
+                batchStartMillis = System.currentTimeMillis();
+            }
+            pendingBatch.add(event);
+            if (pendingBatch.size() >= batchSize) {
+                deliverBatch();
+            }
+        }
+    }
+
+    private void deliverBatch() {
+        List<BlockEvent> batch = Collections.unmodifiableList(new ArrayList<>(pendingBatch));
+        pendingBatch.clear();
+        try {
+            batchListener.onUiBlocks(batch);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
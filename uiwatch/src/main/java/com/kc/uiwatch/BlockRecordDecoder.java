@@ -0,0 +1,275 @@
+package com.kc.uiwatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 二进制卡顿记录的解码,只依赖JVM标准库,可以在电脑上直接运行
+ * 将记录还原为与 LogExecutor 输出相同的文本格式
+ * <p>
+ * 用法: java com.kc.uiwatch.BlockRecordDecoder UiWatcherLogData_bin_0.log ...
+ */
+public class BlockRecordDecoder {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Thread.State[] THREAD_STATES = Thread.State.values();
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+
+    /**
+     * 当前文件中定义的帧,按id保存
+     */
+    private StackTraceElement[] frames = new StackTraceElement[256];
+
+    /**
+     * 当前文件的格式版本
+     */
+    private int version = BlockRecordFormat.VERSION;
+
+    /**
+     * 解码一个分段文件
+     *
+     * @param segment 分段文件
+     * @param out     输出
+     */
+    public void decode(File segment, Appendable out) throws IOException {
+        decode(MappedBlockLog.readSegment(segment), out);
+    }
+
+    /**
+     * 解码分段文件中的有效数据
+     *
+     * @param data 有效数据
+     * @param out  输出
+     */
+    public void decode(byte[] data, Appendable out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        Arrays.fill(frames, null);
+        while (buffer.hasRemaining()) {
+            int type = buffer.get();
+            switch (type) {
+                case BlockRecordFormat.RECORD_FILE_HEADER:
+                    readHeader(buffer);
+                    break;
+                case BlockRecordFormat.RECORD_FRAME:
+                    readFrame(buffer);
+                    break;
+                case BlockRecordFormat.RECORD_BLOCK:
+                    readBlock(buffer, out);
+                    break;
+                default:
+                    throw new IOException("未知的记录类型: " + type);
+            }
+        }
+    }
+
+    private void readHeader(ByteBuffer buffer) throws IOException {
+        int magic = buffer.getInt();
+        int version = buffer.get();
+        if (magic != BlockRecordFormat.MAGIC) {
+            throw new IOException("不是二进制卡顿记录");
+        }
+        if (version > BlockRecordFormat.VERSION) {
+            throw new IOException("不支持的版本: " + version);
+        }
+        this.version = version;
+    }
+
+    private void readFrame(ByteBuffer buffer) {
+        int id = readVarInt(buffer);
+        String className = readString(buffer);
+        String methodName = readString(buffer);
+        String fileName = readString(buffer);
+        int zigzagLine = readVarInt(buffer);
+        int line = (zigzagLine >>> 1) ^ -(zigzagLine & 1);
+        if (id >= frames.length) {
+            frames = Arrays.copyOf(frames, Math.max(id + 1, frames.length * 2));
+        }
+        frames[id] = new StackTraceElement(className, methodName, fileName.isEmpty() ? null : fileName, line);
+    }
+
+    private void readBlock(ByteBuffer buffer, Appendable out) throws IOException {
+        int durationMs = readVarInt(buffer);
+        long timeMillis = buffer.getLong();
+        int delayMs = readVarInt(buffer);
+        //采样总数,文本格式中不输出
+        readVarInt(buffer);
+        String screen = null;
+        String threadName = null;
+        int filtered = 0;
+        String[] phaseNames = null;
+        int[][] slowFrames = null;
+        int[] states = null;
+        StringBuilder contentions = null;
+        int fieldCount = version >= 2 ? readVarInt(buffer) : 0;
+        for (int i = 0; i < fieldCount; i++) {
+            int field = readVarInt(buffer);
+            int length = buffer.getInt();
+            int end = buffer.position() + length;
+            if (field == BlockRecordFormat.FIELD_SCREEN) {
+                screen = readString(buffer);
+            } else if (field == BlockRecordFormat.FIELD_THREAD) {
+                threadName = readString(buffer);
+            } else if (field == BlockRecordFormat.FIELD_FILTERED) {
+                filtered = readVarInt(buffer);
+            } else if (field == BlockRecordFormat.FIELD_SLOW_FRAMES) {
+                phaseNames = new String[readVarInt(buffer)];
+                for (int phase = 0; phase < phaseNames.length; phase++) {
+                    phaseNames[phase] = readString(buffer);
+                }
+                slowFrames = new int[readVarInt(buffer)][phaseNames.length];
+                for (int[] phases : slowFrames) {
+                    for (int phase = 0; phase < phases.length; phase++) {
+                        phases[phase] = readVarInt(buffer);
+                    }
+                }
+            } else if (field == BlockRecordFormat.FIELD_SAMPLE_STATES) {
+                states = new int[readVarInt(buffer)];
+                for (int index = 0; index < states.length; index++) {
+                    states[index] = readVarInt(buffer);
+                }
+            } else if (field == BlockRecordFormat.FIELD_CONTENTION) {
+                contentions = readContentions(buffer);
+            }
+            //跳过不认识的字段
+            buffer.position(end);
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("block:").append(durationMs).append(" \n");
+        builder.append("delay:").append(delayMs).append(" \n");
+        builder.append("time:").append(dateFormat.format(new Date(timeMillis))).append(" \n");
+        if (screen != null) {
+            builder.append("screen:").append(screen).append(" \n");
+        }
+        if (threadName != null) {
+            builder.append("thread:").append(threadName).append(" \n");
+        }
+        if (filtered > 0) {
+            builder.append("filtered:").append(filtered).append(" \n");
+        }
+        builder.append(" \n");
+
+        int messageCount = readVarInt(buffer);
+        if (messageCount > 0) {
+            builder.append("messages:").append(" \n");
+            for (int i = 0; i < messageCount; i++) {
+                builder.append(readVarInt(buffer)).append("ms ");
+                builder.append(readString(buffer)).append(" ");
+                builder.append(readString(buffer)).append("\n");
+            }
+            builder.append(" \n");
+        }
+        //与 FrameMetricsMonitor.appendSlowFrames 相同,总耗时在前
+        if (slowFrames != null && slowFrames.length > 0) {
+            builder.append("phases:").append(" \n");
+            for (int[] phases : slowFrames) {
+                for (int phase = phases.length - 1; phase >= 0; phase--) {
+                    builder.append(phaseNames[phase]).append(":").append(phases[phase] / 1000f);
+                    builder.append(phase == 0 ? "\n" : " ");
+                }
+            }
+            builder.append(" \n");
+        }
+
+        int entryCount = readVarInt(buffer);
+        for (int index = 0; index < entryCount; index++) {
+            int count = readVarInt(buffer);
+            int frameCount = readVarInt(buffer);
+            int state = states != null && index < states.length ? states[index] : 0;
+            appendSampleStart(builder, count, state > 0 && state <= THREAD_STATES.length ? THREAD_STATES[state - 1] : null);
+            for (int i = 0; i < frameCount; i++) {
+                if (i != 0) {
+                    builder.append("\n");
+                }
+                appendFrame(builder, readVarInt(buffer));
+            }
+            builder.append("\n").append("~~~").append("\n").append("\n");
+        }
+        //与 LockContention.appendTo 相同,位于所有堆栈之后
+        if (contentions != null) {
+            builder.append(contentions);
+        }
+        out.append(builder);
+    }
+
+    /**
+     * 与 BlockEvent.appendSampleStart 相同,只标注非运行中的采样
+     */
+    private static void appendSampleStart(StringBuilder builder, int count, Thread.State state) {
+        builder.append("~~~").append("\n");
+        if (count > 1) {
+            builder.append("count:").append(count).append("\n");
+        }
+        if (state != null && state != Thread.State.RUNNABLE) {
+            builder.append("state:").append(state).append("\n");
+        }
+    }
+
+    private void appendFrame(StringBuilder builder, int id) {
+        StackTraceElement frame = id < frames.length ? frames[id] : null;
+        builder.append(frame == null ? "<unknown frame " + id + ">" : frame.toString());
+    }
+
+    /**
+     * 读取锁竞争并生成文本,帧定义在卡顿记录之前,此时已经可用
+     */
+    private StringBuilder readContentions(ByteBuffer buffer) {
+        StringBuilder builder = new StringBuilder();
+        int count = readVarInt(buffer);
+        for (int index = 0; index < count; index++) {
+            builder.append("lock:").append(readString(buffer)).append(" at ");
+            appendFrame(builder, readVarInt(buffer));
+            builder.append("\n");
+            int holderFrameCount = readVarInt(buffer);
+            if (holderFrameCount == 0) {
+                builder.append("holder:unknown\n\n");
+                continue;
+            }
+            builder.append("holder:").append(readString(buffer)).append(" ");
+            builder.append(readString(buffer)).append("\n");
+            appendSampleStart(builder, 1, null);
+            for (int i = 0; i < holderFrameCount; i++) {
+                if (i != 0) {
+                    builder.append("\n");
+                }
+                appendFrame(builder, readVarInt(buffer));
+            }
+            builder.append("\n").append("~~~").append("\n").append("\n");
+        }
+        return builder;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = readVarInt(buffer);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    public static void main(String[] args) throws IOException {
+        BlockRecordDecoder decoder = new BlockRecordDecoder();
+        for (String path : args) {
+            decoder.decode(new File(path), System.out);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.kc.uiwatch;
+
+/**
+ * 二进制卡顿记录格式
+ * <p>
+ * 文件由连续的记录组成,每条记录以1字节类型开头,整数使用变长编码(varint),
+ * 有符号整数先做zigzag编码,字符串为 varint长度 + UTF-8字节,long为8字节大端。
+ * <ul>
+ * <li>{@link #RECORD_FILE_HEADER}: int魔数, 1字节版本。每个分段文件的第一条记录</li>
+ * <li>{@link #RECORD_FRAME}: id, 类名, 方法名, 文件名(空串表示未知), zigzag行号。
+ * 同一个文件中每个帧只定义一次,之后的卡顿记录只引用id;id被重新定义时以新定义为准</li>
+ * <li>{@link #RECORD_BLOCK}: 卡顿时长ms, 结束时间戳ms(long), 采样间隔ms, 采样总数,
+ * 可选字段数量 + 每个字段(varint字段类型, int字节数, 内容)(版本2起),
+ * 消息数量 + 每条消息(耗时ms, handler类名, callback类名),
+ * 堆栈条数 + 每条堆栈(采样次数, 帧数, 帧id...)</li>
+ * </ul>
+ * 可选字段只在有值时写入,解码时跳过不认识的字段类型,新增字段不需要升级版本
+ */
+public final class BlockRecordFormat {
+
+    /**
+     * 文件魔数 "UWBR"
+     */
+    public static final int MAGIC = 0x55574252;
+    public static final int VERSION = 2;
+
+    public static final int RECORD_FILE_HEADER = 1;
+    public static final int RECORD_FRAME = 2;
+    public static final int RECORD_BLOCK = 3;
+
+    /**
+     * 卡顿记录的可选字段: 卡顿时的页面,字符串
+     */
+    public static final int FIELD_SCREEN = 1;
+
+    /**
+     * 卡顿记录的可选字段: 因不包含关键词被丢弃的采样次数,varint
+     */
+    public static final int FIELD_FILTERED = 2;
+
+    /**
+     * 卡顿记录的可选字段: 慢帧的分阶段耗时,
+     * 阶段数 + 每个阶段名称, 慢帧数 + 每帧各阶段耗时us(varint),阶段名称写入记录中,解码时不依赖Android类
+     */
+    public static final int FIELD_SLOW_FRAMES = 3;
+
+    /**
+     * 卡顿记录的可选字段: 每条堆栈首次采样时的线程状态,
+     * 堆栈条数 + 每条堆栈的状态(varint, Thread.State的序号+1, 0表示未知)
+     */
+    public static final int FIELD_SAMPLE_STATES = 4;
+
+    /**
+     * 卡顿记录的可选字段: 锁竞争,
+     * 数量 + 每个锁竞争(主线程状态名称, 等待位置的帧id, 持有者的帧数 + 持有者名称, 持有者状态名称, 帧id...),
+     * 帧数为0表示未找到持有者,此时不写入名称和状态。帧定义与堆栈的帧一起写在卡顿记录之前
+     */
+    public static final int FIELD_CONTENTION = 5;
+
+    /**
+     * 卡顿记录的可选字段: 卡顿的线程名称,字符串,主线程的卡顿不写入
+     */
+    public static final int FIELD_THREAD = 6;
+
+    /**
+     * 二进制文件名后缀,与文本格式的文件区分
+     */
+    public static final String FILE_NAME_SUFFIX = "_bin";
+
+    private BlockRecordFormat() {
+    }
+}
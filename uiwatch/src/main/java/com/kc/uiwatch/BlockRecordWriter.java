@@ -0,0 +1,281 @@
+package com.kc.uiwatch;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二进制卡顿记录的写入
+ * 同一个分段文件中每个帧只写一次定义,卡顿记录中只保存帧id,格式见 {@link BlockRecordFormat}
+ */
+public class BlockRecordWriter {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * 复用的编码缓冲区
+     */
+    private ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+
+    /**
+     * 当前分段中已经定义过的帧
+     */
+    private boolean[] writtenFrames = new boolean[256];
+
+    /**
+     * 已定义的帧对应的字典及其版本,其他线程的卡顿各自使用不同的字典
+     */
+    private FrameTable writtenTable;
+    private int writtenGeneration = -1;
+
+    /**
+     * 写入一次卡顿
+     *
+     * @param log        日志文件
+     * @param frameTable 帧字典
+     * @param queue      卡顿期间的堆栈
+     * @param event      卡顿事件,提供时长、时间、消息耗时等头部信息
+     * @return 写入的字节数
+     */
+    public int write(MappedBlockLog log, FrameTable frameTable, LogStackQueue queue, BlockEvent event) throws IOException {
+        //锁竞争的帧不在队列中,先加入帧字典再按id写入
+        int[][] contentionFrames = internContentions(frameTable, event.getContentions());
+        boolean newSegment = log.isSegmentEmpty();
+        if (newSegment || writtenTable != frameTable || writtenGeneration != frameTable.getGeneration()) {
+            resetWrittenFrames(frameTable);
+        }
+        encode(newSegment, frameTable, queue, event, contentionFrames);
+        if (!log.fits(buffer.remaining())) {
+            //放不下时在新分段中重新写入文件头和所有帧定义
+            log.startNewSegment();
+            resetWrittenFrames(frameTable);
+            encode(true, frameTable, queue, event, contentionFrames);
+        }
+        return log.write(buffer);
+    }
+
+    /**
+     * 将锁竞争的等待位置和持有者堆栈转换为帧id
+     *
+     * @return 每个锁竞争的帧id,第一个为等待位置,之后为持有者的堆栈
+     */
+    private static int[][] internContentions(FrameTable frameTable, List<LockContention> contentions) {
+        int[][] contentionFrames = new int[contentions.size()][];
+        for (int index = 0; index < contentionFrames.length; index++) {
+            LockContention contention = contentions.get(index);
+            StackTraceElement[] holderStack = contention.getHolderStack();
+            int[] frameIds = new int[holderStack == null ? 1 : holderStack.length + 1];
+            frameIds[0] = frameTable.intern(contention.getWaitFrame());
+            for (int i = 1; i < frameIds.length; i++) {
+                frameIds[i] = frameTable.intern(holderStack[i - 1]);
+            }
+            contentionFrames[index] = frameIds;
+        }
+        return contentionFrames;
+    }
+
+    private void resetWrittenFrames(FrameTable frameTable) {
+        Arrays.fill(writtenFrames, false);
+        writtenTable = frameTable;
+        writtenGeneration = frameTable.getGeneration();
+    }
+
+    private void encode(boolean withHeader, FrameTable frameTable, LogStackQueue queue, BlockEvent event,
+                        int[][] contentionFrames) {
+        buffer.clear();
+        if (withHeader) {
+            putByte(BlockRecordFormat.RECORD_FILE_HEADER);
+            ensureCapacity(5);
+            buffer.putInt(BlockRecordFormat.MAGIC);
+            buffer.put((byte) BlockRecordFormat.VERSION);
+        }
+        //先写入本文件中尚未定义的帧
+        for (int index = 0; index < queue.entryCount(); index++) {
+            LogStackInfo info = queue.get(index);
+            putFrames(frameTable, info.getFrameIds(), info.getFrameCount());
+        }
+        for (int[] frameIds : contentionFrames) {
+            putFrames(frameTable, frameIds, frameIds.length);
+        }
+        putByte(BlockRecordFormat.RECORD_BLOCK);
+        putVarInt(event.getDurationMs());
+        ensureCapacity(8);
+        buffer.putLong(event.getTimeMillis());
+        putVarInt(event.getDelayMs());
+        putVarInt(queue.size());
+        putFields(event, queue, contentionFrames);
+        MessageHistory messageHistory = event.getMessageHistory();
+        int messageCount = messageHistory == null ? 0 : messageHistory.size();
+        putVarInt(messageCount);
+        for (int i = 0; i < messageCount; i++) {
+            putVarInt((int) messageHistory.getDurationMs(i));
+            putString(messageHistory.getHandlerClass(i));
+            putString(messageHistory.getCallbackClass(i));
+        }
+        putVarInt(queue.entryCount());
+        for (int index = 0; index < queue.entryCount(); index++) {
+            LogStackInfo info = queue.get(index);
+            putVarInt(info.getCount());
+            putVarInt(info.getFrameCount());
+            int[] frameIds = info.getFrameIds();
+            for (int i = 0; i < info.getFrameCount(); i++) {
+                putVarInt(frameIds[i]);
+            }
+        }
+        buffer.flip();
+    }
+
+    /**
+     * 写入尚未定义的帧
+     */
+    private void putFrames(FrameTable frameTable, int[] frameIds, int frameCount) {
+        for (int i = 0; i < frameCount; i++) {
+            int id = frameIds[i];
+            if (id >= writtenFrames.length) {
+                writtenFrames = Arrays.copyOf(writtenFrames, Math.max(id + 1, writtenFrames.length * 2));
+            }
+            if (!writtenFrames[id]) {
+                writtenFrames[id] = true;
+                putFrame(id, frameTable.getFrame(id));
+            }
+        }
+    }
+
+    /**
+     * 写入有值的可选字段
+     */
+    private void putFields(BlockEvent event, LogStackQueue queue, int[][] contentionFrames) {
+        String screen = event.getScreen();
+        int filtered = event.getFilteredSampleCount();
+        long[][] slowFrames = event.getSlowFrames();
+        boolean hasSlowFrames = slowFrames != null && slowFrames.length > 0;
+        boolean hasStates = false;
+        for (int index = 0; index < queue.entryCount() && !hasStates; index++) {
+            hasStates = queue.get(index).getState() != null;
+        }
+        List<LockContention> contentions = event.getContentions();
+        boolean mainThread = event.isMainThread();
+        putVarInt((screen == null ? 0 : 1) + (filtered > 0 ? 1 : 0) + (hasSlowFrames ? 1 : 0)
+                + (hasStates ? 1 : 0) + (contentions.isEmpty() ? 0 : 1) + (mainThread ? 0 : 1));
+        if (screen != null) {
+            int start = beginField(BlockRecordFormat.FIELD_SCREEN);
+            putString(screen);
+            endField(start);
+        }
+        if (!mainThread) {
+            int start = beginField(BlockRecordFormat.FIELD_THREAD);
+            putString(event.getThreadName());
+            endField(start);
+        }
+        if (filtered > 0) {
+            int start = beginField(BlockRecordFormat.FIELD_FILTERED);
+            putVarInt(filtered);
+            endField(start);
+        }
+        if (hasSlowFrames) {
+            int start = beginField(BlockRecordFormat.FIELD_SLOW_FRAMES);
+            putVarInt(FrameMetricsMonitor.PHASE_COUNT);
+            for (String name : FrameMetricsMonitor.PHASE_NAMES) {
+                putString(name);
+            }
+            putVarInt(slowFrames.length);
+            for (long[] phases : slowFrames) {
+                for (int phase = 0; phase < FrameMetricsMonitor.PHASE_COUNT; phase++) {
+                    putVarInt((int) TimeUnit.NANOSECONDS.toMicros(phases[phase]));
+                }
+            }
+            endField(start);
+        }
+        if (hasStates) {
+            int start = beginField(BlockRecordFormat.FIELD_SAMPLE_STATES);
+            putVarInt(queue.entryCount());
+            for (int index = 0; index < queue.entryCount(); index++) {
+                Thread.State state = queue.get(index).getState();
+                putVarInt(state == null ? 0 : state.ordinal() + 1);
+            }
+            endField(start);
+        }
+        if (!contentions.isEmpty()) {
+            int start = beginField(BlockRecordFormat.FIELD_CONTENTION);
+            putVarInt(contentions.size());
+            for (int index = 0; index < contentions.size(); index++) {
+                LockContention contention = contentions.get(index);
+                int[] frameIds = contentionFrames[index];
+                putString(contention.getState().name());
+                putVarInt(frameIds[0]);
+                putVarInt(frameIds.length - 1);
+                if (frameIds.length > 1) {
+                    putString(contention.getHolderName());
+                    putString(contention.getHolderState().name());
+                    for (int i = 1; i < frameIds.length; i++) {
+                        putVarInt(frameIds[i]);
+                    }
+                }
+            }
+            endField(start);
+        }
+    }
+
+    /**
+     * 写入字段类型并预留字节数
+     *
+     * @return 字段内容的开始位置
+     */
+    private int beginField(int type) {
+        putVarInt(type);
+        ensureCapacity(4);
+        buffer.putInt(0);
+        return buffer.position();
+    }
+
+    /**
+     * 回填字段的字节数
+     */
+    private void endField(int start) {
+        buffer.putInt(start - 4, buffer.position() - start);
+    }
+
+    private void putFrame(int id, StackTraceElement frame) {
+        putByte(BlockRecordFormat.RECORD_FRAME);
+        putVarInt(id);
+        putString(frame.getClassName());
+        putString(frame.getMethodName());
+        putString(frame.getFileName() == null ? "" : frame.getFileName());
+        int line = frame.getLineNumber();
+        putVarInt((line << 1) ^ (line >> 31));
+    }
+
+    private void putByte(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    private void putVarInt(int value) {
+        ensureCapacity(5);
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(UTF_8);
+        putVarInt(bytes.length);
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void ensureCapacity(int length) {
+        if (buffer.remaining() >= length) {
+            return;
+        }
+        ByteBuffer newBuffer = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + length));
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+}
@@ -0,0 +1,39 @@
+package com.kc.uiwatch;
+
+/**
+ * 卡顿检测对采样的控制
+ * 检测(帧间隔、消息耗时)只通过该接口开始、停止采样和触发输出,默认实现为 {@link LogMonitor},
+ * 回放测试时可替换为按虚拟时钟采样的实现
+ */
+public interface BlockSampler {
+
+    /**
+     * 开始采样,已开始时不重复开始,暂停中时恢复
+     */
+    void startMonitor();
+
+    /**
+     * 停止采样并释放线程
+     */
+    void stopMonitor();
+
+    /**
+     * 暂停采样,保留线程和已有的状态,由 {@link #startMonitor()} 恢复
+     */
+    void pauseMonitor();
+
+    /**
+     * 输出卡顿期间的采样并重新开始采样
+     *
+     * @param skipFrameCount 卡顿时长
+     */
+    void startOutputAndResetCollectionMonitor(int skipFrameCount);
+
+    /**
+     * 看门狗模式,每帧调用一次,帧超时delay后才开始采样,到下一帧停止
+     *
+     * @param skipFrameCount 卡顿时长,未卡顿时为0
+     * @param delay          开始采样前的等待时间
+     */
+    void armWatchdog(int skipFrameCount, long delay);
+}
@@ -0,0 +1,57 @@
+package com.kc.uiwatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 采样线程上的锁竞争探测
+ * 获取所有线程的堆栈开销较大,同一等待位置在一个采样窗口内只推测一次,
+ * 持续等待时最多每 {@link #MIN_INTERVAL_MS} 重新推测一次
+ */
+class ContentionProbe {
+
+    /**
+     * 同一等待位置两次推测的最小间隔
+     */
+    static final int MIN_INTERVAL_MS = 1000;
+
+    private StackTraceElement lastWaitFrame;
+    private long lastProbeNanos = 0;
+
+    /**
+     * 根据本次采样判断是否需要推测持有者
+     *
+     * @param thread 采样的线程
+     * @param state  采样时的线程状态
+     * @param stack  采样到的堆栈
+     * @return 锁竞争信息,不需要推测时返回null
+     */
+    LockContention probe(Thread thread, Thread.State state, StackTraceElement[] stack) {
+        if (!LockContention.isWaiting(state)) {
+            return null;
+        }
+        StackTraceElement waitFrame = LockContention.findWaitFrame(state, stack);
+        if (waitFrame == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (waitFrame.equals(lastWaitFrame) && now - lastProbeNanos < TimeUnit.MILLISECONDS.toNanos(MIN_INTERVAL_MS)) {
+            return null;
+        }
+        lastWaitFrame = waitFrame;
+        lastProbeNanos = now;
+        MonitorCounters counters = MonitorCounters.getInstance();
+        counters.beginSection("UiWatcher:contention");
+        LockContention contention = LockContention.find(thread, state, waitFrame);
+        counters.onContentionProbe(System.nanoTime() - now);
+        counters.endSection();
+        return contention;
+    }
+
+    /**
+     * 采样窗口结束(输出或丢弃)后重新开始
+     */
+    void reset() {
+        lastWaitFrame = null;
+        lastProbeNanos = 0;
+    }
+}
@@ -0,0 +1,311 @@
+package com.kc.uiwatch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 卡顿堆栈的折叠聚合
+ * 将所有卡顿的采样按 "根;...;栈顶" 的折叠堆栈合并,同时累计采样次数和按采样比例分摊的卡顿时长,
+ * 可导出火焰图工具(flamegraph.pl、speedscope等)通用的collapsed格式。
+ * 每次卡顿增量合并,堆栈数量超出上限时将权重最小的一半并入 {@link #OTHER_FRAME},内存占用有上限
+ */
+public class FoldedStackAggregator {
+
+    /**
+     * 被淘汰的堆栈合并后的名称
+     */
+    public static final String OTHER_FRAME = "[other]";
+
+    /**
+     * 默认最多保存的不同堆栈数量
+     */
+    public static final int DEFAULT_MAX_STACKS = 2000;
+
+    private final int maxStacks;
+
+    /**
+     * 帧名称字典,名称为 类名.方法名
+     */
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * 按签名保存的折叠堆栈
+     */
+    private final Map<Long, FoldedStack> stacks = new HashMap<>();
+
+    /**
+     * 被淘汰的堆栈的权重
+     */
+    private final FoldedStack otherStack = new FoldedStack(new int[0]);
+
+    private int[] nameBuffer = new int[64];
+
+    /**
+     * 按帧id缓存的名称id + 1, 0 表示未缓存,帧字典清空或压缩、名称字典重建后失效
+     */
+    private int[] frameNameIds = new int[0];
+    private FrameTable cachedTable;
+    private int cachedGeneration = -1;
+
+    public FoldedStackAggregator() {
+        this(DEFAULT_MAX_STACKS);
+    }
+
+    public FoldedStackAggregator(int maxStacks) {
+        this.maxStacks = Math.max(maxStacks, 2);
+    }
+
+    /**
+     * 合并一次卡顿的采样
+     *
+     * @param frameTable 帧字典
+     * @param queue      卡顿期间的堆栈
+     * @param durationMs 卡顿时长,按采样次数比例分摊到每个堆栈
+     */
+    public synchronized void add(FrameTable frameTable, LogStackQueue queue, int durationMs) {
+        int totalSamples = queue.size();
+        if (totalSamples == 0) {
+            return;
+        }
+        if (cachedTable != frameTable || cachedGeneration != frameTable.getGeneration()) {
+            Arrays.fill(frameNameIds, 0);
+            cachedTable = frameTable;
+            cachedGeneration = frameTable.getGeneration();
+        }
+        if (frameNameIds.length < frameTable.size()) {
+            frameNameIds = Arrays.copyOf(frameNameIds, frameTable.size() * 2);
+        }
+        for (int index = 0; index < queue.entryCount(); index++) {
+            LogStackInfo info = queue.get(index);
+            int frameCount = info.getFrameCount();
+            if (nameBuffer.length < frameCount) {
+                nameBuffer = new int[frameCount * 2];
+            }
+            //堆栈为栈顶在前,折叠格式为根在前
+            int[] frameIds = info.getFrameIds();
+            for (int i = 0; i < frameCount; i++) {
+                nameBuffer[frameCount - 1 - i] = internName(frameTable, frameIds[i]);
+            }
+            addNames(frameCount, info.getCount(), (double) durationMs * info.getCount() / totalSamples);
+        }
+        if (stacks.size() > maxStacks) {
+            evict();
+        }
+    }
+
+    /**
+     * 合并一个卡顿事件的采样,用于输出之后的聚合(如按页面)
+     *
+     * @param event 卡顿事件
+     */
+    public synchronized void add(BlockEvent event) {
+        int totalSamples = event.getSampleCount();
+        if (totalSamples == 0) {
+            return;
+        }
+        for (BlockEvent.Sample sample : event.getSamples()) {
+            StackTraceElement[] frames = sample.getFrames();
+            int frameCount = frames.length;
+            if (nameBuffer.length < frameCount) {
+                nameBuffer = new int[frameCount * 2];
+            }
+            for (int i = 0; i < frameCount; i++) {
+                nameBuffer[frameCount - 1 - i] = internName(frames[i]);
+            }
+            addNames(frameCount, sample.getCount(), (double) event.getDurationMs() * sample.getCount() / totalSamples);
+        }
+        if (stacks.size() > maxStacks) {
+            evict();
+        }
+    }
+
+    /**
+     * 按nameBuffer中的折叠堆栈累计权重
+     */
+    private void addNames(int frameCount, int samples, double durationMs) {
+        long signature = LogStackInfo.computeSignature(nameBuffer, frameCount);
+        FoldedStack stack = stacks.get(signature);
+        if (stack == null || !stack.isSame(nameBuffer, frameCount)) {
+            if (stack != null) {
+                //签名冲突,极少出现,计入other
+                stack = otherStack;
+            } else {
+                stack = new FoldedStack(Arrays.copyOf(nameBuffer, frameCount));
+                stacks.put(signature, stack);
+            }
+        }
+        stack.samples += samples;
+        stack.durationMs += durationMs;
+    }
+
+    /**
+     * 导出collapsed格式,每行一个堆栈: 帧;帧;帧 权重
+     *
+     * @param out              输出
+     * @param weightByDuration true:权重为分摊的卡顿时长(毫秒) false:权重为采样次数
+     */
+    public synchronized void writeFolded(Appendable out, boolean weightByDuration) throws IOException {
+        for (FoldedStack stack : stacks.values()) {
+            writeLine(out, stack, weightByDuration);
+        }
+        if (otherStack.samples > 0) {
+            out.append(OTHER_FRAME);
+            out.append(' ');
+            out.append(String.valueOf(weightByDuration ? Math.round(otherStack.durationMs) : otherStack.samples));
+            out.append('\n');
+        }
+    }
+
+    /**
+     * 导出collapsed格式的文本
+     *
+     * @param weightByDuration true:权重为分摊的卡顿时长(毫秒) false:权重为采样次数
+     */
+    public String toFoldedString(boolean weightByDuration) {
+        StringBuilder builder = new StringBuilder();
+        try {
+            writeFolded(builder, weightByDuration);
+        } catch (IOException e) {
+            //StringBuilder不会抛出
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 当前保存的不同堆栈数量
+     */
+    public synchronized int size() {
+        return stacks.size();
+    }
+
+    /**
+     * 清空所有数据
+     */
+    public synchronized void clear() {
+        stacks.clear();
+        nameIds.clear();
+        names.clear();
+        otherStack.samples = 0;
+        otherStack.durationMs = 0;
+        cachedTable = null;
+    }
+
+    private void writeLine(Appendable out, FoldedStack stack, boolean weightByDuration) throws IOException {
+        long weight = weightByDuration ? Math.round(stack.durationMs) : stack.samples;
+        if (weight <= 0) {
+            return;
+        }
+        for (int i = 0; i < stack.nameIds.length; i++) {
+            if (i != 0) {
+                out.append(';');
+            }
+            out.append(names.get(stack.nameIds[i]));
+        }
+        out.append(' ');
+        out.append(String.valueOf(weight));
+        out.append('\n');
+    }
+
+    private int internName(FrameTable frameTable, int frameId) {
+        int id = frameNameIds[frameId] - 1;
+        if (id < 0) {
+            id = internName(frameTable.getFrame(frameId));
+            frameNameIds[frameId] = id + 1;
+        }
+        return id;
+    }
+
+    private int internName(StackTraceElement frame) {
+        String name = frame.getClassName() + "." + frame.getMethodName();
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * 淘汰权重最小的一半堆栈,并重建名称字典和帧名称缓存
+     */
+    private void evict() {
+        List<Map.Entry<Long, FoldedStack>> entries = new ArrayList<>(stacks.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Long, FoldedStack>>() {
+            @Override
+            public int compare(Map.Entry<Long, FoldedStack> o1, Map.Entry<Long, FoldedStack> o2) {
+                return Double.compare(o1.getValue().durationMs, o2.getValue().durationMs);
+            }
+        });
+        int evictCount = entries.size() / 2;
+        for (int i = 0; i < evictCount; i++) {
+            FoldedStack stack = entries.get(i).getValue();
+            otherStack.samples += stack.samples;
+            otherStack.durationMs += stack.durationMs;
+            stacks.remove(entries.get(i).getKey());
+        }
+        //只保留仍被引用的名称
+        List<String> oldNames = new ArrayList<>(names);
+        nameIds.clear();
+        names.clear();
+        for (FoldedStack stack : stacks.values()) {
+            for (int i = 0; i < stack.nameIds.length; i++) {
+                String name = oldNames.get(stack.nameIds[i]);
+                Integer id = nameIds.get(name);
+                if (id == null) {
+                    id = names.size();
+                    names.add(name);
+                    nameIds.put(name, id);
+                }
+                stack.nameIds[i] = id;
+            }
+        }
+        cachedTable = null;
+        //名称id变化后签名也随之变化
+        Map<Long, FoldedStack> rehashed = new HashMap<>();
+        for (FoldedStack stack : stacks.values()) {
+            long signature = LogStackInfo.computeSignature(stack.nameIds, stack.nameIds.length);
+            if (rehashed.containsKey(signature)) {
+                //签名冲突,极少出现,计入other
+                otherStack.samples += stack.samples;
+                otherStack.durationMs += stack.durationMs;
+            } else {
+                rehashed.put(signature, stack);
+            }
+        }
+        stacks.clear();
+        stacks.putAll(rehashed);
+    }
+
+    /**
+     * 一个折叠堆栈及其权重
+     */
+    private static class FoldedStack {
+        final int[] nameIds;
+        long samples;
+        double durationMs;
+
+        FoldedStack(int[] nameIds) {
+            this.nameIds = nameIds;
+        }
+
+        boolean isSame(int[] ids, int count) {
+            if (nameIds.length != count) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if (nameIds[i] != ids[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
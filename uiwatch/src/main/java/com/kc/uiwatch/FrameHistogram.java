@@ -0,0 +1,161 @@
+package com.kc.uiwatch;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 帧间隔直方图
+ * 以微秒为单位按对数分桶,每个2的幂区间再均分为16个子桶,相对误差不超过1/16,
+ * 覆盖1微秒到约71分钟。桶数组在创建时分配,记录时不产生任何对象
+ */
+public class FrameHistogram {
+
+    /**
+     * 每个2的幂区间的子桶位数
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 31;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKET_COUNT;
+
+    /**
+     * 冻帧阈值,与Android vitals一致
+     */
+    public static final long FROZEN_FRAME_MS = 700;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+
+    /**
+     * 卡顿阈值,微秒
+     */
+    private final long jankThresholdUs;
+    private final long frozenThresholdUs = TimeUnit.MILLISECONDS.toMicros(FROZEN_FRAME_MS);
+
+    private long totalCount = 0;
+    private long jankCount = 0;
+    private long frozenCount = 0;
+    private long maxUs = 0;
+    private long totalUs = 0;
+
+    /**
+     * @param jankThresholdMs 超出该间隔视为卡顿
+     */
+    public FrameHistogram(int jankThresholdMs) {
+        this.jankThresholdUs = TimeUnit.MILLISECONDS.toMicros(jankThresholdMs);
+    }
+
+    /**
+     * 记录一次帧间隔
+     *
+     * @param intervalNanos 帧间隔,纳秒
+     */
+    public synchronized void record(long intervalNanos) {
+        long us = intervalNanos / 1000;
+        if (us < 0) {
+            return;
+        }
+        counts[bucketIndex(us)]++;
+        totalCount++;
+        totalUs += us;
+        if (us > maxUs) {
+            maxUs = us;
+        }
+        if (us > jankThresholdUs) {
+            jankCount++;
+        }
+        if (us > frozenThresholdUs) {
+            frozenCount++;
+        }
+    }
+
+    /**
+     * 清空
+     */
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        jankCount = 0;
+        frozenCount = 0;
+        maxUs = 0;
+        totalUs = 0;
+    }
+
+    /**
+     * 将另一个直方图的数据合并进来
+     */
+    public void add(FrameHistogram other) {
+        long[] otherCounts;
+        long otherTotalCount, otherJankCount, otherFrozenCount, otherTotalUs, otherMaxUs;
+        synchronized (other) {
+            otherCounts = other.counts.clone();
+            otherTotalCount = other.totalCount;
+            otherJankCount = other.jankCount;
+            otherFrozenCount = other.frozenCount;
+            otherTotalUs = other.totalUs;
+            otherMaxUs = other.maxUs;
+        }
+        synchronized (this) {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] += otherCounts[i];
+            }
+            totalCount += otherTotalCount;
+            jankCount += otherJankCount;
+            frozenCount += otherFrozenCount;
+            totalUs += otherTotalUs;
+            maxUs = Math.max(maxUs, otherMaxUs);
+        }
+    }
+
+    /**
+     * 获取统计快照
+     */
+    public synchronized FrameStats snapshot() {
+        return new FrameStats(totalCount, jankCount, frozenCount,
+                valueAtPercentile(50), valueAtPercentile(90), valueAtPercentile(99),
+                maxUs / 1000f, totalCount == 0 ? 0 : totalUs / 1000f / totalCount);
+    }
+
+    /**
+     * 百分位对应的帧间隔
+     *
+     * @param percentile 0-100
+     * @return 毫秒,取所在桶的中值
+     */
+    public synchronized float valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(totalCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(bucketMiddle(i), maxUs) / 1000f;
+            }
+        }
+        return maxUs / 1000f;
+    }
+
+    private static int bucketIndex(long us) {
+        if (us < SUB_BUCKET_COUNT) {
+            return (int) us;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(us);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int subBucket = (int) (us >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long bucketMiddle(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKET_COUNT;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (SUB_BUCKET_COUNT + subBucket) * width;
+        return lower + width / 2;
+    }
+}
@@ -0,0 +1,254 @@
+package com.kc.uiwatch;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 FrameMetrics 的分阶段帧耗时统计(api>=24)
+ * 在Activity resume时注册到其Window,回调和统计都在单独的线程上进行,
+ * 统计所有帧和慢帧在各阶段(输入、动画、布局测量、绘制、同步、GPU命令提交、交换缓冲区)的耗时,
+ * 并在卡顿日志中附带卡顿期间慢帧的分阶段耗时,用于判断应该排查主线程堆栈还是渲染线程
+ */
+@TargetApi(Build.VERSION_CODES.N)
+public class FrameMetricsMonitor {
+
+    /**
+     * 阶段名称,与 {@link #PHASE_METRICS} 一一对应,最后一项为总耗时
+     */
+    public static final String[] PHASE_NAMES = {
+            "delay", "input", "animation", "layout", "draw", "sync", "command", "swap", "total"
+    };
+
+    private static final int[] PHASE_METRICS = {
+            FrameMetrics.UNKNOWN_DELAY_DURATION,
+            FrameMetrics.INPUT_HANDLING_DURATION,
+            FrameMetrics.ANIMATION_DURATION,
+            FrameMetrics.LAYOUT_MEASURE_DURATION,
+            FrameMetrics.DRAW_DURATION,
+            FrameMetrics.SYNC_DURATION,
+            FrameMetrics.COMMAND_ISSUE_DURATION,
+            FrameMetrics.SWAP_BUFFERS_DURATION,
+            FrameMetrics.TOTAL_DURATION
+    };
+
+    public static final int PHASE_COUNT = PHASE_NAMES.length;
+    private static final int TOTAL_INDEX = PHASE_COUNT - 1;
+
+    /**
+     * 保存的最近慢帧数量
+     */
+    private static final int RECENT_SLOW_FRAMES = 16;
+
+    /**
+     * 单次卡顿附带的慢帧数量上限
+     */
+    private static final int MAX_REPORT_FRAMES = 4;
+
+    /**
+     * 指标在帧结束后异步到达,卡顿窗口额外放宽的时间
+     */
+    private static final long REPORT_SLACK_MS = 100;
+
+    /**
+     * 慢帧阈值
+     */
+    private final long slowFrameNanos;
+
+    private HandlerThread metricsThread;
+    private Handler metricsHandler;
+
+    /**
+     * 已注册的Activity,只在主线程访问
+     */
+    private final Set<Activity> registeredActivities = Collections.newSetFromMap(new WeakHashMap<Activity, Boolean>());
+
+    private final Window.OnFrameMetricsAvailableListener listener = new Window.OnFrameMetricsAvailableListener() {
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+            onFrame(frameMetrics);
+        }
+    };
+
+    //------------- 统计数据,由this保护 -------------------
+    private long frameCount = 0;
+    private long slowFrameCount = 0;
+    private final long[] phaseSum = new long[PHASE_COUNT];
+    private final long[] phaseMax = new long[PHASE_COUNT];
+    private final long[] slowPhaseSum = new long[PHASE_COUNT];
+    private final long[][] recentSlowFrames = new long[RECENT_SLOW_FRAMES][PHASE_COUNT];
+    private final long[] recentSlowTimes = new long[RECENT_SLOW_FRAMES];
+    private int recentIndex = 0;
+    private int recentCount = 0;
+
+    /**
+     * @param slowFrameMs 总耗时超出该值视为慢帧
+     */
+    public FrameMetricsMonitor(int slowFrameMs) {
+        this.slowFrameNanos = TimeUnit.MILLISECONDS.toNanos(slowFrameMs);
+    }
+
+    /**
+     * 当前系统是否支持
+     */
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+    }
+
+    /**
+     * 开启统计线程,在主线程调用
+     *
+     * @param resumedActivity 当前已经resume的Activity,之后才resume的由 {@link #register(Activity)} 注册,为null时忽略
+     */
+    public void start(Activity resumedActivity) {
+        if (metricsThread != null) {
+            return;
+        }
+        metricsThread = new HandlerThread("FrameMetrics_Thread");
+        metricsThread.start();
+        metricsHandler = new Handler(metricsThread.getLooper());
+        if (resumedActivity != null) {
+            register(resumedActivity);
+        }
+    }
+
+    /**
+     * 注销所有Window并关闭线程,在主线程调用
+     */
+    public void stop() {
+        for (Activity activity : registeredActivities.toArray(new Activity[0])) {
+            unregister(activity);
+        }
+        if (metricsThread != null) {
+            metricsThread.quit();
+            metricsThread = null;
+            metricsHandler = null;
+        }
+    }
+
+    /**
+     * 注册Activity的Window,在主线程调用
+     */
+    public void register(Activity activity) {
+        if (metricsHandler == null || registeredActivities.contains(activity)) {
+            return;
+        }
+        Window window = activity.getWindow();
+        if (window == null) {
+            return;
+        }
+        window.addOnFrameMetricsAvailableListener(listener, metricsHandler);
+        registeredActivities.add(activity);
+    }
+
+    /**
+     * 注销Activity的Window,在主线程调用
+     */
+    public void unregister(Activity activity) {
+        if (!registeredActivities.remove(activity)) {
+            return;
+        }
+        Window window = activity.getWindow();
+        if (window == null) {
+            return;
+        }
+        try {
+            window.removeOnFrameMetricsAvailableListener(listener);
+        } catch (IllegalArgumentException e) {
+            //Window已经移除了监听
+        }
+    }
+
+    /**
+     * 统计一帧,在统计线程调用
+     */
+    private synchronized void onFrame(FrameMetrics frameMetrics) {
+        frameCount++;
+        long total = frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION);
+        boolean slow = total > slowFrameNanos;
+        long[] recent = recentSlowFrames[recentIndex];
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            long value = frameMetrics.getMetric(PHASE_METRICS[i]);
+            phaseSum[i] += value;
+            if (value > phaseMax[i]) {
+                phaseMax[i] = value;
+            }
+            if (slow) {
+                slowPhaseSum[i] += value;
+                recent[i] = value;
+            }
+        }
+        if (slow) {
+            slowFrameCount++;
+            recentSlowTimes[recentIndex] = System.nanoTime();
+            recentIndex = (recentIndex + 1) % RECENT_SLOW_FRAMES;
+            if (recentCount < RECENT_SLOW_FRAMES) {
+                recentCount++;
+            }
+        }
+    }
+
+    /**
+     * 获取分阶段统计快照
+     */
+    public synchronized FramePhaseStats snapshot() {
+        return new FramePhaseStats(frameCount, slowFrameCount, phaseSum.clone(), phaseMax.clone(), slowPhaseSum.clone());
+    }
+
+    /**
+     * 获取卡顿期间统计到的慢帧的分阶段耗时,最新的在前
+     *
+     * @param blockMs 卡顿时长,截止到当前
+     * @return 每个慢帧按 {@link #PHASE_NAMES} 顺序的耗时(纳秒),没有慢帧时为空数组
+     */
+    public synchronized long[][] getSlowFrames(int blockMs) {
+        long now = System.nanoTime();
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(blockMs + REPORT_SLACK_MS);
+        int count = 0;
+        while (count < recentCount && count < MAX_REPORT_FRAMES) {
+            int index = (recentIndex - count - 1 + RECENT_SLOW_FRAMES) % RECENT_SLOW_FRAMES;
+            if (now - recentSlowTimes[index] > windowNanos) {
+                break;
+            }
+            count++;
+        }
+        long[][] frames = new long[count][];
+        for (int i = 0; i < count; i++) {
+            int index = (recentIndex - i - 1 + RECENT_SLOW_FRAMES) % RECENT_SLOW_FRAMES;
+            frames[i] = recentSlowFrames[index].clone();
+        }
+        return frames;
+    }
+
+    /**
+     * 按 "阶段:毫秒" 每帧一行输出慢帧的分阶段耗时,总耗时在前
+     *
+     * @param builder    输出
+     * @param slowFrames {@link #getSlowFrames(int)} 的结果
+     */
+    public static void appendSlowFrames(StringBuilder builder, long[][] slowFrames) {
+        if (slowFrames == null || slowFrames.length == 0) {
+            return;
+        }
+        builder.append("phases:");
+        builder.append(" \n");
+        for (long[] phases : slowFrames) {
+            for (int phase = TOTAL_INDEX; phase >= 0; phase--) {
+                builder.append(PHASE_NAMES[phase]);
+                builder.append(":");
+                builder.append(TimeUnit.NANOSECONDS.toMicros(phases[phase]) / 1000f);
+                builder.append(phase == 0 ? "\n" : " ");
+            }
+        }
+        builder.append(" \n");
+    }
+}
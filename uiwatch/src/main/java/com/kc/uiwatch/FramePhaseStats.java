@@ -0,0 +1,72 @@
+package com.kc.uiwatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分阶段帧耗时统计快照,时间单位为毫秒
+ * 阶段顺序与 {@link FrameMetricsMonitor#PHASE_NAMES} 一致
+ */
+public class FramePhaseStats {
+
+    private final long frameCount;
+    private final long slowFrameCount;
+    private final long[] phaseSum;
+    private final long[] phaseMax;
+    private final long[] slowPhaseSum;
+
+    public FramePhaseStats(long frameCount, long slowFrameCount, long[] phaseSum, long[] phaseMax, long[] slowPhaseSum) {
+        this.frameCount = frameCount;
+        this.slowFrameCount = slowFrameCount;
+        this.phaseSum = phaseSum;
+        this.phaseMax = phaseMax;
+        this.slowPhaseSum = slowPhaseSum;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getSlowFrameCount() {
+        return slowFrameCount;
+    }
+
+    /**
+     * 所有帧在该阶段的平均耗时
+     */
+    public float getAverage(int phase) {
+        return frameCount == 0 ? 0 : toMs(phaseSum[phase]) / frameCount;
+    }
+
+    /**
+     * 该阶段的最大耗时
+     */
+    public float getMax(int phase) {
+        return toMs(phaseMax[phase]);
+    }
+
+    /**
+     * 慢帧在该阶段的平均耗时
+     */
+    public float getSlowAverage(int phase) {
+        return slowFrameCount == 0 ? 0 : toMs(slowPhaseSum[phase]) / slowFrameCount;
+    }
+
+    private static float toMs(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) / 1000f;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("frames:").append(frameCount);
+        builder.append(" slow:").append(slowFrameCount);
+        for (int i = 0; i < FrameMetricsMonitor.PHASE_COUNT; i++) {
+            builder.append("\n");
+            builder.append(FrameMetricsMonitor.PHASE_NAMES[i]);
+            builder.append(" avg:").append(getAverage(i));
+            builder.append(" max:").append(getMax(i));
+            builder.append(" slowAvg:").append(getSlowAverage(i));
+        }
+        return builder.toString();
+    }
+}
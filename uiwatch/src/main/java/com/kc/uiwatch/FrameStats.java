@@ -0,0 +1,89 @@
+package com.kc.uiwatch;
+
+/**
+ * 帧间隔统计快照,时间单位为毫秒
+ */
+public class FrameStats {
+
+    private final long frameCount;
+    private final long jankCount;
+    private final long frozenCount;
+    private final float p50;
+    private final float p90;
+    private final float p99;
+    private final float max;
+    private final float average;
+
+    public FrameStats(long frameCount, long jankCount, long frozenCount,
+                      float p50, float p90, float p99, float max, float average) {
+        this.frameCount = frameCount;
+        this.jankCount = jankCount;
+        this.frozenCount = frozenCount;
+        this.p50 = p50;
+        this.p90 = p90;
+        this.p99 = p99;
+        this.max = max;
+        this.average = average;
+    }
+
+    /**
+     * 记录的帧数
+     */
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * 超出帧率阈值的帧数
+     */
+    public long getJankCount() {
+        return jankCount;
+    }
+
+    /**
+     * 卡顿率
+     */
+    public float getJankRate() {
+        return frameCount == 0 ? 0 : (float) jankCount / frameCount;
+    }
+
+    /**
+     * 超过700ms的冻帧数
+     */
+    public long getFrozenCount() {
+        return frozenCount;
+    }
+
+    public float getP50() {
+        return p50;
+    }
+
+    public float getP90() {
+        return p90;
+    }
+
+    public float getP99() {
+        return p99;
+    }
+
+    public float getMax() {
+        return max;
+    }
+
+    public float getAverage() {
+        return average;
+    }
+
+    @Override
+    public String toString() {
+        return "frames:" + frameCount
+                + " jank:" + jankCount
+                + " jankRate:" + getJankRate()
+                + " frozen:" + frozenCount
+                + " p50:" + p50
+                + " p90:" + p90
+                + " p99:" + p99
+                + " max:" + max
+                + " avg:" + average;
+    }
+}
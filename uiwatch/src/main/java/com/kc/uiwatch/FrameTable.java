@@ -0,0 +1,240 @@
+package com.kc.uiwatch;
+
+import java.util.Arrays;
+
+/**
+ * 堆栈帧字典
+ * 每个不同的StackTraceElement只保存一次并分配一个int id,
+ * 采样时只保存id数组,输出卡顿日志时才转换为文本
+ */
+public class FrameTable {
+
+    /**
+     * 哈希槽初始容量,必须为2的幂
+     */
+    private static final int INITIAL_SLOT_SIZE = 512;
+
+    /**
+     * 帧数量上限,超出后在合适的时机进行压缩
+     */
+    static final int MAX_FRAME_COUNT = 8192;
+
+    /**
+     * 按id保存的帧
+     */
+    private StackTraceElement[] frames = new StackTraceElement[INITIAL_SLOT_SIZE / 2];
+
+    /**
+     * 帧文本缓存,输出时才生成
+     */
+    private String[] frameTexts = new String[INITIAL_SLOT_SIZE / 2];
+
+    /**
+     * 帧是否匹配关键词的缓存, 0:未计算 1:匹配 2:不匹配
+     */
+    private byte[] keyWordFlags = new byte[INITIAL_SLOT_SIZE / 2];
+
+    /**
+     * 计算缓存时使用的关键词匹配器
+     */
+    private KeyWordMatcher keyWordMatcher;
+
+    /**
+     * 开放寻址的哈希槽,保存 id + 1, 0 表示空槽
+     */
+    private int[] slots = new int[INITIAL_SLOT_SIZE];
+
+    /**
+     * 当前帧数量
+     */
+    private int frameCount = 0;
+
+    /**
+     * 触发压缩的帧数量,压缩后仍有大量帧被引用时相应放大,避免频繁压缩
+     */
+    private int overflowThreshold = MAX_FRAME_COUNT;
+
+    /**
+     * 字典版本,清空或压缩后id会重新分配,版本随之增加
+     */
+    private int generation = 0;
+
+    /**
+     * 获取帧的id,不存在时分配新id
+     *
+     * @param element 堆栈帧
+     * @return 帧id
+     */
+    public int intern(StackTraceElement element) {
+        int mask = slots.length - 1;
+        int index = mix(element.hashCode()) & mask;
+        while (true) {
+            int slot = slots[index];
+            if (slot == 0) {
+                break;
+            }
+            if (frames[slot - 1].equals(element)) {
+                return slot - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        //新的帧,分配id
+        int id = frameCount++;
+        if (id == frames.length) {
+            frames = Arrays.copyOf(frames, id * 2);
+            frameTexts = Arrays.copyOf(frameTexts, id * 2);
+            keyWordFlags = Arrays.copyOf(keyWordFlags, id * 2);
+        }
+        frames[id] = element;
+        slots[index] = id + 1;
+        //负载超过1/2时扩容
+        if (frameCount * 2 > slots.length) {
+            rehash(slots.length * 2);
+        }
+        return id;
+    }
+
+    /**
+     * 将堆栈转换为帧id
+     *
+     * @param stack 堆栈
+     * @param out   输出的id数组,长度不能小于堆栈深度
+     * @return 写入的id数量
+     */
+    public int encode(StackTraceElement[] stack, int[] out) {
+        int length = stack.length;
+        for (int i = 0; i < length; i++) {
+            out[i] = intern(stack[i]);
+        }
+        return length;
+    }
+
+    /**
+     * 根据id获取帧
+     */
+    public StackTraceElement getFrame(int id) {
+        return frames[id];
+    }
+
+    /**
+     * 根据id获取帧的文本,首次获取时生成并缓存
+     */
+    public String getFrameText(int id) {
+        String text = frameTexts[id];
+        if (text == null) {
+            text = frames[id].toString();
+            frameTexts[id] = text;
+        }
+        return text;
+    }
+
+    /**
+     * 帧是否匹配关键词,每个帧只匹配一次
+     *
+     * @param id      帧id
+     * @param matcher 关键词匹配器
+     */
+    public boolean matchesKeyWord(int id, KeyWordMatcher matcher) {
+        if (matcher != keyWordMatcher) {
+            //关键词变化后重新计算
+            Arrays.fill(keyWordFlags, 0, frameCount, (byte) 0);
+            keyWordMatcher = matcher;
+        }
+        byte flag = keyWordFlags[id];
+        if (flag == 0) {
+            flag = matcher.matches(frames[id]) ? (byte) 1 : (byte) 2;
+            keyWordFlags[id] = flag;
+        }
+        return flag == 1;
+    }
+
+    /**
+     * 将帧id数组转为文本追加到builder,每帧一行
+     *
+     * @param frameIds   帧id数组
+     * @param frameCount 有效的帧数量
+     * @param builder    输出
+     */
+    public void appendStack(int[] frameIds, int frameCount, StringBuilder builder) {
+        for (int i = 0; i < frameCount; i++) {
+            if (i != 0) {
+                builder.append("\n");
+            }
+            builder.append(getFrameText(frameIds[i]));
+        }
+    }
+
+    /**
+     * 当前帧数量
+     */
+    public int size() {
+        return frameCount;
+    }
+
+    /**
+     * 字典版本,版本不变时已分配的id保持不变
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 是否超出帧数量上限
+     */
+    public boolean isOverflow() {
+        return frameCount > overflowThreshold;
+    }
+
+    /**
+     * 清空字典
+     */
+    public void clear() {
+        Arrays.fill(frames, 0, frameCount, null);
+        Arrays.fill(frameTexts, 0, frameCount, null);
+        Arrays.fill(keyWordFlags, 0, frameCount, (byte) 0);
+        Arrays.fill(slots, 0);
+        frameCount = 0;
+        overflowThreshold = MAX_FRAME_COUNT;
+        generation++;
+    }
+
+    /**
+     * 压缩字典,只保留仍被引用的帧,并就地更新引用它们的id
+     *
+     * @param liveQueue 仍在使用的堆栈队列
+     */
+    public void compact(LogStackQueue liveQueue) {
+        StackTraceElement[] oldFrames = Arrays.copyOf(frames, frameCount);
+        clear();
+        for (int index = 0; index < liveQueue.entryCount(); index++) {
+            LogStackInfo info = liveQueue.get(index);
+            int[] frameIds = info.getFrameIds();
+            for (int i = 0; i < info.getFrameCount(); i++) {
+                frameIds[i] = intern(oldFrames[frameIds[i]]);
+            }
+            info.updateSignature();
+        }
+        overflowThreshold = Math.max(MAX_FRAME_COUNT, frameCount * 2);
+    }
+
+    private void rehash(int newSize) {
+        int[] newSlots = new int[newSize];
+        int mask = newSize - 1;
+        for (int id = 0; id < frameCount; id++) {
+            int index = mix(frames[id].hashCode()) & mask;
+            while (newSlots[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            newSlots[index] = id + 1;
+        }
+        slots = newSlots;
+    }
+
+    /**
+     * 打散hashCode,避免线性探测时聚集
+     */
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,139 @@
+package com.kc.uiwatch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关键词多模式匹配(Aho-Corasick自动机)
+ * 所有关键词预先编译为一个自动机,一次扫描即可判断文本中是否包含任意关键词,
+ * 耗时与关键词数量无关。用于按 类名.方法名 筛选堆栈帧,每个帧在FrameTable中只匹配一次
+ */
+public class KeyWordMatcher {
+
+    /**
+     * 每个节点的子节点
+     */
+    private final List<Map<Character, Integer>> children = new ArrayList<>();
+
+    /**
+     * 失配时跳转的节点
+     */
+    private int[] fail;
+
+    /**
+     * 到达该节点时是否已匹配到关键词
+     */
+    private boolean[] output;
+
+    /**
+     * @param keyWords 关键词,空字符串会被忽略
+     */
+    public KeyWordMatcher(String[] keyWords) {
+        children.add(new HashMap<Character, Integer>());
+        List<Boolean> terminal = new ArrayList<>();
+        terminal.add(false);
+        //构建字典树
+        for (String keyWord : keyWords) {
+            if (keyWord == null || keyWord.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < keyWord.length(); i++) {
+                Character c = keyWord.charAt(i);
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<Character, Integer>());
+                    terminal.add(false);
+                    children.get(node).put(c, next);
+                }
+                node = next;
+            }
+            terminal.set(node, true);
+        }
+        int nodeCount = children.size();
+        fail = new int[nodeCount];
+        output = new boolean[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            output[i] = terminal.get(i);
+        }
+        //按层次计算失配跳转,并合并后缀节点的匹配结果
+        LinkedList<Integer> queue = new LinkedList<>();
+        for (Integer child : children.get(0).values()) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.removeFirst();
+            for (Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                int child = entry.getValue();
+                int state = fail[node];
+                while (state != 0 && !children.get(state).containsKey(entry.getKey())) {
+                    state = fail[state];
+                }
+                Integer next = children.get(state).get(entry.getKey());
+                fail[child] = next == null ? 0 : next;
+                output[child] |= output[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * 是否没有任何有效关键词
+     */
+    public boolean isEmpty() {
+        return children.get(0).isEmpty();
+    }
+
+    /**
+     * 堆栈帧的 类名.方法名 中是否包含任意关键词
+     */
+    public boolean matches(StackTraceElement frame) {
+        int state = step(0, frame.getClassName());
+        if (output[state]) {
+            return true;
+        }
+        state = step(state, '.');
+        if (output[state]) {
+            return true;
+        }
+        return output[step(state, frame.getMethodName())];
+    }
+
+    /**
+     * 文本中是否包含任意关键词
+     */
+    public boolean matches(String text) {
+        return output[step(0, text)];
+    }
+
+    /**
+     * 从state开始扫描文本,匹配到关键词时提前返回匹配的状态
+     */
+    private int step(int state, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            if (output[state]) {
+                return state;
+            }
+        }
+        return state;
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            Integer next = children.get(state).get(c);
+            if (next != null) {
+                return next;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.kc.uiwatch;
+
+import java.util.Map;
+
+/**
+ * 一次锁竞争的采样
+ * 主线程处于BLOCKED或WAITING时,按等待位置推测持有锁或被等待的线程,并保存其堆栈
+ * <p>
+ * Android没有可用的获取锁持有者的接口,推测方式为:
+ * 等待位置为从栈顶开始第一个不属于系统类的帧:BLOCKED时通常为栈顶(进入synchronized的方法),
+ * WAITING时为跳过Object.wait、Thread.parkFor$、Unsafe.park、java.util.concurrent等等待实现后的调用方;
+ * 其他线程的堆栈中包含等待位置所在类(含内部类)的帧时视为候选,优先选择RUNNABLE的线程,
+ * 同样等在该位置的线程不是候选。推测结果可能不准确,仅用于辅助定位
+ */
+public class LockContention {
+
+    /**
+     * 等待实现和系统类,查找等待位置时跳过
+     * 系统类几乎出现在所有线程的堆栈中(如 java.lang.Thread.run),不能用于按类推测持有者;
+     * Android 7及以下 Unsafe.park 经由 java.lang.Thread.parkFor$/parkUntil$ 实现
+     */
+    private static final String[] PLATFORM_PREFIXES = {
+            "java.",
+            "javax.",
+            "sun.",
+            "jdk.",
+            "dalvik.",
+            "libcore.",
+            "android.",
+            "com.android."
+    };
+
+    /**
+     * 采样时的主线程状态
+     */
+    private final Thread.State state;
+
+    /**
+     * 等待位置
+     */
+    private final StackTraceElement waitFrame;
+
+    /**
+     * 推测的持有者,未找到时为null
+     */
+    private final String holderName;
+    private final Thread.State holderState;
+    private final StackTraceElement[] holderStack;
+
+    /**
+     * 采样时间,纳秒
+     */
+    private final long timeNanos;
+
+    LockContention(Thread.State state, StackTraceElement waitFrame, String holderName,
+                   Thread.State holderState, StackTraceElement[] holderStack, long timeNanos) {
+        this.state = state;
+        this.waitFrame = waitFrame;
+        this.holderName = holderName;
+        this.holderState = holderState;
+        this.holderStack = holderStack;
+        this.timeNanos = timeNanos;
+    }
+
+    public Thread.State getState() {
+        return state;
+    }
+
+    /**
+     * 主线程等待的位置
+     */
+    public StackTraceElement getWaitFrame() {
+        return waitFrame;
+    }
+
+    /**
+     * 推测的持有锁或被等待的线程名称,未找到时为null
+     */
+    public String getHolderName() {
+        return holderName;
+    }
+
+    public Thread.State getHolderState() {
+        return holderState;
+    }
+
+    /**
+     * 持有者的堆栈,栈顶在前,未找到时为null
+     */
+    public StackTraceElement[] getHolderStack() {
+        return holderStack;
+    }
+
+    long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * 输出锁竞争信息
+     */
+    void appendTo(StringBuilder builder) {
+        builder.append("lock:");
+        builder.append(state);
+        builder.append(" at ");
+        builder.append(waitFrame);
+        builder.append("\n");
+        if (holderName == null) {
+            builder.append("holder:unknown\n\n");
+            return;
+        }
+        builder.append("holder:");
+        builder.append(holderName);
+        builder.append(" ");
+        builder.append(holderState);
+        builder.append("\n");
+        BlockEvent.appendSampleStart(builder, 1, null);
+        for (int i = 0; i < holderStack.length; i++) {
+            if (i != 0) {
+                builder.append("\n");
+            }
+            builder.append(holderStack[i].toString());
+        }
+        BlockEvent.appendSampleEnd(builder);
+    }
+
+    /**
+     * 线程是否处于可能在等锁的状态
+     */
+    static boolean isWaiting(Thread.State state) {
+        return state == Thread.State.BLOCKED || state == Thread.State.WAITING
+                || state == Thread.State.TIMED_WAITING;
+    }
+
+    /**
+     * 等待位置,不是在等锁(如sleep或消息队列空闲)时返回null
+     *
+     * @param state 线程状态
+     * @param stack 线程堆栈
+     */
+    static StackTraceElement findWaitFrame(Thread.State state, StackTraceElement[] stack) {
+        if (stack.length == 0 || !isWaiting(state)) {
+            return null;
+        }
+        if (state != Thread.State.BLOCKED && "java.lang.Thread".equals(stack[0].getClassName())
+                && "sleep".equals(stack[0].getMethodName())) {
+            return null;
+        }
+        for (StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            //消息队列空闲
+            if (state != Thread.State.BLOCKED && "android.os.MessageQueue".equals(className)) {
+                return null;
+            }
+            if (!isPlatformClass(className)) {
+                return frame;
+            }
+        }
+        //只有系统类时无法推测
+        return null;
+    }
+
+    /**
+     * 在其他线程中推测持有者
+     *
+     * @param waiter    等待的线程
+     * @param state     等待线程的状态
+     * @param waitFrame 等待位置
+     */
+    static LockContention find(Thread waiter, Thread.State state, StackTraceElement waitFrame) {
+        long now = System.nanoTime();
+        String waitClass = outerClassName(waitFrame.getClassName());
+        Thread current = Thread.currentThread();
+        Thread bestThread = null;
+        StackTraceElement[] bestStack = null;
+        Thread.State bestState = null;
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            Thread thread = entry.getKey();
+            StackTraceElement[] stack = entry.getValue();
+            if (thread == waiter || thread == current || stack.length == 0) {
+                continue;
+            }
+            Thread.State threadState = thread.getState();
+            //同样等在该位置的线程
+            if (isWaiting(threadState) && waitFrame.equals(findWaitFrame(threadState, stack))) {
+                continue;
+            }
+            if (!containsClass(stack, waitClass)) {
+                continue;
+            }
+            if (bestThread == null || threadState == Thread.State.RUNNABLE && bestState != Thread.State.RUNNABLE) {
+                bestThread = thread;
+                bestStack = stack;
+                bestState = threadState;
+            }
+        }
+        if (bestThread == null) {
+            return new LockContention(state, waitFrame, null, null, null, now);
+        }
+        return new LockContention(state, waitFrame, bestThread.getName(), bestState, bestStack, now);
+    }
+
+    private static boolean containsClass(StackTraceElement[] stack, String outerClassName) {
+        for (StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            if (className.startsWith(outerClassName)
+                    && (className.length() == outerClassName.length() || className.charAt(outerClassName.length()) == '$')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String outerClassName(String className) {
+        int index = className.indexOf('$');
+        return index < 0 ? className : className.substring(0, index);
+    }
+
+    private static boolean isPlatformClass(String className) {
+        for (String prefix : PLATFORM_PREFIXES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
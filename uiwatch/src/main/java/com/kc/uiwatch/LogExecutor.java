@@ -8,11 +8,10 @@ import android.os.Message;
 
 import org.json.JSONObject;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 负责日志收集和输出
@@ -57,11 +56,56 @@ public class LogExecutor {
      */
     private String cacheFileName = "UiWatcherLogData";
 
+    /**
+     * 缓存文件格式,默认为文本
+     */
+    private int cacheFormat = UiWatcher.FORMAT_TEXT;
+
+    /**
+     * 卡顿日志文件,首次保存时创建
+     */
+    private MappedBlockLog blockLog;
+
+    /**
+     * 二进制格式的写入
+     */
+    private BlockRecordWriter blockRecordWriter;
+
+    /**
+     * 日志文件是否打开失败
+     */
+    private boolean blockLogFailed = false;
+
+    /**
+     * 缓存配置是否被修改,下次保存时在执行线程上重新打开日志文件
+     */
+    private volatile boolean blockLogConfigChanged = false;
+
     /**
      * 关键词
      */
     private String[] keyWords = null;
 
+    /**
+     * 预编译的关键词匹配器,为空时不筛选
+     */
+    private volatile KeyWordMatcher keyWordMatcher = null;
+
+    /**
+     * 本次卡顿中因不包含关键词被丢弃的采样次数
+     */
+    private int filteredSampleCount = 0;
+
+    /**
+     * 单次卡顿最多附带的锁竞争数量
+     */
+    private static final int MAX_CONTENTIONS = 4;
+
+    /**
+     * 采样期间推测的锁竞争,只在执行线程读写
+     */
+    private final List<LockContention> contentions = new ArrayList<>();
+
 
     //------------- type config-------------------
     /**
@@ -72,6 +116,19 @@ public class LogExecutor {
      * 数据输出
      */
     private static final int TYPE_OUTPUT = 1;
+    /**
+     * 数据丢弃
+     */
+    private static final int TYPE_DISCARD = 2;
+    /**
+     * 锁竞争
+     */
+    private static final int TYPE_CONTENTION = 3;
+
+    /**
+     * 收集消息的arg1为线程状态的序号+1,0表示未知
+     */
+    private static final Thread.State[] THREAD_STATES = Thread.State.values();
 
     //------------- data config-------------------
     /**
@@ -84,7 +141,53 @@ public class LogExecutor {
      * log堆栈信息队列,只保存限制的条数,防止内存占用过大
      */
     private LogStackQueue mlogStackQueue;
-    private UiWatcher.BlockListener mListener = null;
+    /**
+     * 堆栈帧字典,采样只保存帧id
+     */
+    private FrameTable frameTable;
+    /**
+     * 帧id缓冲区,在采样间复用
+     */
+    private int[] frameIdBuffer = new int[64];
+    /**
+     * 卡顿事件的异步分发,监听在分发线程回调
+     */
+    private volatile BlockEventDispatcher eventDispatcher = null;
+
+    /**
+     * 是否打印卡顿日志
+     */
+    private volatile boolean isPrintLog = true;
+
+    /**
+     * 采样间隔的自适应调节,为null时使用固定间隔
+     */
+    private volatile SamplingGovernor samplingGovernor = null;
+
+    /**
+     * 页面归因,为null时不归因
+     */
+    private volatile ScreenTracker screenTracker = null;
+
+    /**
+     * 命名场景的统计,为null时不统计
+     */
+    private volatile ScenarioTracker scenarioTracker = null;
+
+    /**
+     * 分阶段帧耗时统计,为null时不附带
+     */
+    private volatile FrameMetricsMonitor frameMetricsMonitor = null;
+
+    /**
+     * 折叠堆栈聚合,为null时不聚合
+     */
+    private volatile FoldedStackAggregator stackAggregator = null;
+
+    /**
+     * 下一次卡顿输出时附带的消息耗时,由主线程设置
+     */
+    private final AtomicReference<MessageHistory> pendingMessageHistory = new AtomicReference<>();
 
 
     private LogExecutor() {
@@ -109,6 +212,9 @@ public class LogExecutor {
      * 开启线程
      */
     public void start() {
+        if (logExecutorHandler != null) {
+            return;
+        }
         if (logExecutorThread == null) {
             init();
         }
@@ -119,7 +225,8 @@ public class LogExecutor {
     private void init() {
         logExecutorThread = new HandlerThread("LogExecutor_Thread");
 //        logStackInfoBuilder = new JSONObject();
-        mlogStackQueue = new LogStackQueue();
+        mlogStackQueue = new LogStackQueue(cacheDataSize + 1);
+        frameTable = new FrameTable();
     }
 
     /**
@@ -151,11 +258,19 @@ public class LogExecutor {
         Object stackInfo = msg.obj;
         switch (type) {
             case TYPE_COLLECTION:
-                handleLogExecutorCollectionMessage(stackInfo);
+                handleLogExecutorCollectionMessage(stackInfo, msg.arg1 == 0 ? null : THREAD_STATES[msg.arg1 - 1]);
                 break;
             case TYPE_OUTPUT:
                 handleLogExecutorOutputMessage(msg.arg1);
                 break;
+            case TYPE_DISCARD:
+                discardCollectedLog();
+                break;
+            case TYPE_CONTENTION:
+                if (stackInfo instanceof LockContention) {
+                    collectContention((LockContention) stackInfo);
+                }
+                break;
             default:
                 break;
         }
@@ -174,70 +289,81 @@ public class LogExecutor {
      */
     private void startOutputLogTask(int skipFrame) {
 
-        //校验缓存信息的队列
-        if (mlogStackQueue == null || mlogStackQueue.isEmpty()) {
+        //校验缓存信息的队列,采样全部被关键词筛掉时仍输出卡顿,只附带筛掉的次数
+        if (mlogStackQueue == null || mlogStackQueue.isEmpty() && filteredSampleCount == 0) {
+            contentions.clear();
             return;
         }
-        //将获取的队列内的内容遍历获取
-        StringBuilder logStackInfoBuilder = new StringBuilder();
+        MonitorCounters counters = MonitorCounters.getInstance();
+        counters.beginSection("UiWatcher:output");
+        long cpuStart = MonitorCounters.threadCpuNanos();
+        long outputStart = System.nanoTime();
+        outputBlockLog(skipFrame);
+        counters.onOutput(System.nanoTime() - outputStart);
+        counters.onSamplerCpu(cpuStart);
+        counters.endSection();
+    }
 
-        logStackInfoBuilder.append("block:");
-        logStackInfoBuilder.append(skipFrame);
-        logStackInfoBuilder.append(" \n");
-        logStackInfoBuilder.append("delay:");
-        logStackInfoBuilder.append(delayTime);
-        logStackInfoBuilder.append(" \n");
-        logStackInfoBuilder.append("time:");
-        logStackInfoBuilder.append(TimeUtils.getCurrentFormatTime());
-        logStackInfoBuilder.append(" \n");
-        logStackInfoBuilder.append(" \n");
-
-
-
-        for (LogStackInfo stackInfo :  mlogStackQueue.getLogStackInfoQueue()) {
-            logStackInfoBuilder.append("~~~");
-            logStackInfoBuilder.append("\n");
-            if (stackInfo.getCount() > 1) {
-                logStackInfoBuilder.append("count:");
-                logStackInfoBuilder.append(stackInfo.getCount());
-                logStackInfoBuilder.append("\n");
-            }
+    /**
+     * 生成卡顿事件,并按配置合并、保存、打印和回调
+     */
+    private void outputBlockLog(int skipFrame) {
+        long outputTimeMillis = System.currentTimeMillis();
+        MessageHistory messageHistory = pendingMessageHistory.getAndSet(null);
+        FrameMetricsMonitor metricsMonitor = frameMetricsMonitor;
+        long[][] slowFrames = metricsMonitor == null ? null : metricsMonitor.getSlowFrames(skipFrame);
 
-//            logStackInfoBuilder.append("startP:");
-//            logStackInfoBuilder.append(stackInfo.getStartTime());
-//            logStackInfoBuilder.append("\n");
-//
-//            if (stackInfo.getEndTime() != 0) {
-//                logStackInfoBuilder.append("endP:");
-//                logStackInfoBuilder.append(stackInfo.getEndTime());
-//                logStackInfoBuilder.append("\n");
-//            }
+        //只保存帧对象,文本在需要时才生成
+        List<BlockEvent.Sample> samples = BlockEvent.buildSamples(frameTable, mlogStackQueue);
+        //卡顿在检测到之后立即输出,此时的页面即为卡顿发生的页面
+        ScreenTracker tracker = screenTracker;
+        BlockEvent event = new BlockEvent(skipFrame, getDelayTime(), outputTimeMillis, filteredSampleCount,
+                messageHistory, slowFrames, samples, null, takeContentions(skipFrame),
+                tracker == null ? null : tracker.getCurrentScreen());
 
-            logStackInfoBuilder.append(stackInfo.getStackMessage());
-            logStackInfoBuilder.append("\n");
-            logStackInfoBuilder.append("~~~");
-            logStackInfoBuilder.append("\n");
-            logStackInfoBuilder.append("\n");
+        //打印或保存文本时在此生成,复用帧字典中缓存的帧文本
+        boolean saveText = isNeedCacheToFile && cacheFormat == UiWatcher.FORMAT_TEXT;
+        if (isPrintLog || saveText) {
+            event.setText(buildText(event));
+        }
+        //合并到折叠堆栈
+        FoldedStackAggregator aggregator = stackAggregator;
+        if (aggregator != null) {
+            aggregator.add(frameTable, mlogStackQueue, skipFrame);
+        }
+        //二进制格式直接保存帧id,需要在清除队列前写入
+        if (isNeedCacheToFile && cacheFormat == UiWatcher.FORMAT_BINARY) {
+            saveBlockRecordToFile(event);
         }
         //清除原队列数据
-        mlogStackQueue.getLogStackInfoQueue().clear();
-        //获取全部的堆栈信息
-        String allStackInfo = logStackInfoBuilder.toString();
+        mlogStackQueue.clear();
+        filteredSampleCount = 0;
+        contentions.clear();
+        //队列已空,帧字典过大时直接清空
+        if (frameTable.isOverflow()) {
+            frameTable.clear();
+        }
+        if (tracker != null) {
+            tracker.onBlock(event);
+        }
+        ScenarioTracker scenarios = scenarioTracker;
+        if (scenarios != null) {
+            scenarios.onBlock(event);
+        }
         //输出信息并视情况缓存
-
-        if (mListener != null) {
-            mListener.onUiBlock(allStackInfo);
+        BlockEventDispatcher dispatcher = eventDispatcher;
+        if (dispatcher != null) {
+            dispatcher.dispatch(event);
         }
 
-//        if (SystemInfo.DEBUG) {
-            LogUtils.printLog(tag, allStackInfo);
-//        }
-
+        if (isPrintLog) {
+            LogUtils.printLog(tag, event.toText());
+        }
 
         //检测是否需要存储到本地
-//        if (isNeedCacheToFile) {
-//            saveAllStackInfoToFile(allStackInfo);
-//        }
+        if (saveText) {
+            saveAllStackInfoToFile(event.toText());
+        }
 
 
 
@@ -290,56 +416,98 @@ public class LogExecutor {
 
 
 
+    /**
+     * 丢弃已收集但未卡顿的堆栈信息
+     */
+    public void discardCollectedLog() {
+        if (mlogStackQueue == null) {
+            return;
+        }
+        mlogStackQueue.clear();
+        filteredSampleCount = 0;
+        contentions.clear();
+        MonitorCounters.getInstance().onDiscard();
+        if (frameTable.isOverflow()) {
+            frameTable.clear();
+        }
+    }
+
     /**
      * 保存所有的堆栈信息到文件
+     * 追加到预先分配的内存映射文件,首次写入或切换分段时才会创建文件夹和文件
      *
      * @param allStackInfo 所有的堆栈信息
      */
     private void saveAllStackInfoToFile(String allStackInfo) {
-        RandomAccessFile rfile = null;
-        //获取文件通道
-        FileChannel channel;
+        if (!prepareBlockLog()) {
+            return;
+        }
         try {
-            //根据配置生成文件夹地址
-            final String finalFileRootFolderPath = Environment.getExternalStorageDirectory() + "/" + cacheFolder;
-            final String finalFileFolderPath = finalFileRootFolderPath + "/" + TimeUtils.getFileFolderNameByTime();
-            //校验文件夹是否存在,不存在则创建
-            File fileFolder = new File(finalFileFolderPath);
-            if (!fileFolder.exists()) {
-                fileFolder.mkdirs();
-            }
-            //校验文件是否存在
-            String cacheFilePath = finalFileFolderPath + "/" + cacheFileName + ".txt";
-            File cacheFile = new File(cacheFilePath);
-            if (!cacheFile.exists()) {
-                cacheFile.createNewFile();
-            }
-            //追加文件写入新的堆栈信息
-            //获取文件
-            rfile = new RandomAccessFile(cacheFilePath, "rw");
-            //获取文件通道
-            channel = rfile.getChannel();
-            channel.position(channel.size());
-            //写入缓冲区
-            byte[] allStackInfoBytes = allStackInfo.getBytes();
-            ByteBuffer buff = ByteBuffer.wrap(allStackInfoBytes);
-            buff.put(allStackInfoBytes);
-            buff.flip();
-            //写入文件
-            channel.write(buff);
+            MonitorCounters.getInstance().onBytesWritten(blockLog.write(allStackInfo));
         } catch (IOException e) {
+            //通常是没有存储权限,不再重复尝试,直到缓存配置被修改
             e.printStackTrace();
-        } finally {
-            //关闭流,刷新到文件
-            if (rfile != null) {
-                try {
-                    rfile.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            blockLogFailed = true;
+            closeBlockLog();
+        }
+    }
+
+    /**
+     * 以二进制格式保存当前队列中的卡顿信息
+     *
+     * @param event 卡顿事件
+     */
+    private void saveBlockRecordToFile(BlockEvent event) {
+        if (!prepareBlockLog()) {
+            return;
+        }
+        try {
+            if (blockRecordWriter == null) {
+                blockRecordWriter = new BlockRecordWriter();
             }
+            int bytes = blockRecordWriter.write(blockLog, frameTable, mlogStackQueue, event);
+            MonitorCounters.getInstance().onBytesWritten(bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            blockLogFailed = true;
+            closeBlockLog();
         }
+    }
 
+    /**
+     * 按当前配置准备日志文件
+     *
+     * @return 是否可以写入
+     */
+    private boolean prepareBlockLog() {
+        if (blockLogConfigChanged) {
+            blockLogConfigChanged = false;
+            blockLogFailed = false;
+            closeBlockLog();
+        }
+        if (blockLogFailed) {
+            return false;
+        }
+        if (blockLog == null) {
+            //根据配置生成文件夹地址,二进制格式使用单独的文件
+            String rootFolderPath = Environment.getExternalStorageDirectory() + "/" + cacheFolder;
+            String fileName = cacheFormat == UiWatcher.FORMAT_BINARY
+                    ? cacheFileName + BlockRecordFormat.FILE_NAME_SUFFIX : cacheFileName;
+            blockLog = new MappedBlockLog(rootFolderPath, fileName, MappedBlockLog.DEFAULT_SEGMENT_SIZE);
+        }
+        return true;
+    }
+
+    /**
+     * 关闭日志文件,下次保存时按当前配置重新打开
+     */
+    private void closeBlockLog() {
+        if (blockLog != null) {
+            blockLog.close();
+            blockLog = null;
+        }
+        //新打开的文件需要重新写入帧定义
+        blockRecordWriter = null;
     }
 
     /**
@@ -347,9 +515,9 @@ public class LogExecutor {
      *
      * @param stackInfo 待缓存堆栈信息
      */
-    private void handleLogExecutorCollectionMessage(Object stackInfo) {
+    private void handleLogExecutorCollectionMessage(Object stackInfo, Thread.State state) {
         //收集堆栈信息
-        startCollectionLogTask(stackInfo);
+        startCollectionLogTask(stackInfo, state);
     }
 
     /**
@@ -377,6 +545,29 @@ public class LogExecutor {
         return collectionMsg;
     }
 
+    /**
+     * 创建收集的消息,并附带采样时的线程状态
+     *
+     * @param stackInfo 堆栈消息
+     * @param state     线程状态
+     */
+    public Message obtainCollectionMessage(Object stackInfo, Thread.State state) {
+        Message collectionMsg = obtainCollectionMessage(stackInfo);
+        if (collectionMsg != null && state != null) {
+            collectionMsg.arg1 = state.ordinal() + 1;
+        }
+        return collectionMsg;
+    }
+
+    /**
+     * 创建锁竞争的消息
+     *
+     * @param contention 锁竞争
+     */
+    public Message obtainContentionMessage(LockContention contention) {
+        return Message.obtain(logExecutorHandler, TYPE_CONTENTION, contention);
+    }
+
     /**
      * 创建输出的消息
      */
@@ -385,6 +576,13 @@ public class LogExecutor {
         return outputMsg;
     }
 
+    /**
+     * 创建丢弃的消息
+     */
+    public Message obtainDiscardMessage() {
+        return Message.obtain(logExecutorHandler, TYPE_DISCARD, null);
+    }
+
 
     private int mum = 0;
 
@@ -393,7 +591,7 @@ public class LogExecutor {
      *
      * @param stackInfo 堆栈信息对象
      */
-    private void startCollectionLogTask(Object stackInfo) {
+    private void startCollectionLogTask(Object stackInfo, Thread.State state) {
         //校验数据类型是否正确
         if (!(stackInfo instanceof StackTraceElement[])) {
             return;
@@ -405,25 +603,174 @@ public class LogExecutor {
             return;
         }
 
+        MonitorCounters counters = MonitorCounters.getInstance();
+        counters.beginSection("UiWatcher:collect");
+        long cpuStart = MonitorCounters.threadCpuNanos();
+        long collectStart = System.nanoTime();
+        collectStackTrace(stackTraceElements, state);
+        counters.onCollect(System.nanoTime() - collectStart, mlogStackQueue.size());
+        counters.onSamplerCpu(cpuStart);
+        counters.endSection();
+    }
+
+    /**
+     * 将堆栈转换为帧id,筛选后存入队列
+     */
+    private void collectStackTrace(StackTraceElement[] stackTraceElements, Thread.State state) {
+        //将堆栈转换为帧id,重复的帧不会产生新对象
+        if (frameIdBuffer.length < stackTraceElements.length) {
+            frameIdBuffer = new int[stackTraceElements.length * 2];
+        }
+        int frameCount = frameTable.encode(stackTraceElements, frameIdBuffer);
+
+        //按关键词筛选,每个帧的匹配结果缓存在帧字典中
+        KeyWordMatcher matcher = keyWordMatcher;
+        if (matcher != null) {
+            frameCount = trimToKeyWordFrames(matcher, frameIdBuffer, frameCount);
+            if (frameCount == 0) {
+                filteredSampleCount++;
+                MonitorCounters.getInstance().onSampleFiltered();
+                return;
+            }
+        }
+
+        //存储到队列
+        mlogStackQueue.add(frameIdBuffer, frameCount, state);
+        mlogStackQueue.trim(cacheDataSize);
+
+        //长时间无卡顿时帧字典会持续增长,超出上限后只保留队列内仍引用的帧
+        if (frameTable.isOverflow()) {
+            frameTable.compact(mlogStackQueue);
+        }
+    }
+
+    /**
+     * 按卡顿日志格式生成文本,帧文本取自帧字典的缓存,需在清除队列前调用
+     */
+    private String buildText(BlockEvent event) {
         StringBuilder logStackInfoBuilder = new StringBuilder();
-        int i = 1;
-        for (StackTraceElement mStackInfo : stackTraceElements) {
-            String info = mStackInfo.toString();
-            logStackInfoBuilder.append(info);
-            if (i != stackTraceElements.length) {
-                logStackInfoBuilder.append("\n");
+        event.appendHeader(logStackInfoBuilder);
+        for (int index = 0; index < mlogStackQueue.entryCount(); index++) {
+            LogStackInfo stackInfo = mlogStackQueue.get(index);
+            BlockEvent.appendSampleStart(logStackInfoBuilder, stackInfo.getCount(), stackInfo.getState());
+            frameTable.appendStack(stackInfo.getFrameIds(), stackInfo.getFrameCount(), logStackInfoBuilder);
+            BlockEvent.appendSampleEnd(logStackInfoBuilder);
+        }
+        event.appendContentions(logStackInfoBuilder);
+        return logStackInfoBuilder.toString();
+    }
+
+    /**
+     * 取出卡顿期间的锁竞争,持续采样时较早窗口的锁竞争不属于本次卡顿
+     */
+    private List<LockContention> takeContentions(int skipFrame) {
+        if (contentions.isEmpty()) {
+            return null;
+        }
+        long blockStart = System.nanoTime() - (skipFrame + getDelayTime()) * 1000000L;
+        List<LockContention> result = new ArrayList<>(contentions.size());
+        for (LockContention contention : contentions) {
+            if (contention.getTimeNanos() - blockStart >= 0) {
+                result.add(contention);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 去掉最外层关键词帧之外的帧(Looper、ActivityThread等框架调用),栈顶方向的帧保留用于判断卡在哪个调用上
+     *
+     * @return 保留的帧数量,不包含任何关键词帧时返回0
+     */
+    private int trimToKeyWordFrames(KeyWordMatcher matcher, int[] frameIds, int frameCount) {
+        for (int i = frameCount - 1; i >= 0; i--) {
+            if (frameTable.matchesKeyWord(frameIds[i], matcher)) {
+                return i + 1;
             }
-            i++;
         }
+        return 0;
+    }
 
+    /**
+     * 在调用线程上直接收集堆栈,用于单线程采样模式
+     *
+     * @param stackTraceElements 堆栈
+     */
+    public void collectStack(StackTraceElement[] stackTraceElements) {
+        startCollectionLogTask(stackTraceElements, null);
+    }
 
-        //获取当前堆栈信息,存储到队列
-        String currentStackInfo = logStackInfoBuilder.toString();
-        mlogStackQueue.add(currentStackInfo);
+    /**
+     * 在调用线程上直接收集堆栈,并记录采样时的线程状态
+     *
+     * @param stackTraceElements 堆栈
+     * @param state              线程状态
+     */
+    public void collectStack(StackTraceElement[] stackTraceElements, Thread.State state) {
+        startCollectionLogTask(stackTraceElements, state);
+    }
 
-        if (mlogStackQueue.size()  - mlogStackQueue.getLogStackInfoQueue().get(0).getCount() >= cacheDataSize) {
-            mlogStackQueue.getLogStackInfoQueue().remove(0);
+    /**
+     * 保存一次锁竞争,超出数量时丢弃最早的
+     *
+     * @param contention 锁竞争
+     */
+    public void collectContention(LockContention contention) {
+        if (contentions.size() == MAX_CONTENTIONS) {
+            contentions.remove(0);
         }
+        contentions.add(contention);
+    }
+
+    /**
+     * 在调用线程上直接输出卡顿信息,用于单线程采样模式
+     *
+     * @param skipFrame 卡顿时长
+     */
+    public void outputBlock(int skipFrame) {
+        startOutputLogTask(skipFrame);
+    }
+
+    /**
+     * 采样间隔,开启自适应调节时为调节后的间隔
+     */
+    public int getDelayTime() {
+        SamplingGovernor governor = samplingGovernor;
+        return governor == null ? delayTime : governor.getInterval();
+    }
+
+    //----------------供其他线程的卡顿检测使用的配置----------------
+
+    int getCacheDataSize() {
+        return cacheDataSize;
+    }
+
+    String getTag() {
+        return tag;
+    }
+
+    boolean isNeedCacheToFile() {
+        return isNeedCacheToFile;
+    }
+
+    String getCacheFolder() {
+        return cacheFolder;
+    }
+
+    String getCacheFileName() {
+        return cacheFileName;
+    }
+
+    int getCacheFormat() {
+        return cacheFormat;
+    }
+
+    boolean isPrintLog() {
+        return isPrintLog;
+    }
+
+    BlockEventDispatcher getEventDispatcher() {
+        return eventDispatcher;
     }
 
     /**
@@ -450,6 +797,9 @@ public class LogExecutor {
     public void setCacheDataSize(int cacheDataSize, int delayTime) {
         this.cacheDataSize = cacheDataSize;
         this.delayTime = delayTime;
+        if (mlogStackQueue != null) {
+            mlogStackQueue.setCapacity(cacheDataSize + 1);
+        }
     }
 
     /**
@@ -477,6 +827,7 @@ public class LogExecutor {
      */
     public void setCacheFolder(String cacheFolder) {
         this.cacheFolder = cacheFolder;
+        blockLogConfigChanged = true;
     }
 
     /**
@@ -486,6 +837,17 @@ public class LogExecutor {
      */
     public void setCacheFileName(String cacheFileName) {
         this.cacheFileName = cacheFileName;
+        blockLogConfigChanged = true;
+    }
+
+    /**
+     * 设置缓存文件格式
+     *
+     * @param cacheFormat {@link UiWatcher#FORMAT_TEXT} 或 {@link UiWatcher#FORMAT_BINARY}
+     */
+    public void setCacheFormat(int cacheFormat) {
+        this.cacheFormat = cacheFormat;
+        blockLogConfigChanged = true;
     }
 
     /**
@@ -495,9 +857,85 @@ public class LogExecutor {
      */
     public void setKeyWords(String[] keyWords) {
         this.keyWords = keyWords;
+        KeyWordMatcher matcher = null;
+        if (keyWords != null && keyWords.length > 0) {
+            matcher = new KeyWordMatcher(keyWords);
+            if (matcher.isEmpty()) {
+                matcher = null;
+            }
+        }
+        this.keyWordMatcher = matcher;
+    }
+
+    /**
+     * 设置下一次卡顿输出时附带的消息耗时
+     *
+     * @param messageHistory 消息耗时快照
+     */
+    public void setPendingMessageHistory(MessageHistory messageHistory) {
+        pendingMessageHistory.set(messageHistory);
     }
 
-    public void setListener(UiWatcher.BlockListener listener) {
-        this.mListener = listener;
+    /**
+     * 设置分阶段帧耗时统计
+     *
+     * @param frameMetricsMonitor 为null时不附带
+     */
+    public void setFrameMetricsMonitor(FrameMetricsMonitor frameMetricsMonitor) {
+        this.frameMetricsMonitor = frameMetricsMonitor;
+    }
+
+    /**
+     * 设置折叠堆栈聚合
+     *
+     * @param stackAggregator 为null时不聚合
+     */
+    public void setStackAggregator(FoldedStackAggregator stackAggregator) {
+        this.stackAggregator = stackAggregator;
+    }
+
+    /**
+     * 设置页面归因
+     *
+     * @param screenTracker 为null时不归因
+     */
+    public void setScreenTracker(ScreenTracker screenTracker) {
+        this.screenTracker = screenTracker;
+    }
+
+    /**
+     * 设置命名场景的统计
+     *
+     * @param scenarioTracker 为null时不统计
+     */
+    public void setScenarioTracker(ScenarioTracker scenarioTracker) {
+        this.scenarioTracker = scenarioTracker;
+    }
+
+    /**
+     * 设置卡顿事件的分发
+     *
+     * @param eventDispatcher 为null时不回调
+     */
+    public void setEventDispatcher(BlockEventDispatcher eventDispatcher) {
+        this.eventDispatcher = eventDispatcher;
+    }
+
+    /**
+     * 设置采样间隔的自适应调节
+     *
+     * @param samplingGovernor 为null时使用固定的采样间隔
+     */
+    public void setSamplingGovernor(SamplingGovernor samplingGovernor) {
+        this.samplingGovernor = samplingGovernor;
+    }
+
+    /**
+     * 设置是否打印卡顿日志,不打印且不保存文本时只在监听需要时才生成文本
+     *
+     * @param printLog 是否打印
+     */
+    public void setPrintLog(boolean printLog) {
+        this.isPrintLog = printLog;
     }
 }
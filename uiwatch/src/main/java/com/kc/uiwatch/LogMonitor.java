@@ -5,7 +5,7 @@ package com.kc.uiwatch;
  * 用于日志的存储和输出
  * LogMonitor通过handler对LogThread 进行操作，具体执行是LogThread
  */
-public class LogMonitor {
+public class LogMonitor implements BlockSampler {
     /**
      * 日志监听实例
      */
@@ -13,6 +13,21 @@ public class LogMonitor {
 
     private LogNotifier logNotifier;
 
+    /**
+     * 是否使用单线程采样器,默认false
+     */
+    private boolean useSingleThreadSampler = false;
+
+    /**
+     * 是否为看门狗模式,只在帧超时后才采样
+     */
+    private boolean watchdogMode = false;
+
+    /**
+     * 最近一次布置看门狗的等待时间,消息耗时检测输出后按同样的等待时间重新布置
+     */
+    private long watchdogDelay = 0;
+
 
     /**
      * 初始化日志打印类(内部开启两个线程一个用于缓存,一个用于输出)
@@ -38,20 +53,49 @@ public class LogMonitor {
 
 
     /**
-     * 开启Log监听
+     * 开启Log监听,线程已存在时直接恢复
      */
+    @Override
     public void startMonitor() {
+        if (useSingleThreadSampler) {
+            LogSampler.getInstance().start();
+            return;
+        }
         if (logNotifier == null) {
             return;
         }
+        boolean wasCollecting = logNotifier.isStarted() && !logNotifier.isPaused();
         logNotifier.start();
-        logNotifier.startCollectionNotifier();
+        logNotifier.resume();
+        //看门狗模式下由每一帧布置采样,不需要持续采集;已在采集时不重复开始
+        if (!watchdogMode && !wasCollecting) {
+            logNotifier.startCollectionNotifier();
+        }
+    }
+
+    /**
+     * 暂停Log监听,线程保留并空闲等待,未输出的采样被丢弃
+     */
+    @Override
+    public void pauseMonitor() {
+        if (useSingleThreadSampler) {
+            LogSampler.getInstance().pause();
+            return;
+        }
+        if (logNotifier != null) {
+            logNotifier.pause();
+        }
     }
 
     /**
      * 关闭Log监听
      */
+    @Override
     public void stopMonitor() {
+        if (useSingleThreadSampler) {
+            LogSampler.getInstance().stop();
+            return;
+        }
         if (logNotifier != null) {
             logNotifier.stop();
         }
@@ -60,8 +104,18 @@ public class LogMonitor {
 
     /**
      * 开始输出并重新开始收集日志
+     * 看门狗模式下不持续采集,输出后重新布置看门狗
      */
+    @Override
     public void startOutputAndResetCollectionMonitor(int skipFrameCount) {
+        if (watchdogMode) {
+            armWatchdog(skipFrameCount, watchdogDelay);
+            return;
+        }
+        if (useSingleThreadSampler) {
+            LogSampler.getInstance().requestOutput(skipFrameCount);
+            return;
+        }
         if (logNotifier == null) {
             return;
         }
@@ -69,8 +123,46 @@ public class LogMonitor {
     }
 
 
+    /**
+     * 看门狗模式,每帧调用一次,帧超时delay后才开始采样,到下一帧停止
+     *
+     * @param skipFrameCount 卡顿时长,未卡顿时为0
+     * @param delay          开始采样前的等待时间
+     */
+    @Override
+    public void armWatchdog(int skipFrameCount, long delay) {
+        watchdogDelay = delay;
+        if (useSingleThreadSampler) {
+            LogSampler.getInstance().armWatchdog(skipFrameCount, delay);
+            return;
+        }
+        if (logNotifier == null) {
+            return;
+        }
+        logNotifier.armWatchdog(skipFrameCount, delay);
+    }
+
     //-----------------基础信息---------------------
 
+    /**
+     * 设置是否为看门狗模式
+     *
+     * @param watchdogMode true:帧超时后才采样 false:持续采样
+     */
+    public void setWatchdogMode(boolean watchdogMode) {
+        this.watchdogMode = watchdogMode;
+        LogSampler.getInstance().setWatchdogMode(watchdogMode);
+    }
+
+    /**
+     * 设置是否使用单线程采样器
+     *
+     * @param useSingleThreadSampler true:单线程采样 false:LogNotifier与LogExecutor双线程
+     */
+    public void setUseSingleThreadSampler(boolean useSingleThreadSampler) {
+        this.useSingleThreadSampler = useSingleThreadSampler;
+    }
+
     /**
      * 设置缓存数量
      *
@@ -115,6 +207,17 @@ public class LogMonitor {
         }
     }
 
+    /**
+     * 设置缓存文件格式
+     *
+     * @param cacheFormat 文件格式
+     */
+    public void setCacheFormat(int cacheFormat) {
+        if (logNotifier != null) {
+            logNotifier.setCacheFormat(cacheFormat);
+        }
+    }
+
     /**
      * 设置筛选关键词
      *
@@ -126,9 +229,80 @@ public class LogMonitor {
         }
     }
 
-    public void setListener(UiWatcher.BlockListener listener) {
+    /**
+     * 设置分阶段帧耗时统计
+     *
+     * @param frameMetricsMonitor 为null时不附带
+     */
+    public void setFrameMetricsMonitor(FrameMetricsMonitor frameMetricsMonitor) {
+        if (logNotifier != null) {
+            logNotifier.setFrameMetricsMonitor(frameMetricsMonitor);
+        }
+    }
+
+    /**
+     * 设置折叠堆栈聚合
+     *
+     * @param stackAggregator 为null时不聚合
+     */
+    public void setStackAggregator(FoldedStackAggregator stackAggregator) {
+        if (logNotifier != null) {
+            logNotifier.setStackAggregator(stackAggregator);
+        }
+    }
+
+    /**
+     * 设置页面归因
+     *
+     * @param screenTracker 为null时不归因
+     */
+    public void setScreenTracker(ScreenTracker screenTracker) {
+        if (logNotifier != null) {
+            logNotifier.setScreenTracker(screenTracker);
+        }
+    }
+
+    /**
+     * 设置命名场景的统计
+     *
+     * @param scenarioTracker 为null时不统计
+     */
+    public void setScenarioTracker(ScenarioTracker scenarioTracker) {
+        if (logNotifier != null) {
+            logNotifier.setScenarioTracker(scenarioTracker);
+        }
+    }
+
+    /**
+     * 设置卡顿事件的分发
+     *
+     * @param eventDispatcher 为null时不回调
+     */
+    public void setEventDispatcher(BlockEventDispatcher eventDispatcher) {
+        if (logNotifier != null) {
+            logNotifier.setEventDispatcher(eventDispatcher);
+        }
+    }
+
+    /**
+     * 设置是否打印卡顿日志
+     *
+     * @param printLog 是否打印
+     */
+    public void setPrintLog(boolean printLog) {
+        if (logNotifier != null) {
+            logNotifier.setPrintLog(printLog);
+        }
+    }
+
+    /**
+     * 设置采样间隔的自适应调节
+     *
+     * @param samplingGovernor 为null时使用固定的采样间隔
+     */
+    public void setSamplingGovernor(SamplingGovernor samplingGovernor) {
         if (logNotifier != null) {
-            logNotifier.setListener(listener);
+            logNotifier.setSamplingGovernor(samplingGovernor);
         }
     }
 }
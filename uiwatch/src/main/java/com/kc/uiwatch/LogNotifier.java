@@ -30,11 +30,25 @@ public class LogNotifier {
      * 数据输出
      */
     private static final int TYPE_OUTPUT = 1;
+    /**
+     * 数据丢弃
+     */
+    private static final int TYPE_DISCARD = 2;
 
     /**
-     * 默认Log的获取间隔
+     * 上次布置看门狗后是否已经采样过,只在采样过时才需要丢弃
      */
-    private static long DEFAULT_DELAY = 30;
+    private volatile boolean collectedSinceArm = false;
+
+    /**
+     * 是否暂停中,暂停时线程保留但不再采样
+     */
+    private volatile boolean paused = false;
+
+    /**
+     * 主线程等锁时推测持有者,只在通知线程使用
+     */
+    private final ContentionProbe contentionProbe = new ContentionProbe();
 
     private LogNotifier() {
         init();
@@ -52,17 +66,55 @@ public class LogNotifier {
     }
 
     /**
-     * 开始
+     * 开始,已开始时不重复创建线程
      */
-    public void start() {
+    public synchronized void start() {
+        if (logNotifierHandler != null) {
+            return;
+        }
         if (logExecutor == null || logNotifierThread == null) {
             init();
         }
+        paused = false;
         logExecutor.start();
         logNotifierThread.start();
         initLogNotifierHandler();
     }
 
+    /**
+     * 是否已开始(包括暂停中)
+     */
+    public boolean isStarted() {
+        return logNotifierHandler != null;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * 暂停采样,线程保留在Looper中空闲等待,不占用CPU
+     * 已触发的输出照常进行,之后丢弃未输出的采样
+     */
+    public void pause() {
+        Handler handler = logNotifierHandler;
+        if (handler == null || paused) {
+            return;
+        }
+        paused = true;
+        handler.removeMessages(TYPE_COLLECTION);
+        //排在已触发的输出之后
+        sendDiscardMessage();
+        collectedSinceArm = false;
+    }
+
+    /**
+     * 结束暂停,是否重新开始采集由调用方决定
+     */
+    public void resume() {
+        paused = false;
+    }
+
     /**
      * 初始化
      */
@@ -101,12 +153,21 @@ public class LogNotifier {
             case TYPE_COLLECTION:
                 //通知LogExecutor处理收集任务
                 sendCollectionMessageToLogExecutor();
-                //通知自身下次收集
-                sendCollectionMessage(DEFAULT_DELAY);
+                collectedSinceArm = true;
+                //通知自身下次收集,暂停后不再继续
+                if (!paused) {
+                    sendCollectionMessage(LogExecutor.getInstance().getDelayTime());
+                }
                 break;
             case TYPE_OUTPUT:
                 //通知LogExecutor处理输出任务
                 sendOutputMessageToLogExecutor(msg.arg1);
+                contentionProbe.reset();
+                break;
+            case TYPE_DISCARD:
+                //通知LogExecutor丢弃未卡顿时的采样
+                sendDiscardMessageToLogExecutor();
+                contentionProbe.reset();
                 break;
             default:
                 break;
@@ -125,6 +186,16 @@ public class LogNotifier {
         logExecutor.sendLogExecutorMessage(message);
     }
 
+    /**
+     * 发送丢弃日志消息给LogExecutor
+     */
+    private void sendDiscardMessageToLogExecutor() {
+        if (logExecutor == null) {
+            return;
+        }
+        logExecutor.sendLogExecutorMessage(logExecutor.obtainDiscardMessage());
+    }
+
     /**
      * 发送手机日志消息给LogExecutor
      */
@@ -133,9 +204,23 @@ public class LogNotifier {
             return;
         }
         Thread mainThread = Looper.getMainLooper().getThread();
+        //抓取期间主线程被挂起,计入自身开销
+        MonitorCounters counters = MonitorCounters.getInstance();
+        counters.beginSection("UiWatcher:capture");
+        long cpuStart = MonitorCounters.threadCpuNanos();
+        long captureStart = System.nanoTime();
         StackTraceElement[] stackInfo = mainThread.getStackTrace();
-        Message message = logExecutor.obtainCollectionMessage(stackInfo);
+        Thread.State state = mainThread.getState();
+        counters.onCapture(System.nanoTime() - captureStart);
+        counters.onSamplerCpu(cpuStart);
+        counters.endSection();
+        Message message = logExecutor.obtainCollectionMessage(stackInfo, state);
         logExecutor.sendLogExecutorMessage(message);
+        //主线程等锁时,在同一采样窗口内抓取推测的持有者堆栈
+        LockContention contention = contentionProbe.probe(mainThread, state, stackInfo);
+        if (contention != null) {
+            logExecutor.sendLogExecutorMessage(logExecutor.obtainContentionMessage(contention));
+        }
     }
 
     /**
@@ -154,10 +239,30 @@ public class LogNotifier {
         startCollectionNotifier();
     }
 
+    /**
+     * 看门狗模式,每帧调用一次
+     * 上一帧卡顿时输出期间的采样,未卡顿时丢弃,然后在delay之后才开始采样,
+     * 帧按时到达时不会进行任何采样
+     *
+     * @param skipFrame 卡顿时长,未卡顿时为0
+     * @param delay     本帧开始采样前的等待时间
+     */
+    public void armWatchdog(int skipFrame, long delay) {
+        removeAllMessage();
+        if (skipFrame > 0) {
+            sendOutputMessage(skipFrame, 0);
+        } else if (collectedSinceArm) {
+            sendDiscardMessage();
+        }
+        collectedSinceArm = false;
+        sendCollectionMessage(delay);
+    }
+
     /**
      * 停止
      */
-    public void stop() {
+    public synchronized void stop() {
+        paused = false;
         if (logExecutor != null) {
             logExecutor.stop();
             logExecutor = null;
@@ -195,6 +300,16 @@ public class LogNotifier {
         logNotifierHandler.sendMessageDelayed(outputMessage, delay);
     }
 
+    /**
+     * 发送丢弃消息
+     */
+    private void sendDiscardMessage() {
+        if (logNotifierHandler == null) {
+            return;
+        }
+        logNotifierHandler.sendMessage(Message.obtain(logNotifierHandler, TYPE_DISCARD));
+    }
+
     /**
      * 发送收集消息到当前的handler
      */
@@ -207,6 +322,7 @@ public class LogNotifier {
     }
 
     //-----------------基础信息---------------------
+    //停止后logExecutor被置空,配置直接设置到单例上,下次开始时仍然有效
 
     /**
      * 设置缓存数量
@@ -214,10 +330,7 @@ public class LogNotifier {
      * @param cacheDataSize 缓存数量,默认10
      */
     public void setCacheDataSize(int cacheDataSize, int cacheDelayTime) {
-        DEFAULT_DELAY = cacheDelayTime;
-        if (logExecutor != null) {
-            logExecutor.setCacheDataSize(cacheDataSize, cacheDelayTime);
-        }
+        LogExecutor.getInstance().setCacheDataSize(cacheDataSize, cacheDelayTime);
     }
 
     /**
@@ -226,9 +339,7 @@ public class LogNotifier {
      * @param tag tag
      */
     public void setTag(String tag) {
-        if (logExecutor != null) {
-            logExecutor.setTag(tag);
-        }
+        LogExecutor.getInstance().setTag(tag);
     }
 
     /**
@@ -237,9 +348,7 @@ public class LogNotifier {
      * @param needCacheToFile true:缓存本地 false:不缓存到本地
      */
     public void setNeedCacheToFile(boolean needCacheToFile) {
-        if (logExecutor != null) {
-            logExecutor.setNeedCacheToFile(needCacheToFile);
-        }
+        LogExecutor.getInstance().setNeedCacheToFile(needCacheToFile);
     }
 
     /**
@@ -248,9 +357,16 @@ public class LogNotifier {
      * @param cacheFolder 文件夹
      */
     public void setCacheFolder(String cacheFolder) {
-        if (logExecutor != null) {
-            logExecutor.setCacheFolder(cacheFolder);
-        }
+        LogExecutor.getInstance().setCacheFolder(cacheFolder);
+    }
+
+    /**
+     * 设置缓存文件格式
+     *
+     * @param cacheFormat 文件格式
+     */
+    public void setCacheFormat(int cacheFormat) {
+        LogExecutor.getInstance().setCacheFormat(cacheFormat);
     }
 
     /**
@@ -259,14 +375,69 @@ public class LogNotifier {
      * @param keyWords 关键词集合
      */
     public void setKeyWords(String[] keyWords) {
-        if (logExecutor != null) {
-            logExecutor.setKeyWords(keyWords);
-        }
+        LogExecutor.getInstance().setKeyWords(keyWords);
     }
 
-    public void setListener(UiWatcher.BlockListener listener) {
-        if (logExecutor != null) {
-            logExecutor.setListener(listener);
-        }
+    /**
+     * 设置分阶段帧耗时统计
+     *
+     * @param frameMetricsMonitor 为null时不附带
+     */
+    public void setFrameMetricsMonitor(FrameMetricsMonitor frameMetricsMonitor) {
+        LogExecutor.getInstance().setFrameMetricsMonitor(frameMetricsMonitor);
+    }
+
+    /**
+     * 设置折叠堆栈聚合
+     *
+     * @param stackAggregator 为null时不聚合
+     */
+    public void setStackAggregator(FoldedStackAggregator stackAggregator) {
+        LogExecutor.getInstance().setStackAggregator(stackAggregator);
+    }
+
+    /**
+     * 设置页面归因
+     *
+     * @param screenTracker 为null时不归因
+     */
+    public void setScreenTracker(ScreenTracker screenTracker) {
+        LogExecutor.getInstance().setScreenTracker(screenTracker);
+    }
+
+    /**
+     * 设置命名场景的统计
+     *
+     * @param scenarioTracker 为null时不统计
+     */
+    public void setScenarioTracker(ScenarioTracker scenarioTracker) {
+        LogExecutor.getInstance().setScenarioTracker(scenarioTracker);
+    }
+
+    /**
+     * 设置卡顿事件的分发
+     *
+     * @param eventDispatcher 为null时不回调
+     */
+    public void setEventDispatcher(BlockEventDispatcher eventDispatcher) {
+        LogExecutor.getInstance().setEventDispatcher(eventDispatcher);
+    }
+
+    /**
+     * 设置是否打印卡顿日志
+     *
+     * @param printLog 是否打印
+     */
+    public void setPrintLog(boolean printLog) {
+        LogExecutor.getInstance().setPrintLog(printLog);
+    }
+
+    /**
+     * 设置采样间隔的自适应调节
+     *
+     * @param samplingGovernor 为null时使用固定的采样间隔
+     */
+    public void setSamplingGovernor(SamplingGovernor samplingGovernor) {
+        LogExecutor.getInstance().setSamplingGovernor(samplingGovernor);
     }
 }
@@ -0,0 +1,285 @@
+package com.kc.uiwatch;
+
+import android.os.Looper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单线程采样器
+ * 与 LogNotifier + LogExecutor 的两个线程、两次Message转发不同,
+ * 采样、编码、聚合和输出都在同一个线程内完成,按时钟固定频率采样。
+ * 主线程只通过无锁的单生产者单消费者队列通知卡顿输出
+ */
+public class LogSampler {
+
+    private static volatile LogSampler instance;
+
+    /**
+     * 丢弃请求,卡顿时长总是大于0,因此用0表示
+     */
+    private static final int REQUEST_DISCARD = 0;
+
+    /**
+     * 等待输出的卡顿,值为卡顿时长或 {@link #REQUEST_DISCARD},单生产者:只由主线程放入,采样线程取出
+     */
+    private final SpscIntQueue outputRequests = new SpscIntQueue(16);
+
+    /**
+     * 是否为看门狗模式
+     */
+    private volatile boolean watchdogMode = false;
+
+    /**
+     * 看门狗模式下开始采样的时间点(nanoTime)
+     */
+    private volatile long watchdogDeadline = 0;
+
+    /**
+     * 上次布置看门狗后是否已经采样过
+     */
+    private volatile boolean collectedSinceArm = false;
+
+    /**
+     * 当前的采样线程
+     */
+    private volatile SamplerThread samplerThread;
+
+    /**
+     * 是否暂停中,暂停时采样线程无限期park,不占用CPU
+     */
+    private volatile boolean paused = false;
+
+    /**
+     * 暂停时请求丢弃未输出的采样,由采样线程处理,暂停后立刻恢复时也不会遗漏
+     */
+    private volatile boolean discardRequested = false;
+
+    /**
+     * 最近一次创建的采样线程,停止后仍保留,用于下次开始时等待其退出
+     */
+    private SamplerThread lastThread;
+
+    private LogSampler() {
+    }
+
+    public static LogSampler getInstance() {
+        if (instance == null) {
+            synchronized (LogSampler.class) {
+                if (instance == null) {
+                    instance = new LogSampler();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 开始采样,已在运行时不重复创建线程,暂停中时恢复
+     */
+    public synchronized void start() {
+        if (samplerThread != null) {
+            resume();
+            return;
+        }
+        paused = false;
+        watchdogDeadline = 0;
+        //上次停止的线程可能还在输出,新线程等它退出后才开始
+        samplerThread = new SamplerThread(lastThread);
+        lastThread = samplerThread;
+        samplerThread.start();
+    }
+
+    /**
+     * 暂停采样,线程保留,已请求的输出照常进行,之后由采样线程丢弃未输出的采样
+     * 可在任意线程调用,不向输出请求队列放入数据
+     */
+    public synchronized void pause() {
+        SamplerThread thread = samplerThread;
+        if (thread == null || paused) {
+            return;
+        }
+        paused = true;
+        watchdogDeadline = 0;
+        discardRequested = true;
+        collectedSinceArm = false;
+        LockSupport.unpark(thread);
+    }
+
+    private void resume() {
+        if (!paused) {
+            return;
+        }
+        paused = false;
+        LockSupport.unpark(samplerThread);
+    }
+
+    /**
+     * 停止采样,不等待采样线程退出
+     * 采样线程退出前清空未处理的输出请求和已采集的数据,下次开始的线程在其退出后才开始采样
+     */
+    public synchronized void stop() {
+        SamplerThread thread = samplerThread;
+        samplerThread = null;
+        if (thread != null) {
+            thread.running = false;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * 通知输出卡顿并重新开始采样,在主线程调用
+     *
+     * @param skipFrame 卡顿时长
+     */
+    public void requestOutput(int skipFrame) {
+        SamplerThread thread = samplerThread;
+        if (thread == null) {
+            return;
+        }
+        //队列满时丢弃,说明采样线程已经严重滞后
+        outputRequests.offer(Math.max(skipFrame, 1));
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * 看门狗模式,每帧在主线程调用一次
+     * 上一帧卡顿时输出期间的采样,未卡顿时丢弃,然后在delay之后才开始采样
+     *
+     * @param skipFrame 卡顿时长,未卡顿时为0
+     * @param delay     本帧开始采样前的等待时间(毫秒)
+     */
+    public void armWatchdog(int skipFrame, long delay) {
+        SamplerThread thread = samplerThread;
+        if (thread == null) {
+            return;
+        }
+        if (skipFrame > 0) {
+            outputRequests.offer(skipFrame);
+        } else if (collectedSinceArm) {
+            outputRequests.offer(REQUEST_DISCARD);
+        }
+        collectedSinceArm = false;
+        watchdogDeadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+        LockSupport.unpark(thread);
+    }
+
+    /**
+     * 设置是否为看门狗模式
+     */
+    public void setWatchdogMode(boolean watchdogMode) {
+        this.watchdogMode = watchdogMode;
+    }
+
+    /**
+     * 采样线程
+     */
+    private class SamplerThread extends Thread {
+
+        volatile boolean running = true;
+
+        /**
+         * 上一个采样线程,LogExecutor和输出请求队列都只能由一个线程使用
+         */
+        private SamplerThread previous;
+
+        SamplerThread(SamplerThread previous) {
+            super("LogSampler_Thread");
+            this.previous = previous;
+        }
+
+        @Override
+        public void run() {
+            if (previous != null) {
+                try {
+                    previous.join();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                previous = null;
+            }
+            LogExecutor logExecutor = LogExecutor.getInstance();
+            MonitorCounters counters = MonitorCounters.getInstance();
+            Thread mainThread = Looper.getMainLooper().getThread();
+            ContentionProbe contentionProbe = new ContentionProbe();
+            long nextTick = System.nanoTime();
+            long armedDeadline = 0;
+            while (running) {
+                try {
+                    //先处理卡顿输出,输出后立刻重新开始采样
+                    boolean restart = false;
+                    int request;
+                    while ((request = outputRequests.poll()) != SpscIntQueue.EMPTY) {
+                        if (request == REQUEST_DISCARD) {
+                            logExecutor.discardCollectedLog();
+                        } else {
+                            logExecutor.outputBlock(request);
+                            restart = true;
+                        }
+                        contentionProbe.reset();
+                    }
+                    //已请求的输出在上面处理完后,丢弃暂停前未输出的采样
+                    if (discardRequested) {
+                        discardRequested = false;
+                        logExecutor.discardCollectedLog();
+                        contentionProbe.reset();
+                    }
+                    if (paused) {
+                        //暂停中一直休眠,恢复或有输出请求时被唤醒
+                        LockSupport.park(this);
+                        nextTick = System.nanoTime();
+                        armedDeadline = 0;
+                        continue;
+                    }
+                    long now = System.nanoTime();
+                    if (watchdogMode) {
+                        //看门狗模式下,每次布置都把下一次采样推迟到新的时间点;未布置时一直休眠
+                        long deadline = watchdogDeadline;
+                        if (deadline == 0) {
+                            LockSupport.park(this);
+                            continue;
+                        }
+                        if (deadline != armedDeadline) {
+                            armedDeadline = deadline;
+                            nextTick = deadline;
+                        }
+                    } else if (restart) {
+                        nextTick = now;
+                    }
+                    long waitNanos = nextTick - now;
+                    if (waitNanos > 0) {
+                        //可能被卡顿通知提前唤醒,醒来后重新检查
+                        LockSupport.parkNanos(this, waitNanos);
+                        continue;
+                    }
+                    counters.beginSection("UiWatcher:capture");
+                    long cpuStart = MonitorCounters.threadCpuNanos();
+                    long captureStart = System.nanoTime();
+                    StackTraceElement[] stack = mainThread.getStackTrace();
+                    Thread.State state = mainThread.getState();
+                    counters.onCapture(System.nanoTime() - captureStart);
+                    counters.onSamplerCpu(cpuStart);
+                    counters.endSection();
+                    logExecutor.collectStack(stack, state);
+                    //主线程等锁时推测持有者
+                    LockContention contention = contentionProbe.probe(mainThread, state, stack);
+                    if (contention != null) {
+                        logExecutor.collectContention(contention);
+                    }
+                    collectedSinceArm = true;
+                    //按时钟固定频率推进,落后超过一个周期时丢弃错过的采样点
+                    long period = TimeUnit.MILLISECONDS.toNanos(logExecutor.getDelayTime());
+                    nextTick += period;
+                    if (nextTick - now <= 0) {
+                        nextTick = now + period;
+                    }
+                } catch (Exception e) {
+                }
+            }
+            //停止前的请求和采样不带到下一次开始
+            while (outputRequests.poll() != SpscIntQueue.EMPTY) {
+            }
+            logExecutor.discardCollectedLog();
+        }
+    }
+}
@@ -1,24 +1,76 @@
 package com.kc.uiwatch;
 
 
-import android.os.Build;
-
-import androidx.annotation.RequiresApi;
-
-import java.util.Objects;
-
 public class LogStackInfo {
-    private String stackMessage;
+    /**
+     * 堆栈帧id,对应FrameTable中的帧,数组在复用时可能大于实际帧数
+     */
+    private int[] frameIds = new int[0];
+    private int frameCount = 0;
+    /**
+     * 64位堆栈签名,用于快速判断重复
+     */
+    private long signature = 0;
     private int count = 0;
+    /**
+     * 首次采样到该堆栈时的线程状态,未知时为null
+     */
+    private Thread.State state;
 //    private long startTime = 0;
 //    private long endTime = 0;
 
-    public String getStackMessage() {
-        return stackMessage;
+    public int[] getFrameIds() {
+        return frameIds;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public long getSignature() {
+        return signature;
+    }
+
+    /**
+     * 复制帧id,缓冲区足够时原地覆盖
+     *
+     * @param ids       帧id
+     * @param count     有效的帧数量
+     * @param signature 帧id的签名
+     */
+    public void setFrames(int[] ids, int count, long signature) {
+        if (frameIds.length < count) {
+            frameIds = new int[count];
+        }
+        System.arraycopy(ids, 0, frameIds, 0, count);
+        frameCount = count;
+        this.signature = signature;
     }
 
-    public void setStackMessage(String stackMessage) {
-        this.stackMessage = stackMessage;
+    /**
+     * 帧id被重新映射后重新计算签名
+     */
+    public void updateSignature() {
+        signature = computeSignature(frameIds, frameCount);
+    }
+
+    /**
+     * 计算帧id数组的64位签名(FNV-1a + 末尾混合)
+     *
+     * @param ids   帧id
+     * @param count 有效的帧数量
+     */
+    public static long computeSignature(int[] ids, int count) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = 0; i < count; i++) {
+            hash ^= ids[i];
+            hash *= 0x100000001B3L;
+        }
+        hash ^= count;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return hash;
     }
 
     public int getCount() {
@@ -29,6 +81,14 @@ public class LogStackInfo {
         this.count = count;
     }
 
+    public Thread.State getState() {
+        return state;
+    }
+
+    public void setState(Thread.State state) {
+        this.state = state;
+    }
+
 //    public long getStartTime() {
 //        return startTime;
 //    }
@@ -45,18 +105,31 @@ public class LogStackInfo {
 //        this.endTime = endTime;
 //    }
 
-    @RequiresApi(api = Build.VERSION_CODES.KITKAT)
+    /**
+     * 帧id是否与给定的前count个id相同
+     */
+    public boolean isSameStack(int[] otherIds, int otherCount) {
+        if (frameCount != otherCount) {
+            return false;
+        }
+        for (int i = 0; i < otherCount; i++) {
+            if (frameIds[i] != otherIds[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         LogStackInfo that = (LogStackInfo) o;
-        return Objects.equals(stackMessage, that.stackMessage);
+        return signature == that.signature && that.isSameStack(frameIds, frameCount);
     }
 
-    @RequiresApi(api = Build.VERSION_CODES.KITKAT)
     @Override
     public int hashCode() {
-        return Objects.hash(stackMessage);
+        return (int) (signature ^ (signature >>> 32));
     }
 }
@@ -1,53 +1,189 @@
 package com.kc.uiwatch;
 
-import java.util.LinkedList;
-import java.util.List;
-
 
+/**
+ * log堆栈信息队列
+ * 基于预分配数组的环形缓冲区,槽位内的LogStackInfo原地复用,
+ * 并维护采样总数,入队、出队、长度计算均为O(1)
+ */
 public class LogStackQueue {
 
+    /**
+     * 槽位,按环形顺序保存堆栈信息
+     */
+    private LogStackInfo[] slots;
+
+    /**
+     * 最早一条信息所在的槽位
+     */
+    private int head = 0;
 
     /**
-     * log堆栈信息队列,只保存限制的条数,防止内存占用过大
+     * 当前信息条数
      */
-    private List<LogStackInfo> logStackInfoQueue = new LinkedList<>();
+    private int entryCount = 0;
+
+    /**
+     * 所有信息的采样总数
+     */
+    private int sampleCount = 0;
+
+    public LogStackQueue(int capacity) {
+        slots = createSlots(capacity);
+    }
+
+    /**
+     * 添加一次采样,窗口内已有相同堆栈时只增加计数(不要求相邻),否则复用下一个槽位
+     * 队列已满时覆盖最早的一条
+     *
+     * @param frameIds   帧id数组(可复用的缓冲区)
+     * @param frameCount 有效的帧数量
+     */
+    public void add(int[] frameIds, int frameCount) {
+        add(frameIds, frameCount, null);
+    }
 
-    public void add(String currentStackInfo) {
+    /**
+     * 添加一次采样并记录线程状态,相同堆栈保留首次采样的状态
+     *
+     * @param frameIds   帧id数组(可复用的缓冲区)
+     * @param frameCount 有效的帧数量
+     * @param state      采样时的线程状态,未知时为null
+     */
+    public void add(int[] frameIds, int frameCount, Thread.State state) {
+        long signature = LogStackInfo.computeSignature(frameIds, frameCount);
 
-        //获取上一个堆栈信息比较是否相同
-        LogStackInfo lastInfo = logStackInfoQueue.isEmpty() ? null : logStackInfoQueue.get(logStackInfoQueue.size() - 1);
-        //不相同且有有效内容
+        //从最新的一条开始查找相同堆栈,先比较签名,签名相同时再逐帧比较
+        LogStackInfo sameInfo = find(signature, frameIds, frameCount);
 
-        if (lastInfo != null && lastInfo.getStackMessage() != null && lastInfo.getStackMessage().equals(currentStackInfo)) {
-            int count = lastInfo.getCount();
-            lastInfo.setCount(++count);
-//            lastInfo.setEndTime(System.currentTimeMillis());
+        if (sameInfo != null) {
+            sameInfo.setCount(sameInfo.getCount() + 1);
         } else {
-            LogStackInfo info = new LogStackInfo();
+            if (entryCount == slots.length) {
+                removeFirst();
+            }
+            LogStackInfo info = slots[(head + entryCount) % slots.length];
             info.setCount(1);
-            info.setStackMessage(currentStackInfo);
-//            info.setStartTime(System.currentTimeMillis());
-            logStackInfoQueue.add(info);
+            info.setFrames(frameIds, frameCount, signature);
+            info.setState(state);
+            entryCount++;
         }
+        sampleCount++;
     }
 
-    public boolean isEmpty() {
-        return logStackInfoQueue.isEmpty();
+    /**
+     * 查找相同的堆栈
+     *
+     * @return 相同的堆栈信息, 不存在时返回null
+     */
+    private LogStackInfo find(long signature, int[] frameIds, int frameCount) {
+        for (int i = entryCount - 1; i >= 0; i--) {
+            LogStackInfo info = get(i);
+            if (info.getSignature() == signature && info.isSameStack(frameIds, frameCount)) {
+                return info;
+            }
+        }
+        return null;
     }
 
-    public List<LogStackInfo> getLogStackInfoQueue() {
-        return logStackInfoQueue;
+    /**
+     * 采样总数超出限制时移除最早的信息,保证除最早一条外的采样数小于限制
+     *
+     * @param maxSampleCount 最多保存的采样数
+     */
+    public void trim(int maxSampleCount) {
+        while (entryCount > 1 && sampleCount - getFirst().getCount() >= maxSampleCount) {
+            removeFirst();
+        }
     }
 
-    public int size() {
-        int size = 0;
-        for (LogStackInfo info : logStackInfoQueue) {
-            size += info.getCount();
+    /**
+     * 获取最早的信息
+     */
+    public LogStackInfo getFirst() {
+        return slots[head];
+    }
+
+    /**
+     * 按入队顺序获取信息
+     *
+     * @param index 0为最早的一条
+     */
+    public LogStackInfo get(int index) {
+        return slots[(head + index) % slots.length];
+    }
+
+    /**
+     * 移除最早的信息,槽位保留给后续复用
+     */
+    public void removeFirst() {
+        if (entryCount == 0) {
+            return;
         }
+        sampleCount -= slots[head].getCount();
+        slots[head].setCount(0);
+        head = (head + 1) % slots.length;
+        entryCount--;
+    }
 
-        return size;
+    /**
+     * 清空队列,槽位保留给后续复用
+     */
+    public void clear() {
+        while (entryCount > 0) {
+            removeFirst();
+        }
+        head = 0;
+    }
+
+    public boolean isEmpty() {
+        return entryCount == 0;
     }
 
+    /**
+     * 信息条数
+     */
+    public int entryCount() {
+        return entryCount;
+    }
 
+    /**
+     * 采样总数
+     */
+    public int size() {
+        return sampleCount;
+    }
+
+    /**
+     * 调整容量,保留最新的信息
+     *
+     * @param capacity 最多保存的信息条数
+     */
+    public void setCapacity(int capacity) {
+        if (capacity < 1 || capacity == slots.length) {
+            return;
+        }
+        while (entryCount > capacity) {
+            removeFirst();
+        }
+        LogStackInfo[] newSlots = createSlots(capacity);
+        for (int i = 0; i < entryCount; i++) {
+            //交换槽位对象,保留已分配的帧缓冲区
+            LogStackInfo info = get(i);
+            LogStackInfo empty = newSlots[i];
+            newSlots[i] = info;
+            slots[(head + i) % slots.length] = empty;
+        }
+        slots = newSlots;
+        head = 0;
+    }
+
+    private static LogStackInfo[] createSlots(int capacity) {
+        LogStackInfo[] slots = new LogStackInfo[Math.max(capacity, 1)];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new LogStackInfo();
+        }
+        return slots;
+    }
 
 }
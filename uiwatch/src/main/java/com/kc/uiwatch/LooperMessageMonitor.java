@@ -0,0 +1,134 @@
+package com.kc.uiwatch;
+
+import android.os.Looper;
+import android.util.Printer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Looper.setMessageLogging 的消息耗时检测
+ * 记录主线程每条消息的分发耗时,保存在固定大小的环形缓冲区内,
+ * 消息超出预算时通过 LogMonitor 输出卡顿日志,并附带期间每条消息的耗时
+ * <p>
+ * 注意：会替换主线程Looper已有的Printer
+ */
+public class LooperMessageMonitor implements Printer {
+
+    /**
+     * 最近消息的保存条数
+     */
+    private static final int HISTORY_SIZE = 64;
+
+    /**
+     * 单次卡顿附带的消息条数上限
+     */
+    private static final int MAX_REPORT_SIZE = 20;
+
+    private static final String DISPATCH_PREFIX = ">>>>> Dispatching to ";
+    private static final String FINISH_PREFIX = "<<<<< Finished to ";
+
+    /**
+     * 消息预算,超出视为卡顿
+     */
+    private final long budgetNanos;
+
+    private final long[] durations = new long[HISTORY_SIZE];
+    private final long[] endTimes = new long[HISTORY_SIZE];
+    private final String[] descriptions = new String[HISTORY_SIZE];
+    private int nextIndex = 0;
+    private int recordCount = 0;
+
+    /**
+     * 当前消息开始分发的时间,0表示不在分发中
+     */
+    private long dispatchStartNanos = 0;
+    private String dispatchDescription;
+
+    /**
+     * 上次输出卡顿的时间,供帧率检测去重
+     */
+    private long lastReportNanos = 0;
+
+    /**
+     * @param budgetMs 消息预算
+     */
+    public LooperMessageMonitor(int budgetMs) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
+
+    /**
+     * 注册到主线程Looper
+     */
+    public void start() {
+        dispatchStartNanos = 0;
+        Looper.getMainLooper().setMessageLogging(this);
+    }
+
+    /**
+     * 从主线程Looper注销
+     */
+    public void stop() {
+        Looper.getMainLooper().setMessageLogging(null);
+        dispatchStartNanos = 0;
+    }
+
+    @Override
+    public void println(String x) {
+        if (x.startsWith(DISPATCH_PREFIX)) {
+            dispatchStartNanos = System.nanoTime();
+            dispatchDescription = x;
+        } else if (dispatchStartNanos != 0 && x.startsWith(FINISH_PREFIX)) {
+            long now = System.nanoTime();
+            long duration = now - dispatchStartNanos;
+            dispatchStartNanos = 0;
+            record(duration, now, dispatchDescription);
+            if (duration > budgetNanos) {
+                lastReportNanos = now;
+                LogExecutor.getInstance().setPendingMessageHistory(snapshot(duration, now));
+                LogMonitor.getInstance().startOutputAndResetCollectionMonitor((int) TimeUnit.NANOSECONDS.toMillis(duration));
+            }
+        }
+    }
+
+    private void record(long duration, long endTime, String description) {
+        durations[nextIndex] = duration;
+        endTimes[nextIndex] = endTime;
+        descriptions[nextIndex] = description;
+        nextIndex = (nextIndex + 1) % HISTORY_SIZE;
+        if (recordCount < HISTORY_SIZE) {
+            recordCount++;
+        }
+    }
+
+    /**
+     * 取出在给定时间窗口内结束的消息,最新的在前
+     *
+     * @param windowNanos 窗口长度
+     * @param now         窗口结束时间
+     */
+    public MessageHistory snapshot(long windowNanos, long now) {
+        int count = 0;
+        for (int i = 1; i <= recordCount && count < MAX_REPORT_SIZE; i++) {
+            int index = (nextIndex - i + HISTORY_SIZE) % HISTORY_SIZE;
+            if (now - endTimes[index] > windowNanos) {
+                break;
+            }
+            count++;
+        }
+        long[] snapshotDurations = new long[count];
+        String[] snapshotDescriptions = new String[count];
+        for (int i = 0; i < count; i++) {
+            int index = (nextIndex - 1 - i + HISTORY_SIZE) % HISTORY_SIZE;
+            snapshotDurations[i] = durations[index];
+            snapshotDescriptions[i] = descriptions[index];
+        }
+        return new MessageHistory(snapshotDurations, snapshotDescriptions);
+    }
+
+    /**
+     * 给定时间之后是否已经输出过卡顿
+     */
+    public boolean hasReportedSince(long sinceNanos) {
+        return lastReportNanos != 0 && lastReportNanos - sinceNanos > 0;
+    }
+}
@@ -0,0 +1,273 @@
+package com.kc.uiwatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.Charset;
+
+/**
+ * 基于内存映射的卡顿日志文件
+ * 预先分配固定大小的分段文件并映射到内存,每条日志直接写入映射区,
+ * 写入后更新文件头中的有效长度,进程被杀死后数据仍由系统写回文件,不需要显式flush。
+ * 只在切换分段(超出大小或跨天)时创建文件夹和文件,单条日志的写入不涉及文件系统元数据操作
+ * <p>
+ * 分段文件格式：
+ * 0-3 魔数, 4-7 版本, 8-11 有效数据的结束位置, 12-15 保留, 16之后为数据
+ */
+public class MappedBlockLog {
+
+    /**
+     * 文件头魔数 "UWLG"
+     */
+    public static final int MAGIC = 0x55574C47;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    private static final int COMMITTED_OFFSET = 8;
+
+    /**
+     * 默认分段大小 1M
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * 分段文件后缀
+     */
+    public static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * 根文件夹
+     */
+    private final String rootFolderPath;
+
+    /**
+     * 文件名前缀
+     */
+    private final String fileName;
+
+    private final int segmentSize;
+
+    /**
+     * 复用的编码器
+     */
+    private final CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder();
+
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segmentBuffer;
+
+    /**
+     * 当前分段的序号
+     */
+    private int segmentIndex = -1;
+
+    /**
+     * 当前分段所在天的结束时间,超出后切换文件夹
+     */
+    private long dayEndMillis = 0;
+
+    /**
+     * @param rootFolderPath 根文件夹,分段文件按天保存在其子文件夹中
+     * @param fileName       文件名前缀
+     * @param segmentSize    分段大小
+     */
+    public MappedBlockLog(String rootFolderPath, String fileName, int segmentSize) {
+        this.rootFolderPath = rootFolderPath;
+        this.fileName = fileName;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 写入文本日志
+     *
+     * @param text 日志
+     * @return 写入的字节数
+     */
+    public int write(CharSequence text) throws IOException {
+        ensureSegment(0);
+        CharBuffer chars = CharBuffer.wrap(text);
+        int start = segmentBuffer.position();
+        if (!encodeTo(chars, segmentBuffer)) {
+            //当前分段放不下,按最大可能长度切换到新的分段重写
+            chars.rewind();
+            rotate((int) (text.length() * encoder.maxBytesPerChar()));
+            start = segmentBuffer.position();
+            encodeTo(chars, segmentBuffer);
+        }
+        commit();
+        return segmentBuffer.position() - start;
+    }
+
+    /**
+     * 写入二进制日志,src的剩余部分会被完整写入同一个分段
+     *
+     * @param src 数据
+     * @return 写入的字节数
+     */
+    public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        ensureSegment(length);
+        if (segmentBuffer.remaining() < length) {
+            rotate(length);
+        }
+        segmentBuffer.put(src);
+        commit();
+        return length;
+    }
+
+    /**
+     * 当前分段能否完整写入给定长度的数据
+     */
+    public boolean fits(int length) throws IOException {
+        ensureSegment(length);
+        return segmentBuffer.remaining() >= length;
+    }
+
+    /**
+     * 立刻切换到新的分段
+     */
+    public void startNewSegment() throws IOException {
+        ensureSegment(0);
+        rotate(0);
+    }
+
+    /**
+     * 当前是否位于新分段的开头(尚未写入任何数据)
+     */
+    public boolean isSegmentEmpty() throws IOException {
+        ensureSegment(0);
+        return segmentBuffer.position() == HEADER_SIZE;
+    }
+
+    /**
+     * 关闭当前分段,已写入的数据保留在文件中
+     */
+    public void close() {
+        if (segmentFile != null) {
+            try {
+                segmentFile.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        segmentFile = null;
+        segmentBuffer = null;
+        segmentIndex = -1;
+        dayEndMillis = 0;
+    }
+
+    private boolean encodeTo(CharBuffer chars, ByteBuffer out) {
+        encoder.reset();
+        CoderResult result = encoder.encode(chars, out, true);
+        if (result.isOverflow()) {
+            return false;
+        }
+        return !encoder.flush(out).isOverflow();
+    }
+
+    /**
+     * 更新文件头中的有效长度,写入完成后调用
+     */
+    private void commit() {
+        segmentBuffer.putInt(COMMITTED_OFFSET, segmentBuffer.position());
+    }
+
+    /**
+     * 保证存在可写的分段,跨天时切换
+     */
+    private void ensureSegment(int minSize) throws IOException {
+        if (segmentBuffer != null && System.currentTimeMillis() < dayEndMillis) {
+            return;
+        }
+        close();
+        openDay(minSize);
+    }
+
+    /**
+     * 打开当天文件夹中最后一个分段,没有时创建
+     */
+    private void openDay(int minSize) throws IOException {
+        //先取结束时间,两次调用之间跨天时下一次写入会重新打开
+        dayEndMillis = TimeUtils.getDayEndMillis();
+        File folder = new File(rootFolderPath, TimeUtils.getFileFolderNameByTime());
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("无法创建文件夹: " + folder);
+        }
+        //只在跨天或首次写入时查找已有分段
+        int lastIndex = 0;
+        while (new File(folder, segmentName(lastIndex + 1)).exists()) {
+            lastIndex++;
+        }
+        openSegment(folder, lastIndex, minSize);
+    }
+
+    /**
+     * 切换到下一个分段
+     */
+    private void rotate(int minSize) throws IOException {
+        int nextIndex = segmentIndex + 1;
+        long dayEnd = dayEndMillis;
+        close();
+        File folder = new File(rootFolderPath, TimeUtils.getFileFolderNameByTime());
+        dayEndMillis = dayEnd;
+        openSegment(folder, nextIndex, minSize);
+    }
+
+    private void openSegment(File folder, int index, int minSize) throws IOException {
+        File file = new File(folder, segmentName(index));
+        boolean isNew = !file.exists();
+        segmentFile = new RandomAccessFile(file, "rw");
+        int size = (int) Math.max(segmentFile.length(), Math.max(segmentSize, HEADER_SIZE + minSize));
+        if (segmentFile.length() < size) {
+            segmentFile.setLength(size);
+        }
+        segmentBuffer = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        segmentIndex = index;
+        int committed = segmentBuffer.getInt(COMMITTED_OFFSET);
+        if (isNew || segmentBuffer.getInt(0) != MAGIC || committed < HEADER_SIZE || committed > size) {
+            segmentBuffer.putInt(0, MAGIC);
+            segmentBuffer.putInt(4, VERSION);
+            committed = HEADER_SIZE;
+            segmentBuffer.putInt(COMMITTED_OFFSET, committed);
+        }
+        segmentBuffer.position(committed);
+        //已有分段剩余空间不足时直接使用下一个
+        if (segmentBuffer.remaining() < minSize) {
+            rotate(minSize);
+        }
+    }
+
+    private String segmentName(int index) {
+        return fileName + "_" + index + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * 读取分段文件中的有效数据,异常退出后也只包含已完整写入的日志
+     *
+     * @param segment 分段文件
+     * @return 有效数据
+     */
+    public static byte[] readSegment(File segment) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(segment, "r");
+        try {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+                throw new IOException("不是卡顿日志文件: " + segment);
+            }
+            file.readInt();
+            int committed = file.readInt();
+            if (committed < HEADER_SIZE || committed > file.length()) {
+                throw new IOException("卡顿日志文件已损坏: " + segment);
+            }
+            byte[] data = new byte[committed - HEADER_SIZE];
+            file.seek(HEADER_SIZE);
+            file.readFully(data);
+            return data;
+        } finally {
+            file.close();
+        }
+    }
+}
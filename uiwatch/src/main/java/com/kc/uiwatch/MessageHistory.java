@@ -0,0 +1,85 @@
+package com.kc.uiwatch;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 卡顿期间主线程消息耗时的快照
+ * 由 LooperMessageMonitor 在消息超出预算时生成,随卡顿日志一起输出
+ */
+public class MessageHistory {
+
+    /**
+     * 消息耗时,纳秒
+     */
+    private final long[] durations;
+
+    /**
+     * 消息描述,Looper输出的原始分发日志
+     */
+    private final String[] descriptions;
+
+    public MessageHistory(long[] durations, String[] descriptions) {
+        this.durations = durations;
+        this.descriptions = descriptions;
+    }
+
+    public int size() {
+        return durations.length;
+    }
+
+    /**
+     * 消息耗时,毫秒
+     */
+    public long getDurationMs(int index) {
+        return TimeUnit.NANOSECONDS.toMillis(durations[index]);
+    }
+
+    /**
+     * Handler的类名
+     */
+    public String getHandlerClass(int index) {
+        String description = descriptions[index];
+        int start = description.indexOf('(');
+        int end = description.indexOf(')', start + 1);
+        if (start < 0 || end < 0) {
+            return "";
+        }
+        return description.substring(start + 1, end);
+    }
+
+    /**
+     * Message的callback类名,没有callback时为"null"
+     */
+    public String getCallbackClass(int index) {
+        String description = descriptions[index];
+        int start = description.indexOf("} ");
+        if (start < 0) {
+            return "";
+        }
+        start += 2;
+        int end = description.indexOf(':', start);
+        if (end < 0) {
+            end = description.length();
+        }
+        String callback = description.substring(start, end).trim();
+        int hashIndex = callback.lastIndexOf('@');
+        return hashIndex > 0 ? callback.substring(0, hashIndex) : callback;
+    }
+
+    /**
+     * 按 "耗时 handler callback" 每条一行输出
+     */
+    public void appendTo(StringBuilder builder) {
+        builder.append("messages:");
+        builder.append(" \n");
+        for (int i = 0; i < durations.length; i++) {
+            builder.append(getDurationMs(i));
+            builder.append("ms ");
+            builder.append(getHandlerClass(i));
+            builder.append(" ");
+            builder.append(getCallbackClass(i));
+            builder.append("\n");
+        }
+        builder.append(" \n");
+    }
+}
@@ -0,0 +1,196 @@
+package com.kc.uiwatch;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Trace;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 监控自身开销的计数器
+ * 记录采样次数和抓取主线程堆栈的耗时(即主线程被挂起的时间)、收集和输出的耗时、
+ * 队列长度、输出的卡顿数量、写入文件的字节数、被丢弃的采样和事件以及锁竞争推测的开销,
+ * 可选地输出 android.os.Trace 区段,在systrace/perfetto中与主线程的卡顿对照
+ */
+public class MonitorCounters {
+
+    private static volatile MonitorCounters instance;
+
+    /**
+     * 是否输出Trace区段(api>=18)
+     */
+    private volatile boolean traceEnabled = false;
+
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong captureNanos = new AtomicLong();
+    private final AtomicLong maxCaptureNanos = new AtomicLong();
+    private final AtomicLong collectNanos = new AtomicLong();
+    private final AtomicLong reportCount = new AtomicLong();
+    private final AtomicLong outputNanos = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong filteredSampleCount = new AtomicLong();
+    private final AtomicLong droppedEventCount = new AtomicLong();
+    private final AtomicLong contentionProbeCount = new AtomicLong();
+    private final AtomicLong contentionProbeNanos = new AtomicLong();
+
+    /**
+     * 主线程采样(抓取、收集、输出)在采样线程上消耗的CPU时间,
+     * 不含等待(如分发队列阻塞)和其他线程检测、冷启动追踪、锁竞争推测,供采样间隔的自适应调节使用
+     */
+    private final AtomicLong samplerCpuNanos = new AtomicLong();
+
+    /**
+     * 当前队列中的采样次数,只由输出线程写入
+     */
+    private volatile int queueLength = 0;
+
+    private MonitorCounters() {
+    }
+
+    public static MonitorCounters getInstance() {
+        if (instance == null) {
+            synchronized (MonitorCounters.class) {
+                if (instance == null) {
+                    instance = new MonitorCounters();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 设置是否输出Trace区段
+     */
+    public void setTraceEnabled(boolean traceEnabled) {
+        this.traceEnabled = traceEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    }
+
+    /**
+     * 开始Trace区段,需在同一线程调用 {@link #endSection()}
+     */
+    @SuppressLint("NewApi")
+    public void beginSection(String name) {
+        if (traceEnabled) {
+            Trace.beginSection(name);
+        }
+    }
+
+    @SuppressLint("NewApi")
+    public void endSection() {
+        if (traceEnabled) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * 记录一次堆栈抓取
+     *
+     * @param nanos 抓取耗时
+     */
+    public void onCapture(long nanos) {
+        sampleCount.incrementAndGet();
+        captureNanos.addAndGet(nanos);
+        long max = maxCaptureNanos.get();
+        while (nanos > max && !maxCaptureNanos.compareAndSet(max, nanos)) {
+            max = maxCaptureNanos.get();
+        }
+    }
+
+    /**
+     * 记录一次采样的收集耗时和收集后的队列长度
+     */
+    public void onCollect(long nanos, int queueLength) {
+        collectNanos.addAndGet(nanos);
+        this.queueLength = queueLength;
+    }
+
+    /**
+     * 记录一次卡顿输出
+     */
+    public void onOutput(long nanos) {
+        reportCount.incrementAndGet();
+        outputNanos.addAndGet(nanos);
+        queueLength = 0;
+    }
+
+    /**
+     * 丢弃未卡顿时的采样后队列清空
+     */
+    public void onDiscard() {
+        queueLength = 0;
+    }
+
+    public void onBytesWritten(int bytes) {
+        bytesWritten.addAndGet(bytes);
+    }
+
+    public void onSampleFiltered() {
+        filteredSampleCount.incrementAndGet();
+    }
+
+    public void onEventDropped() {
+        droppedEventCount.incrementAndGet();
+    }
+
+    /**
+     * 记录一次锁竞争推测,获取所有线程的堆栈不挂起主线程,不计入采样次数和抓取耗时
+     *
+     * @param nanos 推测耗时
+     */
+    public void onContentionProbe(long nanos) {
+        contentionProbeCount.incrementAndGet();
+        contentionProbeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * 当前线程的CPU时间,不支持时退化为墙上时间
+     */
+    public static long threadCpuNanos() {
+        long nanos = Debug.threadCpuTimeNanos();
+        return nanos >= 0 ? nanos : System.nanoTime();
+    }
+
+    /**
+     * 记录一次主线程采样在当前线程上消耗的CPU时间
+     *
+     * @param startCpuNanos 开始时在同一线程调用 {@link #threadCpuNanos()} 的返回值
+     */
+    public void onSamplerCpu(long startCpuNanos) {
+        samplerCpuNanos.addAndGet(threadCpuNanos() - startCpuNanos);
+    }
+
+    /**
+     * 主线程采样累计消耗的CPU时间
+     */
+    public long getSamplerCpuNanos() {
+        return samplerCpuNanos.get();
+    }
+
+    /**
+     * 获取统计快照
+     */
+    public MonitorStats snapshot() {
+        return new MonitorStats(sampleCount.get(), captureNanos.get(), maxCaptureNanos.get(), collectNanos.get(),
+                queueLength, reportCount.get(), outputNanos.get(), bytesWritten.get(),
+                filteredSampleCount.get(), droppedEventCount.get(), contentionProbeCount.get(), contentionProbeNanos.get());
+    }
+
+    /**
+     * 清空统计
+     */
+    public void reset() {
+        sampleCount.set(0);
+        captureNanos.set(0);
+        maxCaptureNanos.set(0);
+        collectNanos.set(0);
+        reportCount.set(0);
+        outputNanos.set(0);
+        bytesWritten.set(0);
+        filteredSampleCount.set(0);
+        droppedEventCount.set(0);
+        contentionProbeCount.set(0);
+        contentionProbeNanos.set(0);
+        samplerCpuNanos.set(0);
+    }
+}
@@ -0,0 +1,146 @@
+package com.kc.uiwatch;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监控自身开销的统计快照
+ */
+public class MonitorStats {
+
+    private final long sampleCount;
+    private final long captureNanos;
+    private final long maxCaptureNanos;
+    private final long collectNanos;
+    private final int queueLength;
+    private final long reportCount;
+    private final long outputNanos;
+    private final long bytesWritten;
+    private final long filteredSampleCount;
+    private final long droppedEventCount;
+    private final long contentionProbeCount;
+    private final long contentionProbeNanos;
+
+    public MonitorStats(long sampleCount, long captureNanos, long maxCaptureNanos, long collectNanos,
+                        int queueLength, long reportCount, long outputNanos, long bytesWritten,
+                        long filteredSampleCount, long droppedEventCount,
+                        long contentionProbeCount, long contentionProbeNanos) {
+        this.sampleCount = sampleCount;
+        this.captureNanos = captureNanos;
+        this.maxCaptureNanos = maxCaptureNanos;
+        this.collectNanos = collectNanos;
+        this.queueLength = queueLength;
+        this.reportCount = reportCount;
+        this.outputNanos = outputNanos;
+        this.bytesWritten = bytesWritten;
+        this.filteredSampleCount = filteredSampleCount;
+        this.droppedEventCount = droppedEventCount;
+        this.contentionProbeCount = contentionProbeCount;
+        this.contentionProbeNanos = contentionProbeNanos;
+    }
+
+    /**
+     * 采样次数
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 抓取主线程堆栈的总耗时,抓取期间主线程被挂起
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * 单次抓取的最长耗时
+     */
+    public long getMaxCaptureNanos() {
+        return maxCaptureNanos;
+    }
+
+    /**
+     * 单次抓取的平均耗时
+     */
+    public long getAverageCaptureNanos() {
+        return sampleCount == 0 ? 0 : captureNanos / sampleCount;
+    }
+
+    /**
+     * 收集采样(转换帧id、去重、入队)的总耗时
+     */
+    public long getCollectNanos() {
+        return collectNanos;
+    }
+
+    /**
+     * 当前队列中的采样次数
+     */
+    public int getQueueLength() {
+        return queueLength;
+    }
+
+    /**
+     * 输出的卡顿数量
+     */
+    public long getReportCount() {
+        return reportCount;
+    }
+
+    /**
+     * 输出卡顿(生成日志、打印、写文件)的总耗时
+     */
+    public long getOutputNanos() {
+        return outputNanos;
+    }
+
+    /**
+     * 写入卡顿日志文件的字节数
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * 因不包含关键词被丢弃的采样次数
+     */
+    public long getFilteredSampleCount() {
+        return filteredSampleCount;
+    }
+
+    /**
+     * 因分发队列溢出被丢弃或合并的卡顿事件数量
+     */
+    public long getDroppedEventCount() {
+        return droppedEventCount;
+    }
+
+    /**
+     * 推测锁持有者的次数
+     */
+    public long getContentionProbeCount() {
+        return contentionProbeCount;
+    }
+
+    /**
+     * 推测锁持有者(获取所有线程的堆栈)的总耗时,在采样线程上执行,不挂起主线程
+     */
+    public long getContentionProbeNanos() {
+        return contentionProbeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+                "samples:%d capture:%.2fms(avg %.1fus max %.1fus) collect:%.2fms queue:%d "
+                        + "reports:%d output:%.2fms written:%dB filtered:%d dropped:%d contention:%d(%.2fms)",
+                sampleCount, toMillis(captureNanos), getAverageCaptureNanos() / 1000f, maxCaptureNanos / 1000f,
+                toMillis(collectNanos), queueLength, reportCount, toMillis(outputNanos), bytesWritten,
+                filteredSampleCount, droppedEventCount, contentionProbeCount, toMillis(contentionProbeNanos));
+    }
+
+    private static float toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) / 1000f;
+    }
+}
@@ -0,0 +1,165 @@
+package com.kc.uiwatch;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 采样间隔的自适应调节
+ * 按 {@link MonitorCounters} 统计的主线程采样(抓取、收集、输出)在采样线程上消耗的CPU时间计算监控自身占用的CPU比例,
+ * 分发阻塞、文件等待等不占用CPU的时间和其他线程检测的开销不计入,
+ * 超出预算时放大采样间隔,远低于预算时逐步恢复到配置的间隔;
+ * 省电模式和发热状态(api>=29)会在此基础上再放大间隔,性能差的设备只会降低采样精度而不会持续付出固定的开销
+ */
+public class SamplingGovernor {
+
+    /**
+     * 重新计算间隔的周期
+     */
+    private static final long ADJUST_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 查询省电模式和发热状态的周期
+     */
+    private static final long POWER_CHECK_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * 采样间隔上限
+     */
+    static final int MAX_INTERVAL_MS = 300;
+
+    /**
+     * 单次调节最多放大的倍数
+     */
+    private static final float MAX_WIDEN_FACTOR = 2f;
+
+    /**
+     * 低于预算一半时每次缩小的比例
+     */
+    private static final float NARROW_FACTOR = 0.8f;
+
+    private final PowerManager powerManager;
+
+    /**
+     * 配置的采样间隔,调节后不会低于该值
+     */
+    private final int baseIntervalMs;
+
+    /**
+     * CPU预算,单核的比例,如0.01表示1%
+     */
+    private final float cpuBudget;
+
+    /**
+     * 按耗时调节后的间隔
+     */
+    private float governedIntervalMs;
+
+    /**
+     * 省电模式和发热状态带来的放大倍数
+     */
+    private float powerFactor = 1f;
+
+    /**
+     * 实际使用的采样间隔
+     */
+    private volatile int intervalMs;
+
+    /**
+     * 上个周期测得的CPU占用比例
+     */
+    private volatile float lastLoad = 0;
+
+    private volatile long nextAdjustNanos = 0;
+    private long nextPowerCheckNanos = 0;
+    private long lastAdjustNanos = 0;
+    private long lastCostNanos = 0;
+
+    /**
+     * @param context        用于获取PowerManager
+     * @param baseIntervalMs 配置的采样间隔
+     * @param cpuBudget      CPU预算,单核的比例
+     */
+    public SamplingGovernor(Context context, int baseIntervalMs, float cpuBudget) {
+        this.powerManager = (PowerManager) context.getApplicationContext().getSystemService(Context.POWER_SERVICE);
+        this.baseIntervalMs = baseIntervalMs;
+        this.cpuBudget = cpuBudget;
+        this.governedIntervalMs = baseIntervalMs;
+        this.intervalMs = baseIntervalMs;
+    }
+
+    /**
+     * 当前的采样间隔,每个采样周期调用,到达调节周期时重新计算
+     */
+    public int getInterval() {
+        if (System.nanoTime() - nextAdjustNanos >= 0) {
+            adjust();
+        }
+        return intervalMs;
+    }
+
+    /**
+     * 上个周期测得的监控自身CPU占用比例
+     */
+    public float getLastLoad() {
+        return lastLoad;
+    }
+
+    private synchronized void adjust() {
+        long now = System.nanoTime();
+        if (now - nextAdjustNanos < 0) {
+            return;
+        }
+        nextAdjustNanos = now + ADJUST_PERIOD_NANOS;
+        long cost = MonitorCounters.getInstance().getSamplerCpuNanos();
+        if (lastAdjustNanos != 0 && cost >= lastCostNanos) {
+            float load = (float) (cost - lastCostNanos) / (now - lastAdjustNanos);
+            lastLoad = load;
+            if (load > cpuBudget) {
+                governedIntervalMs *= Math.min(load / cpuBudget, MAX_WIDEN_FACTOR);
+            } else if (load < cpuBudget / 2) {
+                governedIntervalMs *= NARROW_FACTOR;
+            }
+            governedIntervalMs = Math.max(baseIntervalMs, Math.min(governedIntervalMs, MAX_INTERVAL_MS));
+        }
+        lastAdjustNanos = now;
+        lastCostNanos = cost;
+        if (now - nextPowerCheckNanos >= 0) {
+            nextPowerCheckNanos = now + POWER_CHECK_PERIOD_NANOS;
+            powerFactor = queryPowerFactor();
+        }
+        intervalMs = (int) Math.max(baseIntervalMs, Math.min(governedIntervalMs * powerFactor, MAX_INTERVAL_MS));
+    }
+
+    /**
+     * 省电模式放大2倍,发热按程度放大1.5到4倍
+     */
+    @SuppressLint("NewApi")
+    private float queryPowerFactor() {
+        if (powerManager == null) {
+            return 1f;
+        }
+        float factor = 1f;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && powerManager.isPowerSaveMode()) {
+                factor *= 2f;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                int status = powerManager.getCurrentThermalStatus();
+                if (status >= PowerManager.THERMAL_STATUS_CRITICAL) {
+                    factor *= 4f;
+                } else if (status >= PowerManager.THERMAL_STATUS_SEVERE) {
+                    factor *= 2f;
+                } else if (status >= PowerManager.THERMAL_STATUS_MODERATE) {
+                    factor *= 1.5f;
+                }
+            }
+        } catch (RuntimeException e) {
+            //部分设备的系统服务调用可能失败,按正常状态处理
+        }
+        return factor;
+    }
+}
@@ -0,0 +1,57 @@
+package com.kc.uiwatch;
+
+/**
+ * 一个场景期间的卡顿统计
+ */
+public class ScenarioStats {
+
+    private final String name;
+    private final long durationMs;
+    private final FrameStats frameStats;
+    private final ScenarioTracker.BlockScope blocks;
+
+    ScenarioStats(String name, long durationMs, FrameStats frameStats, ScenarioTracker.BlockScope blocks) {
+        this.name = name;
+        this.durationMs = durationMs;
+        this.frameStats = frameStats;
+        this.blocks = blocks;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 场景从开始到结束的时长
+     */
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    /**
+     * 场景期间的帧间隔统计(帧数、卡顿率、P50/P90/P99等)
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    /**
+     * 场景期间开始的卡顿次数
+     * 卡顿异步输出,结束前最后一帧的卡顿可能在结束后才计入(最多 {@link ScenarioTracker#DRAIN_MS})
+     */
+    public int getBlockCount() {
+        return blocks.getBlockCount();
+    }
+
+    /**
+     * 场景期间所有卡顿的折叠堆栈,与卡顿次数一样可能在结束后短暂更新
+     */
+    public FoldedStackAggregator getStacks() {
+        return blocks.getStacks();
+    }
+
+    @Override
+    public String toString() {
+        return "scenario:" + name + " duration:" + durationMs + " blocks:" + getBlockCount() + " " + frameStats;
+    }
+}
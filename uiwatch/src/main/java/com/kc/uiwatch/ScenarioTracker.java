@@ -0,0 +1,217 @@
+package com.kc.uiwatch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 命名场景的卡顿统计
+ * 场景可以嵌套或交叠,每个进行中的场景独立统计期间的帧间隔和卡顿。
+ * 场景槽位及其直方图在创建时分配,开始和结束场景时复用,每帧只遍历固定大小的槽位数组,不产生任何对象
+ * <p>
+ * 卡顿在检测到之后由输出线程异步输出,按卡顿开始时间是否在场景的开始和结束之间归入场景;
+ * 场景结束后在 {@link #DRAIN_MS} 内继续接收输出较晚的卡顿,结束前最后一帧的卡顿不会丢失
+ */
+public class ScenarioTracker {
+
+    /**
+     * 同时进行的场景数量上限
+     */
+    public static final int MAX_ACTIVE_SCENARIOS = 8;
+
+    /**
+     * 每个场景最多保存的不同堆栈数量
+     */
+    private static final int MAX_STACKS = 500;
+
+    /**
+     * 场景结束后继续接收卡顿的时长,覆盖从检测到输出的延迟
+     */
+    public static final int DRAIN_MS = 5000;
+
+    /**
+     * 已结束但仍在接收卡顿的场景数量上限,超出时最早结束的不再接收
+     */
+    private static final int MAX_DRAINING_SCOPES = 32;
+
+    private final Slot[] slots = new Slot[MAX_ACTIVE_SCENARIOS];
+
+    /**
+     * 接收卡顿的场景:进行中的和结束不久的,按开始顺序
+     */
+    private final List<BlockScope> scopes = new ArrayList<>();
+
+    /**
+     * 进行中的场景数量,为0时每帧直接返回
+     */
+    private volatile int activeCount = 0;
+
+    /**
+     * @param jankThresholdMs 卡顿阈值,与帧率阈值相同
+     */
+    public ScenarioTracker(int jankThresholdMs) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(jankThresholdMs);
+        }
+    }
+
+    /**
+     * 开始一个场景
+     *
+     * @param name 场景名称
+     * @return 场景id,用于结束场景;同时进行的场景超出上限时返回-1
+     */
+    public synchronized int begin(String name) {
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[i];
+            if (!slot.active) {
+                slot.start(name);
+                pruneScopes(System.currentTimeMillis());
+                scopes.add(slot.scope);
+                activeCount++;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 结束场景
+     *
+     * @param id {@link #begin(String)} 返回的id
+     * @return 场景期间的统计,id无效或已结束时返回null
+     */
+    public synchronized ScenarioStats end(int id) {
+        if (id < 0 || id >= slots.length || !slots[id].active) {
+            return null;
+        }
+        activeCount--;
+        return slots[id].finish();
+    }
+
+    /**
+     * 结束最近开始的同名场景
+     *
+     * @param name 场景名称
+     * @return 场景期间的统计,没有进行中的同名场景时返回null
+     */
+    public synchronized ScenarioStats end(String name) {
+        int latest = -1;
+        for (int i = 0; i < slots.length; i++) {
+            Slot slot = slots[i];
+            if (slot.active && slot.name.equals(name)
+                    && (latest < 0 || slot.startNanos - slots[latest].startNanos > 0)) {
+                latest = i;
+            }
+        }
+        return end(latest);
+    }
+
+    /**
+     * 记录一帧的间隔,计入所有进行中的场景,在主线程调用
+     */
+    void recordFrame(long intervalNanos) {
+        if (activeCount == 0) {
+            return;
+        }
+        for (Slot slot : slots) {
+            if (slot.active) {
+                slot.histogram.record(intervalNanos);
+            }
+        }
+    }
+
+    /**
+     * 记录一次卡顿,计入卡顿开始时间在场景开始和结束之间的场景,在输出线程调用
+     */
+    synchronized void onBlock(BlockEvent event) {
+        if (scopes.isEmpty()) {
+            return;
+        }
+        long startMillis = event.getStartTimeMillis();
+        for (BlockScope scope : scopes) {
+            if (startMillis >= scope.startMillis && startMillis <= scope.endMillis) {
+                scope.add(event);
+            }
+        }
+        pruneScopes(event.getTimeMillis());
+    }
+
+    /**
+     * 移除结束超过 {@link #DRAIN_MS} 的场景,数量超出上限时移除最早结束的
+     */
+    private void pruneScopes(long nowMillis) {
+        int draining = 0;
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            BlockScope scope = scopes.get(i);
+            if (scope.endMillis == Long.MAX_VALUE) {
+                continue;
+            }
+            if (nowMillis - scope.endMillis > DRAIN_MS || ++draining > MAX_DRAINING_SCOPES) {
+                scopes.remove(i);
+            }
+        }
+    }
+
+    /**
+     * 一个场景接收卡顿的时间范围及其卡顿统计,场景结束后仍会短暂接收输出较晚的卡顿
+     */
+    static class BlockScope {
+        final long startMillis;
+        /**
+         * 结束时间,进行中为Long.MAX_VALUE
+         */
+        volatile long endMillis = Long.MAX_VALUE;
+        private final FoldedStackAggregator stacks = new FoldedStackAggregator(MAX_STACKS);
+        private int blockCount = 0;
+
+        BlockScope(long startMillis) {
+            this.startMillis = startMillis;
+        }
+
+        synchronized void add(BlockEvent event) {
+            blockCount++;
+            stacks.add(event);
+        }
+
+        synchronized int getBlockCount() {
+            return blockCount;
+        }
+
+        FoldedStackAggregator getStacks() {
+            return stacks;
+        }
+    }
+
+    /**
+     * 一个场景槽位,直方图在槽位创建时分配并复用
+     */
+    private static class Slot {
+        final FrameHistogram histogram;
+        volatile boolean active = false;
+        String name;
+        long startNanos;
+        BlockScope scope;
+
+        Slot(int jankThresholdMs) {
+            histogram = new FrameHistogram(jankThresholdMs);
+        }
+
+        void start(String name) {
+            this.name = name;
+            startNanos = System.nanoTime();
+            //卡顿统计交给结束时的统计,每个场景单独创建
+            scope = new BlockScope(System.currentTimeMillis());
+            histogram.reset();
+            active = true;
+        }
+
+        ScenarioStats finish() {
+            active = false;
+            scope.endMillis = System.currentTimeMillis();
+            long durationMs = (System.nanoTime() - startNanos) / 1000000L;
+            ScenarioStats stats = new ScenarioStats(name, durationMs, histogram.snapshot(), scope);
+            scope = null;
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.kc.uiwatch;
+
+import java.util.List;
+
+/**
+ * 一个页面的卡顿统计快照
+ */
+public class ScreenStats {
+
+    private final String name;
+    private final FrameStats frameStats;
+    private final int blockCount;
+    private final List<BlockEvent> worstBlocks;
+    private final FoldedStackAggregator stacks;
+    private final long lastVisitMillis;
+
+    ScreenStats(String name, FrameStats frameStats, int blockCount, List<BlockEvent> worstBlocks,
+                FoldedStackAggregator stacks, long lastVisitMillis) {
+        this.name = name;
+        this.frameStats = frameStats;
+        this.blockCount = blockCount;
+        this.worstBlocks = worstBlocks;
+        this.stacks = stacks;
+        this.lastVisitMillis = lastVisitMillis;
+    }
+
+    /**
+     * 页面名称: Activity 或 Activity/Fragment
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 页面上的帧间隔统计(帧数、卡顿率、P50/P90/P99等)
+     */
+    public FrameStats getFrameStats() {
+        return frameStats;
+    }
+
+    /**
+     * 页面上的卡顿次数
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * 时长最长的几次卡顿,按时长从长到短
+     */
+    public List<BlockEvent> getWorstBlocks() {
+        return worstBlocks;
+    }
+
+    /**
+     * 页面上所有卡顿的折叠堆栈,按卡顿时长分摊权重时即为耗时最多的堆栈
+     */
+    public FoldedStackAggregator getStacks() {
+        return stacks;
+    }
+
+    /**
+     * 最近一次进入页面的时间
+     */
+    public long getLastVisitMillis() {
+        return lastVisitMillis;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("screen:").append(name).append(" \n");
+        builder.append(frameStats).append(" \n");
+        builder.append("blocks:").append(blockCount).append(" \n");
+        for (BlockEvent event : worstBlocks) {
+            StackTraceElement top = event.getSamples().isEmpty() ? null : event.getSamples().get(0).getTopFrame();
+            builder.append("worst:").append(event.getDurationMs());
+            if (top != null) {
+                builder.append(" ").append(top);
+            }
+            builder.append("\n");
+        }
+        return builder.toString();
+    }
+}
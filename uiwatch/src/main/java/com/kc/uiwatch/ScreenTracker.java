@@ -0,0 +1,260 @@
+package com.kc.uiwatch;
+
+import android.app.Activity;
+
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 按页面归因帧间隔和卡顿
+ * 当前页面为最近resume的Activity,FragmentActivity中加上最近resume的Fragment(含嵌套),
+ * 也可由 {@link #setCustomScreen(String)} 指定(如单Activity内自行管理的页面)。
+ * 每个页面保存帧间隔直方图、卡顿次数、最长的几次卡顿和折叠堆栈,
+ * 页面数量超出上限时淘汰最久没有进入的页面,内存占用有上限
+ */
+public class ScreenTracker {
+
+    /**
+     * 默认最多保存的页面数量
+     */
+    public static final int DEFAULT_MAX_SCREENS = 20;
+
+    /**
+     * 每个页面保存的最长卡顿数量
+     */
+    public static final int WORST_BLOCK_COUNT = 5;
+
+    /**
+     * 每个页面最多保存的不同堆栈数量
+     */
+    private static final int MAX_STACKS = 200;
+
+    private final int jankThresholdMs;
+
+    /**
+     * 按访问顺序的页面记录,超出上限时淘汰最早的
+     */
+    private final LinkedHashMap<String, ScreenRecord> records;
+
+    /**
+     * 当前页面,帧回调和输出线程读取
+     */
+    private volatile String currentScreen;
+
+    /**
+     * 当前页面的记录,只在主线程读写,每帧直接使用不再查找
+     */
+    private ScreenRecord currentRecord;
+
+    //------------------以下只在主线程读写------------------
+    private String activityName;
+    private String customScreen;
+    private final List<Fragment> resumedFragments = new ArrayList<>();
+    private final WeakHashMap<Activity, FragmentManager.FragmentLifecycleCallbacks> fragmentCallbacks = new WeakHashMap<>();
+
+    /**
+     * @param maxScreens      最多保存的页面数量
+     * @param jankThresholdMs 卡顿阈值,与帧率阈值相同
+     */
+    public ScreenTracker(final int maxScreens, int jankThresholdMs) {
+        this.jankThresholdMs = jankThresholdMs;
+        this.records = new LinkedHashMap<String, ScreenRecord>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ScreenRecord> eldest) {
+                return size() > maxScreens;
+            }
+        };
+    }
+
+    /**
+     * 当前页面,还没有页面时为null
+     */
+    public String getCurrentScreen() {
+        return currentScreen;
+    }
+
+    /**
+     * 指定当前页面,优先于Activity和Fragment,在主线程调用
+     *
+     * @param screen 页面名称,为null时恢复按Activity和Fragment归因
+     */
+    public void setCustomScreen(String screen) {
+        customScreen = screen;
+        updateScreen();
+    }
+
+    /**
+     * 所有页面的统计,按最近进入的顺序
+     */
+    public List<ScreenStats> snapshot() {
+        List<ScreenRecord> list;
+        synchronized (records) {
+            list = new ArrayList<>(records.values());
+        }
+        List<ScreenStats> result = new ArrayList<>(list.size());
+        for (int i = list.size() - 1; i >= 0; i--) {
+            result.add(list.get(i).snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * 页面的统计
+     *
+     * @param screen 页面名称
+     * @return 不存在或已被淘汰时为null
+     */
+    public ScreenStats getStats(String screen) {
+        ScreenRecord record;
+        synchronized (records) {
+            record = records.get(screen);
+        }
+        return record == null ? null : record.snapshot();
+    }
+
+    /**
+     * 清空所有页面的统计,当前页面保留
+     */
+    public void reset() {
+        synchronized (records) {
+            records.clear();
+        }
+        String screen = currentScreen;
+        currentRecord = screen == null ? null : getRecord(screen);
+    }
+
+    /**
+     * 记录一帧的间隔,在主线程调用
+     */
+    void recordFrame(long intervalNanos) {
+        ScreenRecord record = currentRecord;
+        if (record != null) {
+            record.histogram.record(intervalNanos);
+        }
+    }
+
+    /**
+     * 记录一次卡顿,在输出线程调用
+     */
+    void onBlock(BlockEvent event) {
+        String screen = event.getScreen();
+        if (screen != null) {
+            getRecord(screen).addBlock(event);
+        }
+    }
+
+    void onActivityResumed(Activity activity) {
+        activityName = nameOf(activity);
+        resumedFragments.clear();
+        if (activity instanceof FragmentActivity && !fragmentCallbacks.containsKey(activity)) {
+            FragmentManager.FragmentLifecycleCallbacks callbacks = new FragmentManager.FragmentLifecycleCallbacks() {
+                @Override
+                public void onFragmentResumed(FragmentManager fm, Fragment f) {
+                    resumedFragments.remove(f);
+                    resumedFragments.add(f);
+                    updateScreen();
+                }
+
+                @Override
+                public void onFragmentPaused(FragmentManager fm, Fragment f) {
+                    if (resumedFragments.remove(f)) {
+                        updateScreen();
+                    }
+                }
+            };
+            ((FragmentActivity) activity).getSupportFragmentManager().registerFragmentLifecycleCallbacks(callbacks, true);
+            fragmentCallbacks.put(activity, callbacks);
+        }
+        updateScreen();
+    }
+
+    void onActivityDestroyed(Activity activity) {
+        FragmentManager.FragmentLifecycleCallbacks callbacks = fragmentCallbacks.remove(activity);
+        if (callbacks != null) {
+            ((FragmentActivity) activity).getSupportFragmentManager().unregisterFragmentLifecycleCallbacks(callbacks);
+        }
+    }
+
+    private void updateScreen() {
+        String screen = customScreen;
+        if (screen == null && activityName != null) {
+            screen = resumedFragments.isEmpty() ? activityName
+                    : activityName + "/" + nameOf(resumedFragments.get(resumedFragments.size() - 1));
+        }
+        if (screen == null || screen.equals(currentScreen)) {
+            return;
+        }
+        currentRecord = getRecord(screen);
+        currentRecord.lastVisitMillis = System.currentTimeMillis();
+        currentScreen = screen;
+    }
+
+    private ScreenRecord getRecord(String screen) {
+        synchronized (records) {
+            ScreenRecord record = records.get(screen);
+            if (record == null) {
+                record = new ScreenRecord(screen, jankThresholdMs);
+                records.put(screen, record);
+            }
+            return record;
+        }
+    }
+
+    private static String nameOf(Object object) {
+        String name = object.getClass().getSimpleName();
+        return name.length() == 0 ? object.getClass().getName() : name;
+    }
+
+    /**
+     * 一个页面的统计
+     */
+    private static class ScreenRecord {
+        final String name;
+        final FrameHistogram histogram;
+        final FoldedStackAggregator stacks = new FoldedStackAggregator(MAX_STACKS);
+        volatile long lastVisitMillis;
+
+        /**
+         * 最长的几次卡顿,按时长从长到短
+         */
+        private final List<BlockEvent> worstBlocks = new ArrayList<>(WORST_BLOCK_COUNT + 1);
+        private int blockCount = 0;
+
+        ScreenRecord(String name, int jankThresholdMs) {
+            this.name = name;
+            this.histogram = new FrameHistogram(jankThresholdMs);
+        }
+
+        void addBlock(BlockEvent event) {
+            stacks.add(event);
+            synchronized (this) {
+                blockCount++;
+                int index = worstBlocks.size();
+                while (index > 0 && worstBlocks.get(index - 1).getDurationMs() < event.getDurationMs()) {
+                    index--;
+                }
+                if (index < WORST_BLOCK_COUNT) {
+                    worstBlocks.add(index, event);
+                    if (worstBlocks.size() > WORST_BLOCK_COUNT) {
+                        worstBlocks.remove(WORST_BLOCK_COUNT);
+                    }
+                }
+            }
+        }
+
+        ScreenStats snapshot() {
+            synchronized (this) {
+                return new ScreenStats(name, histogram.snapshot(), blockCount,
+                        Collections.unmodifiableList(new ArrayList<>(worstBlocks)), stacks, lastVisitMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.kc.uiwatch;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者单消费者的无锁int队列
+ * 生产者和消费者各自只能有一个线程,入队出队不加锁也不产生对象
+ */
+public class SpscIntQueue {
+
+    /**
+     * 队列为空时poll的返回值,因此入队的值必须非负
+     */
+    public static final int EMPTY = -1;
+
+    private final int[] buffer;
+    private final int mask;
+
+    /**
+     * 消费者读取位置
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * 生产者写入位置
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity 容量,向上取整为2的幂
+     */
+    public SpscIntQueue(int capacity) {
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * 入队,仅生产者线程调用
+     *
+     * @param value 非负的值
+     * @return 队列已满时返回false
+     */
+    public boolean offer(int value) {
+        long t = tail.get();
+        if (t - head.get() == buffer.length) {
+            return false;
+        }
+        buffer[(int) (t & mask)] = value;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * 出队,仅消费者线程调用
+     *
+     * @return 队列为空时返回 {@link #EMPTY}
+     */
+    public int poll() {
+        long h = head.get();
+        if (h == tail.get()) {
+            return EMPTY;
+        }
+        int value = buffer[(int) (h & mask)];
+        head.lazySet(h + 1);
+        return value;
+    }
+
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+}
@@ -0,0 +1,141 @@
+package com.kc.uiwatch;
+
+import java.io.IOException;
+
+/**
+ * 冷启动的采样结果
+ * 包含各阶段的时间点(相对进程启动,api<24时相对开始追踪)和启动期间主线程的折叠堆栈
+ */
+public class StartupProfile {
+
+    private final String[] phaseNames;
+    private final long[] phaseTimesMs;
+    private final int intervalMs;
+    private final int sampleCount;
+    private final boolean fromProcessStart;
+    private final boolean timeout;
+    private final FoldedStackAggregator stacks;
+
+    StartupProfile(String[] phaseNames, long[] phaseTimesMs, int intervalMs, int sampleCount,
+                   boolean fromProcessStart, boolean timeout, FoldedStackAggregator stacks) {
+        this.phaseNames = phaseNames;
+        this.phaseTimesMs = phaseTimesMs;
+        this.intervalMs = intervalMs;
+        this.sampleCount = sampleCount;
+        this.fromProcessStart = fromProcessStart;
+        this.timeout = timeout;
+        this.stacks = stacks;
+    }
+
+    /**
+     * 阶段数量,按时间顺序
+     */
+    public int getPhaseCount() {
+        return phaseNames.length;
+    }
+
+    public String getPhaseName(int index) {
+        return phaseNames[index];
+    }
+
+    /**
+     * 阶段的时间点,毫秒
+     */
+    public long getPhaseTimeMs(int index) {
+        return phaseTimesMs[index];
+    }
+
+    /**
+     * 阶段的时间点,不存在时返回-1
+     *
+     * @param name 阶段名称
+     */
+    public long getPhaseTimeMs(String name) {
+        for (int i = 0; i < phaseNames.length; i++) {
+            if (phaseNames[i].equals(name)) {
+                return phaseTimesMs[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 启动总耗时,即最后一个阶段的时间点
+     */
+    public long getTotalMs() {
+        return phaseTimesMs.length == 0 ? 0 : phaseTimesMs[phaseTimesMs.length - 1];
+    }
+
+    public int getIntervalMs() {
+        return intervalMs;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 时间点是否相对进程启动(api>=24),否则相对开始追踪
+     */
+    public boolean isFromProcessStart() {
+        return fromProcessStart;
+    }
+
+    /**
+     * 是否在首帧之前超时结束,如进程由后台服务启动
+     */
+    public boolean isTimeout() {
+        return timeout;
+    }
+
+    /**
+     * 启动期间主线程的折叠堆栈,权重为采样次数或按采样间隔估算的时长
+     */
+    public FoldedStackAggregator getStacks() {
+        return stacks;
+    }
+
+    /**
+     * 启动日志文本:各阶段的时间点和增量,之后为按采样次数加权的折叠堆栈
+     */
+    public String toText() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("startup:");
+        builder.append(getTotalMs());
+        builder.append(timeout ? " timeout" : "");
+        builder.append(" \n");
+        builder.append("interval:");
+        builder.append(intervalMs);
+        builder.append(" \n");
+        builder.append("samples:");
+        builder.append(sampleCount);
+        builder.append(" \n");
+        builder.append(" \n");
+        long last = 0;
+        for (int i = 0; i < phaseNames.length; i++) {
+            builder.append("phase:");
+            builder.append(phaseNames[i]);
+            builder.append(" ");
+            builder.append(phaseTimesMs[i]);
+            builder.append(" +");
+            builder.append(phaseTimesMs[i] - last);
+            builder.append("\n");
+            last = phaseTimesMs[i];
+        }
+        builder.append("~~~");
+        builder.append("\n");
+        try {
+            stacks.writeFolded(builder, false);
+        } catch (IOException e) {
+            //StringBuilder不会抛出
+        }
+        builder.append("~~~");
+        builder.append("\n");
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
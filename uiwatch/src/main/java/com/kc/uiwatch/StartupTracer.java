@@ -0,0 +1,238 @@
+package com.kc.uiwatch;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 冷启动追踪
+ * 在 Application.attachBaseContext 中开启,用单独的线程以较高的频率采样主线程,
+ * 直到第一个resume的Activity绘制完第一帧,期间的堆栈合并为折叠堆栈,并记录各阶段的时间点。
+ * 追踪期间开启的监听在追踪结束后才开始主线程的检测(见 UiWatcher.startWatch),两者不会同时采样
+ */
+class StartupTracer extends Thread implements Application.ActivityLifecycleCallbacks, Choreographer.FrameCallback {
+
+    /**
+     * 默认采样间隔
+     */
+    static final int DEFAULT_INTERVAL_MS = 5;
+
+    /**
+     * 一直没有Activity(如由后台服务启动)时结束追踪的时长
+     */
+    static final int MAX_TRACE_MS = 20000;
+
+    /**
+     * 队列中不同堆栈的数量,满后合并到折叠堆栈
+     */
+    private static final int QUEUE_ENTRIES = 64;
+
+    /**
+     * 追踪结束后在主线程回调
+     */
+    interface Callback {
+        void onStartupTraced(StartupProfile profile);
+    }
+
+    private final Application app;
+    private final int intervalMs;
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * 阶段的时间点,相对 baseElapsedMs
+     */
+    private final List<String> phaseNames = new ArrayList<>();
+    private final List<Long> phaseTimes = new ArrayList<>();
+    private long baseElapsedMs;
+    private boolean fromProcessStart;
+
+    private volatile boolean running = true;
+    private volatile boolean timeout = false;
+    private boolean activityCreated, activityStarted, activityResumed;
+
+    StartupTracer(Application app, int intervalMs, Callback callback) {
+        super("StartupTracer_Thread");
+        this.app = app;
+        this.intervalMs = intervalMs;
+        this.callback = callback;
+    }
+
+    /**
+     * 开始追踪,在主线程调用
+     */
+    @SuppressLint("NewApi")
+    void begin() {
+        long now = SystemClock.elapsedRealtime();
+        fromProcessStart = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N;
+        baseElapsedMs = fromProcessStart ? Process.getStartElapsedRealtime() : now;
+        mark("attach");
+        app.registerActivityLifecycleCallbacks(this);
+        start();
+    }
+
+    /**
+     * 记录一个阶段,可在任意线程调用,追踪结束后忽略
+     *
+     * @param name 阶段名称
+     */
+    synchronized void mark(String name) {
+        if (!running) {
+            return;
+        }
+        phaseNames.add(name);
+        phaseTimes.add(SystemClock.elapsedRealtime() - baseElapsedMs);
+    }
+
+    /**
+     * 结束追踪,采样线程合并剩余的采样后在主线程回调
+     */
+    private void finish() {
+        running = false;
+        app.unregisterActivityLifecycleCallbacks(this);
+        LockSupport.unpark(this);
+    }
+
+    @Override
+    public void run() {
+        Thread mainThread = Looper.getMainLooper().getThread();
+        MonitorCounters counters = MonitorCounters.getInstance();
+        FrameTable frameTable = new FrameTable();
+        LogStackQueue queue = new LogStackQueue(QUEUE_ENTRIES);
+        FoldedStackAggregator stacks = new FoldedStackAggregator();
+        int[] frameIds = new int[64];
+        int sampleCount = 0;
+        long period = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MAX_TRACE_MS);
+        long nextTick = System.nanoTime();
+        while (running) {
+            long now = System.nanoTime();
+            if (now - deadline > 0) {
+                mark("timeout");
+                timeout = true;
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        finish();
+                    }
+                });
+                break;
+            }
+            long waitNanos = nextTick - now;
+            if (waitNanos > 0) {
+                LockSupport.parkNanos(this, waitNanos);
+                continue;
+            }
+            long captureStart = System.nanoTime();
+            StackTraceElement[] stack = mainThread.getStackTrace();
+            counters.onCapture(System.nanoTime() - captureStart);
+            if (stack.length > 0) {
+                if (frameIds.length < stack.length) {
+                    frameIds = new int[stack.length * 2];
+                }
+                queue.add(frameIds, frameTable.encode(stack, frameIds));
+                sampleCount++;
+                //队列满时合并,帧字典只被队列引用,合并后可以直接清空
+                if (queue.entryCount() == QUEUE_ENTRIES) {
+                    flush(frameTable, queue, stacks);
+                }
+            }
+            nextTick += period;
+            if (nextTick - now <= 0) {
+                nextTick = now + period;
+            }
+        }
+        flush(frameTable, queue, stacks);
+        final StartupProfile profile = buildProfile(sampleCount, stacks);
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onStartupTraced(profile);
+            }
+        });
+    }
+
+    private void flush(FrameTable frameTable, LogStackQueue queue, FoldedStackAggregator stacks) {
+        stacks.add(frameTable, queue, queue.size() * intervalMs);
+        queue.clear();
+        if (frameTable.isOverflow()) {
+            frameTable.clear();
+        }
+    }
+
+    private synchronized StartupProfile buildProfile(int sampleCount, FoldedStackAggregator stacks) {
+        int size = phaseNames.size();
+        long[] times = new long[size];
+        for (int i = 0; i < size; i++) {
+            times[i] = phaseTimes.get(i);
+        }
+        return new StartupProfile(phaseNames.toArray(new String[size]), times, intervalMs, sampleCount,
+                fromProcessStart, timeout, stacks);
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mark("firstFrame");
+        //帧回调之后才执行布局和绘制,下一条消息时第一帧已绘制完成
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                mark("firstDraw");
+                finish();
+            }
+        });
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        if (!activityCreated) {
+            activityCreated = true;
+            mark("activityCreated");
+        }
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        if (!activityStarted) {
+            activityStarted = true;
+            mark("activityStarted");
+        }
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+        if (!activityResumed) {
+            activityResumed = true;
+            mark("activityResumed");
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
@@ -0,0 +1,461 @@
+package com.kc.uiwatch;
+
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Printer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 主线程之外的线程卡顿检测
+ * 所有被观察的Looper和线程共用一个采样线程,每次采样只检查各线程是否超出自己的预算(读取时间戳或线程状态),
+ * 只有超出预算的线程才会抓取堆栈,开销与卡顿的线程数相关,与观察的线程数无关。
+ * 线程恢复空闲或开始处理下一条消息时输出卡顿,长时间不恢复(如死锁)时在 {@link #FORCE_REPORT_MS} 后提前输出一次
+ * <p>
+ * Looper通过 setMessageLogging 记录每条消息的开始时间,会替换该Looper已有的Printer;
+ * 普通线程没有消息边界,以 Thread.getState() 判断是否忙碌:RUNNABLE和BLOCKED视为忙碌,
+ * WAITING和TIMED_WAITING视为空闲,连续忙碌超出预算视为卡顿,精度为采样间隔。
+ * 阻塞在native调用(socket读取、binder、epoll等)中的线程同样是RUNNABLE,超出预算抓取堆栈时栈顶为
+ * {@link #NATIVE_WAIT_FRAMES} 中的等待则视为空闲,之后每个预算周期才重新抓取一次堆栈确认
+ */
+public class ThreadWatcher {
+
+    /**
+     * 卡顿一直不结束时提前输出的时长
+     */
+    public static final int FORCE_REPORT_MS = 5000;
+
+    /**
+     * 线程空闲等待的native调用(类名.方法名),处于其中时虽然是RUNNABLE但不是卡顿
+     */
+    private static final Set<String> NATIVE_WAIT_FRAMES = new HashSet<>(Arrays.asList(
+            "android.os.MessageQueue.nativePollOnce",
+            "android.os.BinderProxy.transactNative",
+            "java.net.SocketInputStream.socketRead0",
+            "java.net.PlainSocketImpl.socketAccept",
+            "libcore.io.Linux.recvfrom",
+            "libcore.io.Linux.poll",
+            "libcore.io.Linux.accept",
+            "libcore.io.Posix.recvfrom",
+            "libcore.io.Posix.poll",
+            "libcore.io.Posix.accept",
+            "sun.nio.ch.EPollArrayWrapper.epollWait",
+            "sun.nio.ch.EPoll.wait",
+            "com.android.org.conscrypt.NativeCrypto.SSL_read"
+    ));
+
+    private static volatile ThreadWatcher instance;
+
+    /**
+     * 被观察的线程,可在任意线程增删
+     */
+    private final CopyOnWriteArrayList<Target> targets = new CopyOnWriteArrayList<>();
+
+    private HandlerThread watcherThread;
+    private Handler watcherHandler;
+
+    /**
+     * 最近一次创建的采样线程,停止后仍保留,用于下次开始时等待其退出
+     */
+    private HandlerThread lastThread;
+
+    /**
+     * 线程卡顿的日志文件,与主线程的日志分开保存,首次保存时创建,只在采样线程读写
+     */
+    private MappedBlockLog blockLog;
+    private String blockLogPath;
+    private boolean blockLogFailed = false;
+
+    /**
+     * 二进制格式的写入
+     */
+    private BlockRecordWriter blockRecordWriter;
+
+    private final Runnable tickRunnable = new Runnable() {
+        @Override
+        public void run() {
+            tick();
+            Handler handler = watcherHandler;
+            //停止后重新开始时,旧线程上的采样不再延续到新线程
+            if (handler != null && handler.getLooper() == Looper.myLooper() && !targets.isEmpty()) {
+                handler.postDelayed(this, LogExecutor.getInstance().getDelayTime());
+            }
+        }
+    };
+
+    private ThreadWatcher() {
+    }
+
+    public static ThreadWatcher getInstance() {
+        if (instance == null) {
+            synchronized (ThreadWatcher.class) {
+                if (instance == null) {
+                    instance = new ThreadWatcher();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * 观察Looper的消息耗时
+     *
+     * @param looper   非主线程的Looper
+     * @param budgetMs 单条消息的耗时预算
+     */
+    public void watchLooper(Looper looper, int budgetMs) {
+        if (looper == Looper.getMainLooper()) {
+            throw new IllegalArgumentException("主线程Looper请使用帧间隔或消息耗时检测！");
+        }
+        Target target = new Target(looper.getThread(), looper, budgetMs);
+        addTarget(target);
+        looper.setMessageLogging(target);
+    }
+
+    /**
+     * 观察普通线程的连续忙碌时长
+     *
+     * @param thread   线程
+     * @param budgetMs 连续忙碌的预算
+     */
+    public void watchThread(Thread thread, int budgetMs) {
+        if (thread == Looper.getMainLooper().getThread()) {
+            throw new IllegalArgumentException("主线程请使用帧间隔或消息耗时检测！");
+        }
+        addTarget(new Target(thread, null, budgetMs));
+    }
+
+    /**
+     * 停止观察线程,Looper会同时注销Printer
+     *
+     * @param thread 线程
+     */
+    public void unwatch(Thread thread) {
+        for (Target target : targets) {
+            if (target.thread == thread) {
+                removeTarget(target);
+            }
+        }
+    }
+
+    /**
+     * 开启采样线程,没有观察的线程时不采样
+     */
+    public synchronized void start() {
+        if (watcherThread != null) {
+            return;
+        }
+        watcherThread = new HandlerThread("ThreadWatcher_Thread");
+        watcherThread.start();
+        watcherHandler = new Handler(watcherThread.getLooper());
+        //上次停止的线程可能还在关闭日志文件和重置卡顿状态,新线程等它退出后才开始采样
+        final HandlerThread previous = lastThread;
+        lastThread = watcherThread;
+        if (previous != null) {
+            watcherHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        previous.join();
+                    } catch (InterruptedException e) {
+                    }
+                }
+            });
+        }
+        scheduleTick();
+    }
+
+    /**
+     * 关闭采样线程,已观察的线程保留,下次开启时继续观察
+     * 不等待采样线程退出,下次开启的线程在其退出后才开始采样
+     */
+    public synchronized void stop() {
+        if (watcherHandler != null) {
+            watcherHandler.removeCallbacksAndMessages(null);
+            watcherHandler = null;
+        }
+        if (watcherThread != null) {
+            //在采样线程上关闭日志文件并重置卡顿状态
+            final HandlerThread thread = watcherThread;
+            new Handler(thread.getLooper()).post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Target target : targets) {
+                        target.reset();
+                    }
+                    closeBlockLog();
+                    thread.quit();
+                }
+            });
+            watcherThread = null;
+        }
+    }
+
+    private void addTarget(Target target) {
+        if (target.budgetNanos <= 0) {
+            throw new IllegalArgumentException("budgetMs 必须大于0！");
+        }
+        unwatch(target.thread);
+        targets.add(target);
+        scheduleTick();
+    }
+
+    private void removeTarget(Target target) {
+        targets.remove(target);
+        if (target.looper != null) {
+            target.looper.setMessageLogging(null);
+        }
+    }
+
+    private synchronized void scheduleTick() {
+        if (watcherHandler != null && !targets.isEmpty()) {
+            watcherHandler.removeCallbacks(tickRunnable);
+            watcherHandler.post(tickRunnable);
+        }
+    }
+
+    /**
+     * 一次采样,在采样线程执行
+     */
+    private void tick() {
+        long now = System.nanoTime();
+        for (Target target : targets) {
+            if (target.thread.getState() == Thread.State.TERMINATED) {
+                //线程已结束(Looper已退出),输出未结束的卡顿后移除
+                target.finishStall(now);
+                removeTarget(target);
+                continue;
+            }
+            long busySince = target.getBusySince(now);
+            if (target.stallStartNanos != 0 && busySince != target.stallStartNanos) {
+                //上一次卡顿已结束
+                target.finishStall(now);
+            }
+            //已提前输出的卡顿不再采样,直到线程恢复
+            if (busySince != 0 && now - busySince > target.budgetNanos && !target.stallReported) {
+                if (!target.sample(busySince, now)) {
+                    //阻塞在native等待中,实际空闲
+                    target.finishStall(now);
+                    continue;
+                }
+                if (now - busySince > TimeUnit.MILLISECONDS.toNanos(FORCE_REPORT_MS)) {
+                    target.report(now);
+                    target.stallReported = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 输出一次线程卡顿:打印、回调并保存文本,与主线程的卡顿使用相同的配置
+     */
+    private void deliver(BlockEvent event, FrameTable frameTable, LogStackQueue stackQueue) {
+        LogExecutor executor = LogExecutor.getInstance();
+        BlockEventDispatcher dispatcher = executor.getEventDispatcher();
+        if (dispatcher != null) {
+            dispatcher.dispatch(event);
+        }
+        if (executor.isPrintLog()) {
+            LogUtils.printLog(executor.getTag(), event.toText());
+        }
+        if (executor.isNeedCacheToFile()) {
+            saveToFile(executor, event, frameTable, stackQueue);
+        }
+    }
+
+    /**
+     * 按主线程日志的文件格式保存
+     */
+    private void saveToFile(LogExecutor executor, BlockEvent event, FrameTable frameTable, LogStackQueue stackQueue) {
+        boolean binary = executor.getCacheFormat() == UiWatcher.FORMAT_BINARY;
+        String rootFolderPath = Environment.getExternalStorageDirectory() + "/" + executor.getCacheFolder();
+        String fileName = executor.getCacheFileName() + "_threads" + (binary ? BlockRecordFormat.FILE_NAME_SUFFIX : "");
+        String path = rootFolderPath + "/" + fileName;
+        if (!path.equals(blockLogPath)) {
+            //缓存配置被修改后重新打开
+            closeBlockLog();
+            blockLogFailed = false;
+            blockLogPath = path;
+        }
+        if (blockLogFailed) {
+            return;
+        }
+        if (blockLog == null) {
+            blockLog = new MappedBlockLog(rootFolderPath, fileName, MappedBlockLog.DEFAULT_SEGMENT_SIZE);
+        }
+        try {
+            int bytes;
+            if (binary) {
+                if (blockRecordWriter == null) {
+                    blockRecordWriter = new BlockRecordWriter();
+                }
+                bytes = blockRecordWriter.write(blockLog, frameTable, stackQueue, event);
+            } else {
+                bytes = blockLog.write(event.toText());
+            }
+            MonitorCounters.getInstance().onBytesWritten(bytes);
+        } catch (IOException e) {
+            e.printStackTrace();
+            blockLogFailed = true;
+            closeBlockLog();
+        }
+    }
+
+    private void closeBlockLog() {
+        if (blockLog != null) {
+            blockLog.close();
+            blockLog = null;
+        }
+        //新打开的文件需要重新写入帧定义
+        blockRecordWriter = null;
+    }
+
+    /**
+     * 一个被观察的线程,卡顿状态只在采样线程读写
+     */
+    private class Target implements Printer {
+        private static final String DISPATCH_PREFIX = ">>>>> Dispatching to ";
+
+        final Thread thread;
+        final Looper looper;
+        final long budgetNanos;
+
+        /**
+         * Looper当前消息开始分发的时间,0表示空闲,由被观察的线程写入
+         */
+        private volatile long dispatchStartNanos = 0;
+
+        /**
+         * 普通线程开始忙碌的时间,0表示空闲
+         */
+        private long runningSinceNanos = 0;
+
+        /**
+         * 普通线程上次确认阻塞在native等待中的时间,0表示不在等待中
+         */
+        private long nativeWaitNanos = 0;
+
+        /**
+         * 当前卡顿的开始时间,0表示没有卡顿
+         */
+        long stallStartNanos = 0;
+        boolean stallReported = false;
+
+        /**
+         * 卡顿期间的采样,第一次卡顿时才创建
+         */
+        private FrameTable frameTable;
+        private LogStackQueue stackQueue;
+        private int[] frameIdBuffer;
+
+        Target(Thread thread, Looper looper, int budgetMs) {
+            this.thread = thread;
+            this.looper = looper;
+            this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        }
+
+        @Override
+        public void println(String x) {
+            dispatchStartNanos = x.startsWith(DISPATCH_PREFIX) ? System.nanoTime() : 0;
+        }
+
+        /**
+         * 当前忙碌的开始时间,空闲时返回0
+         */
+        long getBusySince(long now) {
+            if (looper != null) {
+                return dispatchStartNanos;
+            }
+            Thread.State state = thread.getState();
+            if (state == Thread.State.RUNNABLE && nativeWaitNanos != 0 && now - nativeWaitNanos <= budgetNanos) {
+                //上次确认在native等待中,一个预算周期内不再抓取堆栈
+                return 0;
+            }
+            if (state == Thread.State.RUNNABLE || state == Thread.State.BLOCKED) {
+                if (runningSinceNanos == 0) {
+                    runningSinceNanos = now;
+                }
+            } else {
+                runningSinceNanos = 0;
+            }
+            nativeWaitNanos = 0;
+            return runningSinceNanos;
+        }
+
+        /**
+         * 抓取一次堆栈
+         *
+         * @return 普通线程阻塞在native等待中时返回false,不计入卡顿
+         */
+        boolean sample(long busySince, long now) {
+            MonitorCounters counters = MonitorCounters.getInstance();
+            counters.beginSection("UiWatcher:capture");
+            long captureStart = System.nanoTime();
+            StackTraceElement[] stack = thread.getStackTrace();
+            Thread.State state = thread.getState();
+            counters.onCapture(System.nanoTime() - captureStart);
+            counters.endSection();
+            if (looper == null && state == Thread.State.RUNNABLE && stack.length > 0
+                    && NATIVE_WAIT_FRAMES.contains(stack[0].getClassName() + "." + stack[0].getMethodName())) {
+                runningSinceNanos = 0;
+                nativeWaitNanos = now;
+                return false;
+            }
+            stallStartNanos = busySince;
+            if (stack.length == 0) {
+                return true;
+            }
+            if (stackQueue == null) {
+                frameTable = new FrameTable();
+                stackQueue = new LogStackQueue(LogExecutor.getInstance().getCacheDataSize() + 1);
+                frameIdBuffer = new int[64];
+            }
+            if (frameIdBuffer.length < stack.length) {
+                frameIdBuffer = new int[stack.length * 2];
+            }
+            int frameCount = frameTable.encode(stack, frameIdBuffer);
+            stackQueue.add(frameIdBuffer, frameCount, state);
+            stackQueue.trim(LogExecutor.getInstance().getCacheDataSize());
+            return true;
+        }
+
+        /**
+         * 卡顿结束,未输出过时输出
+         */
+        void finishStall(long now) {
+            if (stallStartNanos != 0 && !stallReported) {
+                report(now);
+            }
+            reset();
+        }
+
+        void report(long now) {
+            if (stackQueue == null || stackQueue.isEmpty()) {
+                return;
+            }
+            int durationMs = (int) TimeUnit.NANOSECONDS.toMillis(now - stallStartNanos);
+            BlockEvent event = new BlockEvent(durationMs, LogExecutor.getInstance().getDelayTime(),
+                    System.currentTimeMillis(), 0, null, null,
+                    BlockEvent.buildSamples(frameTable, stackQueue), thread.getName(), null, null);
+            deliver(event, frameTable, stackQueue);
+        }
+
+        /**
+         * 清空卡顿状态,帧字典随卡顿一起释放
+         */
+        void reset() {
+            stallStartNanos = 0;
+            stallReported = false;
+            frameTable = null;
+            stackQueue = null;
+            frameIdBuffer = null;
+        }
+    }
+}
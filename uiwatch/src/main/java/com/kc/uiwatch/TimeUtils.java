@@ -1,22 +1,38 @@
 package com.kc.uiwatch;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Calendar;
 
 /**
  * 时间工具类,用于格式化当天的时间和获取当时的时间信息
+ * 每个线程缓存当前秒的 "yyyy-MM-dd HH:mm:ss:" 前缀,同一秒内只追加毫秒;
+ * 文件夹名按天缓存。可在多个线程同时调用,格式化时除返回的String外不分配对象
  */
 public class TimeUtils {
 
     /**
-     * 时间格式化
+     * "yyyy-MM-dd HH:mm:ss:SSS" 的长度
      */
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss:SSS");
+    private static final int TIME_LENGTH = 23;
 
     /**
-     * 时间格式化
+     * 秒前缀的长度
      */
-    private static final SimpleDateFormat DATE_FORMAT_1 = new SimpleDateFormat("yyyy-MM-dd");
+    private static final int SECOND_PREFIX_LENGTH = 20;
+
+    /**
+     * 每个线程的格式化缓存
+     */
+    private static final ThreadLocal<TimeFormatter> FORMATTER = new ThreadLocal<TimeFormatter>() {
+        @Override
+        protected TimeFormatter initialValue() {
+            return new TimeFormatter();
+        }
+    };
+
+    /**
+     * 当天的文件夹名缓存,整体替换保证线程安全
+     */
+    private static volatile DayCache dayCache;
 
     /**
      * 获取当前的时间 格式化：YYYY-MM-DD hh:mm:ss
@@ -24,7 +40,31 @@ public class TimeUtils {
      * @return 获取当前的格式化后的时间
      */
     public static String getCurrentFormatTime() {
-        return DATE_FORMAT.format(new Date());
+        return getFormatTime(System.currentTimeMillis());
+    }
+
+    /**
+     * 格式化给定的时间 格式化：YYYY-MM-DD hh:mm:ss
+     *
+     * @param timeMillis 时间戳
+     * @return 格式化后的时间
+     */
+    public static String getFormatTime(long timeMillis) {
+        TimeFormatter formatter = FORMATTER.get();
+        formatter.format(timeMillis);
+        return new String(formatter.buffer, 0, TIME_LENGTH);
+    }
+
+    /**
+     * 将格式化后的时间直接追加到builder
+     *
+     * @param builder    输出
+     * @param timeMillis 时间戳
+     */
+    public static void appendFormatTime(StringBuilder builder, long timeMillis) {
+        TimeFormatter formatter = FORMATTER.get();
+        formatter.format(timeMillis);
+        builder.append(formatter.buffer, 0, TIME_LENGTH);
     }
 
 
@@ -34,6 +74,102 @@ public class TimeUtils {
      * @return 获取当前的格式化后的时间
      */
     public static String getFileFolderNameByTime() {
-        return DATE_FORMAT_1.format(new Date());
+        return getDayCache(System.currentTimeMillis()).folderName;
+    }
+
+    /**
+     * 当天结束(次日零点)的时间戳
+     */
+    public static long getDayEndMillis() {
+        return getDayCache(System.currentTimeMillis()).dayEndMillis;
+    }
+
+    private static DayCache getDayCache(long timeMillis) {
+        DayCache cache = dayCache;
+        if (cache == null || timeMillis < cache.dayStartMillis || timeMillis >= cache.dayEndMillis) {
+            cache = new DayCache(timeMillis);
+            dayCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * 写入定长的十进制数字,不足位数时补0
+     */
+    private static void putDigits(char[] buffer, int offset, int value, int length) {
+        for (int i = offset + length - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * 单个线程的格式化缓存
+     */
+    private static class TimeFormatter {
+        final char[] buffer = new char[TIME_LENGTH];
+        final Calendar calendar = Calendar.getInstance();
+
+        /**
+         * 缓存的前缀所在秒的起止时间
+         */
+        long secondStartMillis = 1;
+        long secondEndMillis = 0;
+
+        void format(long timeMillis) {
+            if (timeMillis < secondStartMillis || timeMillis >= secondEndMillis) {
+                updateSecondPrefix(timeMillis);
+            }
+            putDigits(buffer, SECOND_PREFIX_LENGTH, (int) (timeMillis - secondStartMillis), 3);
+        }
+
+        /**
+         * 跨秒时重新生成前缀
+         */
+        private void updateSecondPrefix(long timeMillis) {
+            calendar.setTimeInMillis(timeMillis);
+            putDigits(buffer, 0, calendar.get(Calendar.YEAR), 4);
+            buffer[4] = '-';
+            putDigits(buffer, 5, calendar.get(Calendar.MONTH) + 1, 2);
+            buffer[7] = '-';
+            putDigits(buffer, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            buffer[10] = ' ';
+            putDigits(buffer, 11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+            buffer[13] = ':';
+            putDigits(buffer, 14, calendar.get(Calendar.MINUTE), 2);
+            buffer[16] = ':';
+            putDigits(buffer, 17, calendar.get(Calendar.SECOND), 2);
+            buffer[19] = ':';
+            secondStartMillis = timeMillis - calendar.get(Calendar.MILLISECOND);
+            secondEndMillis = secondStartMillis + 1000;
+        }
+    }
+
+    /**
+     * 一天的文件夹名及起止时间
+     */
+    private static class DayCache {
+        final String folderName;
+        final long dayStartMillis;
+        final long dayEndMillis;
+
+        DayCache(long timeMillis) {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(timeMillis);
+            char[] name = new char[10];
+            putDigits(name, 0, calendar.get(Calendar.YEAR), 4);
+            name[4] = '-';
+            putDigits(name, 5, calendar.get(Calendar.MONTH) + 1, 2);
+            name[7] = '-';
+            putDigits(name, 8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+            folderName = new String(name);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            dayStartMillis = calendar.getTimeInMillis();
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            dayEndMillis = calendar.getTimeInMillis();
+        }
     }
 }
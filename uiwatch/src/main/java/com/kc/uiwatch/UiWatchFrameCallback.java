@@ -10,6 +10,21 @@ import java.util.concurrent.TimeUnit;
  */
 @SuppressLint("NewApi")
 public class UiWatchFrameCallback implements Choreographer.FrameCallback {
+
+    /**
+     * 帧回调的来源,默认为Choreographer,回放测试时由脚本驱动
+     */
+    public interface FrameSource {
+        void postFrameCallback(Choreographer.FrameCallback callback);
+    }
+
+    private static final FrameSource CHOREOGRAPHER = new FrameSource() {
+        @Override
+        public void postFrameCallback(Choreographer.FrameCallback callback) {
+            Choreographer.getInstance().postFrameCallback(callback);
+        }
+    };
+
     /**
      * 上次帧率时间戳
      */
@@ -24,6 +39,56 @@ public class UiWatchFrameCallback implements Choreographer.FrameCallback {
      */
     private int minSkipFrameTime;
 
+    /**
+     * 看门狗触发比例,帧超出 minSkipFrameTime * watchdogRatio 后才开始采样,0表示持续采样
+     */
+    private float watchdogRatio = 0;
+
+    /**
+     * 看门狗开始采样的时间点至少在下一帧之后多久,避免按时到达的帧也被采样
+     */
+    private static final long WATCHDOG_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
+
+    /**
+     * 默认的帧间隔(60Hz),观察到更短的帧间隔后以观察值为准
+     */
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    /**
+     * 观察到的最短帧间隔,即屏幕刷新周期
+     */
+    private long frameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+
+    /**
+     * 同时启用的消息耗时检测,可为null
+     */
+    private LooperMessageMonitor messageMonitor;
+
+    /**
+     * 采样控制
+     */
+    private BlockSampler sampler = LogMonitor.getInstance();
+
+    /**
+     * 帧回调的来源
+     */
+    private FrameSource frameSource = CHOREOGRAPHER;
+
+    /**
+     * 帧间隔直方图,记录每一帧
+     */
+    private final FrameHistogram frameHistogram;
+
+    /**
+     * 页面归因,为null时不归因
+     */
+    private ScreenTracker screenTracker;
+
+    /**
+     * 命名场景的统计,为null时不统计
+     */
+    private ScenarioTracker scenarioTracker;
+
     /**
      * 是否退出,默认false
      */
@@ -34,7 +99,18 @@ public class UiWatchFrameCallback implements Choreographer.FrameCallback {
      * 构造方法
      */
     public UiWatchFrameCallback(int minSkipFrameTime) {
+        this(minSkipFrameTime, 0);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param watchdogRatio 看门狗触发比例,0表示持续采样
+     */
+    public UiWatchFrameCallback(int minSkipFrameTime, float watchdogRatio) {
         this.minSkipFrameTime = minSkipFrameTime;
+        this.watchdogRatio = watchdogRatio;
+        this.frameHistogram = new FrameHistogram(minSkipFrameTime);
     }
 
     @Override
@@ -43,28 +119,106 @@ public class UiWatchFrameCallback implements Choreographer.FrameCallback {
         if (pause) {
             if (lastFrameTimeNanos != 0) {
                 lastFrameTimeNanos = 0;
-                LogMonitor.getInstance().stopMonitor();
+                sampler.pauseMonitor();
             }
             return;
         }
         if (lastFrameTimeNanos == 0) {
             lastFrameTimeNanos = frameTimeNanos;
-            LogMonitor.getInstance().startMonitor();
+            sampler.startMonitor();
+        } else {
+            //记录每一帧的间隔
+            frameHistogram.record(frameTimeNanos - lastFrameTimeNanos);
+            if (frameTimeNanos - lastFrameTimeNanos < frameIntervalNanos && frameTimeNanos > lastFrameTimeNanos) {
+                frameIntervalNanos = frameTimeNanos - lastFrameTimeNanos;
+            }
+            if (screenTracker != null) {
+                screenTracker.recordFrame(frameTimeNanos - lastFrameTimeNanos);
+            }
+            if (scenarioTracker != null) {
+                scenarioTracker.recordFrame(frameTimeNanos - lastFrameTimeNanos);
+            }
         }
         //初始化当前时间,计算帧率时间差,计算跳过的帧率,超出限制输出log,并重置
         currentFrameTimeNanos = frameTimeNanos;
         long diffMs = TimeUnit.MILLISECONDS.convert(currentFrameTimeNanos - lastFrameTimeNanos, TimeUnit.NANOSECONDS);
-        if (diffMs > minSkipFrameTime) {
-            LogMonitor.getInstance().startOutputAndResetCollectionMonitor((int) diffMs);
+        if (diffMs > minSkipFrameTime && messageMonitor != null) {
+            if (messageMonitor.hasReportedSince(lastFrameTimeNanos)) {
+                //本次卡顿已由消息耗时检测输出
+                diffMs = 0;
+            } else {
+                LogExecutor.getInstance().setPendingMessageHistory(
+                        messageMonitor.snapshot(currentFrameTimeNanos - lastFrameTimeNanos, System.nanoTime()));
+            }
+        }
+        if (watchdogRatio > 0) {
+            //看门狗模式:每帧重新布置,超时后才采样
+            int skipFrame = diffMs > minSkipFrameTime ? (int) diffMs : 0;
+            sampler.armWatchdog(skipFrame, getWatchdogDelay());
+        } else if (diffMs > minSkipFrameTime) {
+            sampler.startOutputAndResetCollectionMonitor((int) diffMs);
         }
         //将当前的时间设置为last时间,用于下次计算,并重新注册
         lastFrameTimeNanos = currentFrameTimeNanos;
         //没退出的时候通知下次,否则不通知
         if (!isExit) {
-            Choreographer.getInstance().postFrameCallback(this);
+            frameSource.postFrameCallback(this);
         }
     }
 
+    /**
+     * 看门狗开始采样前的等待时间(毫秒)
+     * 取 minSkipFrameTime * watchdogRatio,但至少在下一帧之后,否则每个按时到达的帧都会先采样再丢弃
+     */
+    private long getWatchdogDelay() {
+        long delayNanos = Math.max((long) (TimeUnit.MILLISECONDS.toNanos(minSkipFrameTime) * watchdogRatio),
+                frameIntervalNanos + WATCHDOG_MARGIN_NANOS);
+        //向上取整,保证不早于下一帧
+        return TimeUnit.NANOSECONDS.toMillis(delayNanos + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+    }
+
+    /**
+     * 设置同时启用的消息耗时检测,卡顿时附带期间的消息耗时
+     */
+    public void setMessageMonitor(LooperMessageMonitor messageMonitor) {
+        this.messageMonitor = messageMonitor;
+    }
+
+    /**
+     * 设置页面归因,每一帧的间隔同时计入当前页面
+     */
+    public void setScreenTracker(ScreenTracker screenTracker) {
+        this.screenTracker = screenTracker;
+    }
+
+    /**
+     * 设置命名场景的统计,每一帧的间隔计入所有进行中的场景
+     */
+    public void setScenarioTracker(ScenarioTracker scenarioTracker) {
+        this.scenarioTracker = scenarioTracker;
+    }
+
+    /**
+     * 设置采样控制,默认为 {@link LogMonitor}
+     */
+    public void setSampler(BlockSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    /**
+     * 设置帧回调的来源,默认为Choreographer
+     */
+    public void setFrameSource(FrameSource frameSource) {
+        this.frameSource = frameSource;
+    }
+
+    /**
+     * 帧间隔直方图
+     */
+    public FrameHistogram getFrameHistogram() {
+        return frameHistogram;
+    }
+
     /**
      * 设置是否退出
      *
@@ -78,7 +232,7 @@ public class UiWatchFrameCallback implements Choreographer.FrameCallback {
     public void setPause(boolean pause) {
         this.pause = pause;
         if (!pause) {
-            Choreographer.getInstance().postFrameCallback(this);
+            frameSource.postFrameCallback(this);
         }
     }
 
@@ -9,7 +9,10 @@ import android.os.Looper;
 import android.text.TextUtils;
 import android.view.Choreographer;
 
+import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -22,6 +25,11 @@ import java.lang.ref.WeakReference;
  * 3.设置存储的堆栈数量
  * 4.设置是否开启缓存本地
  * 5.设置本地缓存文件夹地址、按照天拆分文件夹
+ * 6.可选通过主线程Looper的消息耗时检测卡顿,并输出期间每条消息的耗时
+ * 7.可观察其他Looper和线程,每个线程有各自的耗时预算
+ * 8.可追踪冷启动,输出启动各阶段耗时和主线程堆栈
+ * 9.可按页面(Activity、Fragment)归因帧间隔和卡顿
+ * 10.可统计命名场景(如一次滑动、一次页面打开)期间的帧间隔和卡顿,场景可嵌套或交叠
  * <p>
  * 注意：此工具类要求api>=16
  * 细节处理：
@@ -35,6 +43,61 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
         public void onUiBlock(String message);
     }
 
+    /**
+     * 结构化的卡顿回调,文本只在调用 {@link BlockEvent#toText()} 时生成
+     */
+    public static interface BlockEventListener {
+        public void onUiBlock(BlockEvent event);
+    }
+
+    /**
+     * 批量的卡顿回调
+     */
+    public static interface BlockBatchListener {
+        public void onUiBlocks(List<BlockEvent> events);
+    }
+
+    /**
+     * 冷启动追踪结束的回调,在主线程回调
+     */
+    public static interface StartupListener {
+        public void onStartupProfile(StartupProfile profile);
+    }
+
+    /**
+     * 卡顿检测方式:Choreographer帧间隔
+     */
+    public static final int DETECTOR_FRAME = 1;
+    /**
+     * 卡顿检测方式:主线程Looper消息耗时
+     */
+    public static final int DETECTOR_LOOPER = 2;
+    /**
+     * 卡顿检测方式:同时使用帧间隔和消息耗时
+     */
+    public static final int DETECTOR_ALL = DETECTOR_FRAME | DETECTOR_LOOPER;
+
+    /**
+     * 缓存文件格式:文本
+     */
+    public static final int FORMAT_TEXT = 0;
+    /**
+     * 缓存文件格式:二进制,可用 BlockRecordDecoder 还原为文本
+     */
+    public static final int FORMAT_BINARY = 1;
+    /**
+     * 分发队列溢出策略:丢弃最旧的事件
+     */
+    public static final int OVERFLOW_DROP_OLDEST = 0;
+    /**
+     * 分发队列溢出策略:丢弃卡顿时长最短的事件,并计入保留的事件
+     */
+    public static final int OVERFLOW_COALESCE = 1;
+    /**
+     * 分发队列溢出策略:短暂等待监听消费,超时后丢弃最旧的事件
+     */
+    public static final int OVERFLOW_BLOCK = 2;
+
 
     /**
      * 帧率阈值,默认为1(超出1帧时间视为卡顿)
@@ -62,16 +125,61 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
      */
     private String cacheFolder = "uiWatcher";
 
+    /**
+     * 缓存文件格式,默认为文本
+     */
+    private int cacheFormat = FORMAT_TEXT;
+
     /**
      * 待筛选的关键词(用于剔除不重要信息,可选,不填入则不剔除)
      */
     private String[] keyWords = null;
 
+    /**
+     * 是否使用单线程采样器(采样、聚合、输出在同一线程),默认false
+     */
+    private boolean useSingleThreadSampler = false;
+
+    /**
+     * 看门狗触发比例,帧超出 minSkipFrameTime 的该比例后才开始采样,0表示持续采样(默认)
+     */
+    private float watchdogRatio = 0;
+
+    /**
+     * 卡顿检测方式,默认为帧间隔
+     */
+    private int detector = DETECTOR_FRAME;
+
+    /**
+     * 单条消息的耗时预算,超出视为卡顿,默认与帧率阈值相同
+     */
+    private int messageBudget = 0;
+
     /**
      * 帧率回调
      */
     private UiWatchFrameCallback frameCallback;
 
+    /**
+     * 消息耗时检测
+     */
+    private LooperMessageMonitor messageMonitor;
+
+    /**
+     * 是否开启分阶段帧耗时统计(api>=24),默认false
+     */
+    private boolean useFrameMetrics = false;
+
+    /**
+     * 分阶段帧耗时统计
+     */
+    private FrameMetricsMonitor frameMetricsMonitor;
+
+    /**
+     * 当前resume的Activity,不随监听的开关注册,开始监听时用于注册已经显示的页面,只在主线程访问
+     */
+    private WeakReference<Activity> resumedActivity;
+
     /**
      * 是否观察中
      */
@@ -82,7 +190,76 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
      */
     private static volatile UiWatcher instance;
 
-    private BlockListener listener;
+    private BlockEventListener listener;
+
+    /**
+     * 批量卡顿回调
+     */
+    private BlockBatchListener batchListener;
+    private int batchSize = 1;
+    private long batchIntervalMs = 0;
+
+    /**
+     * 分发队列容量和溢出策略
+     */
+    private int deliveryCapacity = BlockEventDispatcher.DEFAULT_CAPACITY;
+    private int overflowPolicy = OVERFLOW_DROP_OLDEST;
+
+    /**
+     * 卡顿事件的分发
+     */
+    private BlockEventDispatcher eventDispatcher;
+
+    /**
+     * 是否打印卡顿日志
+     */
+    private boolean printLog = true;
+
+    /**
+     * 监控自身的CPU预算(单核的比例),0表示使用固定的采样间隔(默认)
+     */
+    private float samplingBudget = 0;
+
+    /**
+     * 是否输出自身开销的Trace区段
+     */
+    private boolean traceSections = false;
+
+    /**
+     * 页面归因最多保存的页面数量,0表示不归因(默认)
+     */
+    private int maxScreens = 0;
+
+    /**
+     * 页面归因
+     */
+    private ScreenTracker screenTracker;
+
+    /**
+     * 命名场景的统计,开启监听时创建
+     */
+    private volatile ScenarioTracker scenarioTracker;
+
+    /**
+     * 冷启动追踪,结束后为null
+     */
+    private volatile StartupTracer startupTracer;
+
+    /**
+     * 主线程的检测是否等待冷启动追踪结束后才开始,只在主线程访问
+     */
+    private boolean detectorsDeferred = false;
+
+    /**
+     * 冷启动追踪的结果
+     */
+    private StartupProfile startupProfile;
+    private StartupListener startupListener;
+
+    /**
+     * 折叠堆栈聚合,为null时不聚合
+     */
+    private FoldedStackAggregator stackAggregator;
     private Application app = null;
 
     /**
@@ -91,6 +268,7 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
     private UiWatcher(Application app) {
         mMainHandler = new Handler(Looper.getMainLooper());
         this.app = app;
+        app.registerActivityLifecycleCallbacks(new ResumedActivityTracker());
     }
 
     //-----------------对外静态方法---------------------
@@ -142,6 +320,16 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
         return this;
     }
 
+    /**
+     * 缓存文件格式
+     *
+     * @param cacheFormat {@link #FORMAT_TEXT} 或 {@link #FORMAT_BINARY}
+     */
+    public UiWatcher cacheFormat(int cacheFormat) {
+        this.cacheFormat = cacheFormat;
+        return this;
+    }
+
     /**
      * 缓存堆栈数量
      *
@@ -154,7 +342,9 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
     }
 
     /**
-     * 待筛选的关键词
+     * 待筛选的关键词,按 类名.方法名 包含匹配,如包名前缀 "com.kc."
+     * 不包含任何关键词帧的采样会被丢弃,保留的堆栈去掉最外层关键词帧之外的框架调用;
+     * 采样全部被丢弃时卡顿仍会输出和计数,只附带丢弃的次数(filtered)
      *
      * @param keyWords 关键词
      */
@@ -163,13 +353,390 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
         return this;
     }
 
-    public UiWatcher listen(BlockListener listener) {
+    /**
+     * 是否使用单线程采样器,开启后不再使用LogNotifier和LogExecutor的两个线程
+     *
+     * @param useSingleThreadSampler true:单线程 false:双线程
+     */
+    public UiWatcher singleThreadSampler(boolean useSingleThreadSampler) {
+        this.useSingleThreadSampler = useSingleThreadSampler;
+        return this;
+    }
+
+    /**
+     * 看门狗采样,帧按时到达时不采样,超出 minSkipFrameTime * triggerRatio 后才开始采样,到下一帧停止
+     * 等待时间至少为一个刷新周期再加4ms,比例过小时按该下限开始采样
+     *
+     * @param triggerRatio 触发比例,取值(0,1],0表示持续采样
+     */
+    public UiWatcher watchdogSampling(float triggerRatio) {
+        this.watchdogRatio = triggerRatio;
+        return this;
+    }
+
+    /**
+     * 卡顿检测方式
+     *
+     * @param detector {@link #DETECTOR_FRAME}、{@link #DETECTOR_LOOPER} 或 {@link #DETECTOR_ALL}
+     */
+    public UiWatcher detector(int detector) {
+        this.detector = detector;
+        return this;
+    }
+
+    /**
+     * 单条消息的耗时预算(仅消息耗时检测使用),默认与帧率阈值相同
+     *
+     * @param messageBudget 预算,毫秒
+     */
+    public UiWatcher messageBudget(int messageBudget) {
+        this.messageBudget = messageBudget;
+        return this;
+    }
+
+    /**
+     * 是否将所有卡顿的堆栈聚合为折叠堆栈,用于导出火焰图
+     *
+     * @param aggregate true:聚合 false:不聚合
+     */
+    public UiWatcher aggregateStacks(boolean aggregate) {
+        if (!aggregate) {
+            stackAggregator = null;
+        } else if (stackAggregator == null) {
+            stackAggregator = new FoldedStackAggregator();
+        }
+        return this;
+    }
+
+    /**
+     * 导出聚合后的折叠堆栈(collapsed格式),需先开启 {@link #aggregateStacks(boolean)}
+     *
+     * @param out              输出
+     * @param weightByDuration true:权重为分摊的卡顿时长(毫秒) false:权重为采样次数
+     */
+    public void exportFoldedStacks(Appendable out, boolean weightByDuration) throws IOException {
+        FoldedStackAggregator aggregator = stackAggregator;
+        if (aggregator != null) {
+            aggregator.writeFolded(out, weightByDuration);
+        }
+    }
+
+    /**
+     * 本次监听以来的帧间隔统计(P50/P90/P99/最大值、卡顿率、冻帧数),仅帧间隔检测时有数据
+     */
+    public FrameStats getFrameStats() {
+        UiWatchFrameCallback callback = frameCallback;
+        if (callback == null) {
+            return new FrameHistogram(minSkipFrameTime).snapshot();
+        }
+        return callback.getFrameHistogram().snapshot();
+    }
+
+    /**
+     * 折叠堆栈聚合,未开启时为null
+     */
+    public FoldedStackAggregator getStackAggregator() {
+        return stackAggregator;
+    }
+
+    /**
+     * 是否开启分阶段帧耗时统计(api>=24,低版本忽略),卡顿日志中会附带慢帧各阶段的耗时
+     *
+     * @param useFrameMetrics true:开启 false:关闭
+     */
+    public UiWatcher frameMetrics(boolean useFrameMetrics) {
+        this.useFrameMetrics = useFrameMetrics;
+        return this;
+    }
+
+    /**
+     * 分阶段帧耗时统计,未开启或系统不支持时为null
+     */
+    public FramePhaseStats getFramePhaseStats() {
+        FrameMetricsMonitor monitor = frameMetricsMonitor;
+        return monitor == null ? null : monitor.snapshot();
+    }
+
+    /**
+     * 文本格式的卡顿回调
+     *
+     * @param listener 监听
+     */
+    public UiWatcher listen(final BlockListener listener) {
+        this.listener = listener == null ? null : new BlockEventListener() {
+            @Override
+            public void onUiBlock(BlockEvent event) {
+                listener.onUiBlock(event.toText());
+            }
+        };
+        return this;
+    }
+
+    /**
+     * 结构化的卡顿回调
+     *
+     * @param listener 监听
+     */
+    public UiWatcher listenEvent(BlockEventListener listener) {
         this.listener = listener;
         return this;
     }
 
+    /**
+     * 批量的卡顿回调,积累到batchSize个或首个事件等待超出batchIntervalMs时回调
+     *
+     * @param listener        监听
+     * @param batchSize       批量数量
+     * @param batchIntervalMs 最长等待时间
+     */
+    public UiWatcher listenBatch(BlockBatchListener listener, int batchSize, long batchIntervalMs) {
+        this.batchListener = listener;
+        this.batchSize = batchSize;
+        this.batchIntervalMs = batchIntervalMs;
+        return this;
+    }
+
+    /**
+     * 卡顿回调的分发队列,监听在单独的线程回调,不影响采样
+     *
+     * @param capacity       队列容量,默认32
+     * @param overflowPolicy 队列满时的策略 {@link #OVERFLOW_DROP_OLDEST} {@link #OVERFLOW_COALESCE} {@link #OVERFLOW_BLOCK}
+     */
+    public UiWatcher deliveryQueue(int capacity, int overflowPolicy) {
+        this.deliveryCapacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        return this;
+    }
+
+    /**
+     * 按CPU预算自适应调节采样间隔,默认关闭
+     * 监控自身占用超出预算、省电模式或设备发热时放大采样间隔,最小为cacheSize中设置的间隔
+     *
+     * @param cpuBudget 单核的比例,如0.01表示1%,0表示关闭
+     */
+    public UiWatcher samplingBudget(float cpuBudget) {
+        this.samplingBudget = cpuBudget;
+        return this;
+    }
+
+    /**
+     * 是否把采样、收集、输出输出为 android.os.Trace 区段(api>=18),默认false
+     * 区段名为 UiWatcher:capture、UiWatcher:collect、UiWatcher:output,可在systrace/perfetto中与主线程对照
+     *
+     * @param traceSections 是否输出
+     */
+    public UiWatcher traceSections(boolean traceSections) {
+        this.traceSections = traceSections;
+        return this;
+    }
+
+    /**
+     * 监控自身开销的统计:采样次数、抓取主线程堆栈的耗时、收集和输出耗时、队列长度、写入字节数和丢弃数量
+     */
+    public MonitorStats getMonitorStats() {
+        return MonitorCounters.getInstance().snapshot();
+    }
+
+    /**
+     * 清空自身开销的统计
+     */
+    public void resetMonitorStats() {
+        MonitorCounters.getInstance().reset();
+    }
+
+    /**
+     * 是否在logcat中打印卡顿日志,默认打印
+     * 关闭打印且不保存文本格式时,只有需要文本的监听才会生成卡顿日志文本
+     *
+     * @param printLog 是否打印
+     */
+    public UiWatcher printLog(boolean printLog) {
+        this.printLog = printLog;
+        return this;
+    }
+
+    /**
+     * 观察其他线程的Looper,单条消息超出预算时输出卡顿,日志中附带线程名称
+     * 所有被观察的线程共用一个采样线程,只有超出预算的线程才会抓取堆栈,可在开启监听前后调用
+     *
+     * @param looper   非主线程的Looper,会替换其已有的Printer
+     * @param budgetMs 单条消息的耗时预算,毫秒
+     */
+    public UiWatcher watchLooper(Looper looper, int budgetMs) {
+        ThreadWatcher.getInstance().watchLooper(looper, budgetMs);
+        return this;
+    }
+
+    /**
+     * 观察没有Looper的线程,连续忙碌(RUNNABLE或BLOCKED)超出预算时输出卡顿
+     *
+     * @param thread   非主线程
+     * @param budgetMs 连续忙碌的预算,毫秒
+     */
+    public UiWatcher watchThread(Thread thread, int budgetMs) {
+        ThreadWatcher.getInstance().watchThread(thread, budgetMs);
+        return this;
+    }
+
+    /**
+     * 停止观察线程
+     *
+     * @param thread 线程,Looper传入 looper.getThread()
+     */
+    public UiWatcher unwatchThread(Thread thread) {
+        ThreadWatcher.getInstance().unwatch(thread);
+        return this;
+    }
+
+    /**
+     * 按页面归因帧间隔和卡顿,卡顿日志中附带页面名称
+     * 页面为最近resume的Activity,FragmentActivity中加上最近resume的Fragment,
+     * 超出数量时淘汰最久没有进入的页面
+     *
+     * @param maxScreens 最多保存的页面数量,0表示不归因(默认),建议 {@link ScreenTracker#DEFAULT_MAX_SCREENS}
+     */
+    public UiWatcher trackScreens(int maxScreens) {
+        this.maxScreens = maxScreens;
+        return this;
+    }
+
+    /**
+     * 指定当前页面,优先于Activity和Fragment,如单Activity内自行切换的页面,在主线程调用
+     *
+     * @param screen 页面名称,为null时恢复按Activity和Fragment归因
+     */
+    public void setCurrentScreen(String screen) {
+        if (screenTracker != null) {
+            screenTracker.setCustomScreen(screen);
+        }
+    }
+
+    /**
+     * 当前页面,未开启页面归因时为null
+     */
+    public String getCurrentScreen() {
+        return screenTracker == null ? null : screenTracker.getCurrentScreen();
+    }
+
+    /**
+     * 各页面的帧间隔统计、卡顿次数、最长的卡顿和折叠堆栈,按最近进入的顺序
+     */
+    public List<ScreenStats> getScreenStats() {
+        ScreenTracker tracker = screenTracker;
+        return tracker == null ? new ArrayList<ScreenStats>() : tracker.snapshot();
+    }
+
+    /**
+     * 开始一个命名场景,如 "feed_scroll"、"checkout_open",需在开启监听后调用
+     * 场景可以嵌套或交叠,每个场景只统计自身开始到结束期间的帧间隔和卡顿
+     *
+     * @param name 场景名称
+     * @return 场景id,用于 {@link #endScenario(int)};未开启监听或同时进行的场景超出
+     * {@link ScenarioTracker#MAX_ACTIVE_SCENARIOS} 时返回-1
+     */
+    public int beginScenario(String name) {
+        ScenarioTracker tracker = scenarioTracker;
+        return tracker == null ? -1 : tracker.begin(name);
+    }
+
+    /**
+     * 结束场景
+     *
+     * @param id {@link #beginScenario(String)} 返回的id
+     * @return 场景期间的帧间隔统计、卡顿次数和卡顿的折叠堆栈,id无效时返回null;
+     * 结束前刚检测到的卡顿异步输出,会在返回后才计入卡顿次数和堆栈
+     */
+    public ScenarioStats endScenario(int id) {
+        ScenarioTracker tracker = scenarioTracker;
+        return tracker == null ? null : tracker.end(id);
+    }
+
+    /**
+     * 结束最近开始的同名场景
+     *
+     * @param name 场景名称
+     * @return 场景期间的统计,没有进行中的同名场景时返回null
+     */
+    public ScenarioStats endScenario(String name) {
+        ScenarioTracker tracker = scenarioTracker;
+        return tracker == null ? null : tracker.end(name);
+    }
+
+    /**
+     * 开启冷启动追踪,需在 Application.attachBaseContext 中尽早调用,每个进程只追踪一次
+     * 以较高的频率采样主线程,直到第一个resume的Activity绘制完第一帧,之后由帧间隔检测接管。
+     * 结果包含各阶段时间点(attach、activityCreated、activityStarted、activityResumed、firstFrame、firstDraw
+     * 及 {@link #markStartupPhase(String)} 记录的阶段)和期间的折叠堆栈
+     *
+     * @param intervalMs 采样间隔,毫秒,建议5
+     */
+    public UiWatcher traceStartup(int intervalMs) {
+        if (intervalMs < 1) {
+            throw new IllegalArgumentException("intervalMs 必须大于等于1！");
+        }
+        if (startupTracer != null || startupProfile != null) {
+            return this;
+        }
+        startupTracer = new StartupTracer(app, intervalMs, new StartupTracer.Callback() {
+            @Override
+            public void onStartupTraced(StartupProfile profile) {
+                onStartupProfile(profile);
+            }
+        });
+        startupTracer.begin();
+        return this;
+    }
+
+    /**
+     * 记录一个启动阶段,如 Application.onCreate 结束、首页数据加载完成,未在追踪中时忽略
+     *
+     * @param name 阶段名称
+     */
+    public void markStartupPhase(String name) {
+        StartupTracer tracer = startupTracer;
+        if (tracer != null) {
+            tracer.mark(name);
+        }
+    }
+
+    /**
+     * 冷启动追踪结束的回调,已结束时立即回调
+     *
+     * @param listener 监听
+     */
+    public UiWatcher listenStartup(StartupListener listener) {
+        this.startupListener = listener;
+        if (listener != null && startupProfile != null) {
+            listener.onStartupProfile(startupProfile);
+        }
+        return this;
+    }
+
+    /**
+     * 冷启动追踪的结果,未开启或未结束时为null
+     */
+    public StartupProfile getStartupProfile() {
+        return startupProfile;
+    }
+
+    private void onStartupProfile(StartupProfile profile) {
+        startupTracer = null;
+        startupProfile = profile;
+        if (detectorsDeferred) {
+            detectorsDeferred = false;
+            startDetectors();
+        }
+        if (printLog) {
+            LogUtils.printLog(TAG, profile.toText());
+        }
+        if (startupListener != null) {
+            startupListener.onStartupProfile(profile);
+        }
+    }
+
     /**
      * 用于开启监听，必执行方法！！
+     * 冷启动追踪中时,主线程的检测在追踪结束后才开始
      */
     @SuppressLint("NewApi")
     public void startWatch() {
@@ -183,6 +750,30 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
         if (cacheDataSize < 1) {
             throw new IllegalArgumentException("cacheDataSize 必须大于等于1！");
         }
+        if ((detector & DETECTOR_ALL) == 0 || (detector & ~DETECTOR_ALL) != 0) {
+            throw new IllegalArgumentException("detector 取值不正确！");
+        }
+        if (watchdogRatio < 0 || watchdogRatio > 1) {
+            throw new IllegalArgumentException("watchdogRatio 必须在0到1之间！");
+        }
+        if (cacheFormat != FORMAT_TEXT && cacheFormat != FORMAT_BINARY) {
+            throw new IllegalArgumentException("cacheFormat 取值不正确！");
+        }
+        if (maxScreens < 0) {
+            throw new IllegalArgumentException("maxScreens 不能小于0！");
+        }
+        if (samplingBudget < 0 || samplingBudget > 1) {
+            throw new IllegalArgumentException("samplingBudget 必须在0到1之间！");
+        }
+        if (deliveryCapacity < 1) {
+            throw new IllegalArgumentException("deliveryCapacity 必须大于等于1！");
+        }
+        if (overflowPolicy < OVERFLOW_DROP_OLDEST || overflowPolicy > OVERFLOW_BLOCK) {
+            throw new IllegalArgumentException("overflowPolicy 取值不正确！");
+        }
+        if (batchListener != null && (batchSize < 1 || batchIntervalMs < 0)) {
+            throw new IllegalArgumentException("batchSize 必须大于等于1, batchIntervalMs 不能小于0！");
+        }
         if (isNeedCacheToFile) {
             if (TextUtils.isEmpty(cacheFolder)) {
                 throw new IllegalArgumentException("缓存文件夹不允许为null或者空！");
@@ -192,38 +783,145 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
         LogMonitor.getInstance().setCacheDataSize(cacheDataSize, cacheDelayTime);
         LogMonitor.getInstance().setCacheFolder(cacheFolder);
         LogMonitor.getInstance().setNeedCacheToFile(isNeedCacheToFile);
+        LogMonitor.getInstance().setCacheFormat(cacheFormat);
         LogMonitor.getInstance().setKeyWords(keyWords);
-        LogMonitor.getInstance().setListener(listener);
+        if (listener != null || batchListener != null) {
+            eventDispatcher = new BlockEventDispatcher(deliveryCapacity, overflowPolicy,
+                    listener, batchListener, batchSize, batchIntervalMs);
+            eventDispatcher.start();
+        }
+        LogMonitor.getInstance().setEventDispatcher(eventDispatcher);
+        LogMonitor.getInstance().setPrintLog(printLog);
+        MonitorCounters.getInstance().setTraceEnabled(traceSections);
+        LogMonitor.getInstance().setSamplingGovernor(samplingBudget > 0
+                ? new SamplingGovernor(app, cacheDelayTime, samplingBudget) : null);
+        LogMonitor.getInstance().setStackAggregator(stackAggregator);
+        if (maxScreens == 0) {
+            screenTracker = null;
+        } else if (screenTracker == null) {
+            screenTracker = new ScreenTracker(maxScreens, minSkipFrameTime);
+        }
+        LogMonitor.getInstance().setScreenTracker(screenTracker);
+        if (scenarioTracker == null) {
+            scenarioTracker = new ScenarioTracker(minSkipFrameTime);
+        }
+        LogMonitor.getInstance().setScenarioTracker(scenarioTracker);
         LogMonitor.getInstance().setTag(TAG);
-        //将当前回调注册到系统
-        frameCallback = new UiWatchFrameCallback(minSkipFrameTime);
-        Choreographer.getInstance().postFrameCallback(frameCallback);
+        LogMonitor.getInstance().setUseSingleThreadSampler(useSingleThreadSampler);
+        if (useFrameMetrics && FrameMetricsMonitor.isSupported()) {
+            frameMetricsMonitor = new FrameMetricsMonitor(minSkipFrameTime);
+            frameMetricsMonitor.start(resumedActivity == null ? null : resumedActivity.get());
+        }
+        LogMonitor.getInstance().setFrameMetricsMonitor(frameMetricsMonitor);
+        boolean useFrame = (detector & DETECTOR_FRAME) != 0;
+        //看门狗由帧布置,只使用消息耗时检测时持续采样
+        LogMonitor.getInstance().setWatchdogMode(useFrame && watchdogRatio > 0);
+        if ((detector & DETECTOR_LOOPER) != 0) {
+            messageMonitor = new LooperMessageMonitor(messageBudget > 0 ? messageBudget : minSkipFrameTime);
+        }
+        if (useFrame) {
+            //将当前回调注册到系统
+            frameCallback = new UiWatchFrameCallback(minSkipFrameTime, watchdogRatio);
+            //同时使用消息耗时检测时,帧间隔内已由消息检测输出的卡顿不再重复输出
+            frameCallback.setMessageMonitor(messageMonitor);
+            frameCallback.setScreenTracker(screenTracker);
+            frameCallback.setScenarioTracker(scenarioTracker);
+        }
+        //冷启动追踪以更高的频率采样主线程,结束后才开始主线程的检测,两者不会同时采样
+        detectorsDeferred = startupTracer != null;
+        if (!detectorsDeferred) {
+            startDetectors();
+        }
+        //其他线程的卡顿检测,没有观察的线程时不采样
+        ThreadWatcher.getInstance().start();
         app.unregisterActivityLifecycleCallbacks(this);
         app.registerActivityLifecycleCallbacks(this);
+        isWatching = true;
+    }
+
+    /**
+     * 开始主线程的检测
+     */
+    @SuppressLint("NewApi")
+    private void startDetectors() {
+        if (messageMonitor != null) {
+            messageMonitor.start();
+        }
+        if (frameCallback != null) {
+            Choreographer.getInstance().postFrameCallback(frameCallback);
+        } else {
+            LogMonitor.getInstance().startMonitor();
+        }
     }
 
     @SuppressLint("NewApi")
     public void stopWatch() {
+        detectorsDeferred = false;
         //关闭帧率监听
         if (frameCallback != null) {
             frameCallback.setExit(true);
             Choreographer.getInstance().removeFrameCallback(frameCallback);
             frameCallback = null;
         }
+        //关闭分阶段帧耗时统计
+        if (frameMetricsMonitor != null) {
+            LogMonitor.getInstance().setFrameMetricsMonitor(null);
+            frameMetricsMonitor.stop();
+            frameMetricsMonitor = null;
+        }
+        //关闭消息耗时检测
+        if (messageMonitor != null) {
+            messageMonitor.stop();
+            messageMonitor = null;
+        }
+        //先取消分发,停止后不再有新的卡顿事件入队
+        if (eventDispatcher != null) {
+            LogMonitor.getInstance().setEventDispatcher(null);
+        }
         //关闭日志监听以及相关的线程等资源
         LogMonitor.getInstance().stopMonitor();
+        ThreadWatcher.getInstance().stop();
+        //已入队的卡顿事件分发完后关闭分发线程
+        if (eventDispatcher != null) {
+            eventDispatcher.stop();
+            eventDispatcher = null;
+        }
         app.unregisterActivityLifecycleCallbacks(this);
         //切换当前的状态
         isWatching = false;
     }
 
 
+    /**
+     * 暂停监听,采样线程保留并空闲等待,由 {@link #resumeWatch()} 立即恢复
+     */
     public void pauseWatch() {
-        frameCallback.setPause(true);
+        //检测尚未开始
+        if (detectorsDeferred) {
+            return;
+        }
+        if (messageMonitor != null) {
+            messageMonitor.stop();
+        }
+        if (frameCallback != null) {
+            frameCallback.setPause(true);
+        } else if (messageMonitor != null) {
+            LogMonitor.getInstance().pauseMonitor();
+        }
     }
 
     public void resumeWatch() {
-        frameCallback.setPause(false);
+        if (detectorsDeferred) {
+            return;
+        }
+        if (messageMonitor != null) {
+            messageMonitor.start();
+        }
+        if (frameCallback != null) {
+            frameCallback.setPause(false);
+        } else if (messageMonitor != null) {
+            LogMonitor.getInstance().startMonitor();
+        }
     }
 
     private String getActivityHash(Activity activity) {
@@ -243,6 +941,12 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
         final String activityHash = getActivityHash(activity);
 
         mCurActivityHash = activityHash;
+        if (screenTracker != null) {
+            screenTracker.onActivityResumed(activity);
+        }
+        if (frameMetricsMonitor != null) {
+            frameMetricsMonitor.register(activity);
+        }
         final WeakReference<Activity> mActivityWeakReference = new WeakReference<>(activity);
         mMainHandler.postDelayed(mCheckRunnable = new Runnable() {
             @Override
@@ -261,6 +965,9 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
     @Override
     public void onActivityPaused(final Activity activity) {
         mIsPaused = true;
+        if (frameMetricsMonitor != null) {
+            frameMetricsMonitor.unregister(activity);
+        }
         if (mCheckRunnable != null) {
             mMainHandler.removeCallbacks(mCheckRunnable);
         }
@@ -302,6 +1009,46 @@ public class UiWatcher implements Application.ActivityLifecycleCallbacks {
         if (getActivityHash(activity).equals(mCurActivityHash)) {
             mCurActivityHash = null;
         }
+        if (screenTracker != null) {
+            screenTracker.onActivityDestroyed(activity);
+        }
     }
 
+    /**
+     * 记录当前resume的Activity
+     */
+    private class ResumedActivityTracker implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            resumedActivity = new WeakReference<>(activity);
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            if (resumedActivity != null && resumedActivity.get() == activity) {
+                resumedActivity = null;
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
 }
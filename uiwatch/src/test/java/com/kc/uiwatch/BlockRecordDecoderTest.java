@@ -0,0 +1,188 @@
+package com.kc.uiwatch;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 二进制卡顿记录写入后解码,应与 {@link BlockEvent#toText()} 完全一致
+ */
+public class BlockRecordDecoderTest {
+
+    private static final String FILE_NAME = "block_bin";
+
+    private static final StackTraceElement BIND = new StackTraceElement("com.demo.ListAdapter", "bind", "ListAdapter.java", 42);
+    private static final StackTraceElement LOCK = new StackTraceElement("com.demo.Cache", "get", "Cache.java", 17);
+    private static final StackTraceElement NATIVE = new StackTraceElement("com.demo.Jni", "call", null, -2);
+    private static final StackTraceElement LOOP = new StackTraceElement("android.os.Looper", "loop", "Looper.java", 193);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FrameTable frameTable;
+    private LogStackQueue queue;
+    private int[] frameIds;
+
+    @Before
+    public void setUp() {
+        frameTable = new FrameTable();
+        queue = new LogStackQueue(11);
+        frameIds = new int[16];
+    }
+
+    @Test
+    public void plainBlock() throws IOException {
+        add(null, BIND, LOOP);
+        add(null, BIND, LOOP);
+        add(null, NATIVE, LOOP);
+        assertRoundTrip(newEvent(120, 0, null, null, null, null));
+    }
+
+    @Test
+    public void optionalFields() throws IOException {
+        add(Thread.State.RUNNABLE, BIND, LOOP);
+        add(Thread.State.BLOCKED, LOCK, BIND, LOOP);
+        add(Thread.State.WAITING, LOCK, LOOP);
+        MessageHistory messages = new MessageHistory(new long[]{80000000L, 3000000L}, new String[]{
+                ">>>>> Dispatching to Handler (android.view.Choreographer$FrameHandler) {3f0b2c1} com.demo.Task@1a2b: 0",
+                ">>>>> Dispatching to Handler (com.demo.MainHandler) {42} null: 1"});
+        long[][] slowFrames = new long[2][FrameMetricsMonitor.PHASE_COUNT];
+        for (int phase = 0; phase < FrameMetricsMonitor.PHASE_COUNT; phase++) {
+            slowFrames[0][phase] = 1234000L * (phase + 1);
+            slowFrames[1][phase] = 567000L * phase;
+        }
+        List<LockContention> contentions = new ArrayList<>();
+        contentions.add(new LockContention(Thread.State.BLOCKED, LOCK, "worker-1", Thread.State.RUNNABLE,
+                new StackTraceElement[]{new StackTraceElement("com.demo.Cache", "put", "Cache.java", 30),
+                        new StackTraceElement("java.lang.Thread", "run", "Thread.java", 764)}, 0));
+        contentions.add(new LockContention(Thread.State.WAITING, LOCK, null, null, null, 0));
+        assertRoundTrip(newEvent(250, 3, messages, slowFrames, contentions, "MainActivity/HomeFragment"));
+    }
+
+    @Test
+    public void allSamplesFiltered() throws IOException {
+        assertRoundTrip(newEvent(90, 5, null, null, null, null));
+    }
+
+    @Test
+    public void otherThread() throws IOException {
+        add(Thread.State.RUNNABLE, BIND, LOOP);
+        BlockEvent event = new BlockEvent(300, 30, 1700000000000L, 0, null, null,
+                BlockEvent.buildSamples(frameTable, queue), "io-worker", null, null);
+        assertRoundTrip(event);
+    }
+
+    /**
+     * 同一个文件中多次卡顿共用帧定义,字典清空后的新id重新定义
+     */
+    @Test
+    public void framesSharedAndRedefined() throws IOException {
+        MappedBlockLog log = new MappedBlockLog(folder.getRoot().getPath(), FILE_NAME, MappedBlockLog.DEFAULT_SEGMENT_SIZE);
+        BlockRecordWriter writer = new BlockRecordWriter();
+        StringBuilder expected = new StringBuilder();
+
+        add(null, BIND, LOOP);
+        expected.append(write(log, writer, newEvent(100, 0, null, null, null, null)));
+        queue.clear();
+        add(Thread.State.BLOCKED, LOCK, BIND, LOOP);
+        expected.append(write(log, writer, newEvent(200, 0, null, null, null, null)));
+        queue.clear();
+        frameTable.clear();
+        add(null, NATIVE, LOOP);
+        expected.append(write(log, writer, newEvent(300, 0, null, null, null, null)));
+        log.close();
+
+        assertEquals(1, segments().size());
+        assertEquals(expected.toString(), decodeAll());
+    }
+
+    /**
+     * 分段写满后在新分段中重新写入文件头和帧定义,每个分段可以单独解码
+     */
+    @Test
+    public void segmentRotation() throws IOException {
+        MappedBlockLog log = new MappedBlockLog(folder.getRoot().getPath(), FILE_NAME, 512);
+        BlockRecordWriter writer = new BlockRecordWriter();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            queue.clear();
+            add(null, new StackTraceElement("com.demo.Page" + i, "onDraw", "Page.java", i), BIND, LOOP);
+            expected.append(write(log, writer, newEvent(100 + i, 0, null, null, null, null)));
+        }
+        log.close();
+
+        assertTrue(segments().size() > 1);
+        assertEquals(expected.toString(), decodeAll());
+    }
+
+    private void add(Thread.State state, StackTraceElement... stack) {
+        queue.add(frameIds, frameTable.encode(stack, frameIds), state);
+    }
+
+    private BlockEvent newEvent(int durationMs, int filtered, MessageHistory messages, long[][] slowFrames,
+                                List<LockContention> contentions, String screen) {
+        return new BlockEvent(durationMs, 30, 1700000000000L + durationMs, filtered, messages, slowFrames,
+                BlockEvent.buildSamples(frameTable, queue), null, contentions, screen);
+    }
+
+    private String write(MappedBlockLog log, BlockRecordWriter writer, BlockEvent event) throws IOException {
+        writer.write(log, frameTable, queue, event);
+        return event.toText();
+    }
+
+    private void assertRoundTrip(BlockEvent event) throws IOException {
+        MappedBlockLog log = new MappedBlockLog(folder.getRoot().getPath(), FILE_NAME, MappedBlockLog.DEFAULT_SEGMENT_SIZE);
+        String expected = write(log, new BlockRecordWriter(), event);
+        log.close();
+        assertEquals(expected, decodeAll());
+    }
+
+    /**
+     * 按序号解码所有分段
+     */
+    private String decodeAll() throws IOException {
+        StringBuilder out = new StringBuilder();
+        BlockRecordDecoder decoder = new BlockRecordDecoder();
+        for (File segment : segments()) {
+            decoder.decode(segment, out);
+        }
+        return out.toString();
+    }
+
+    private List<File> segments() {
+        List<File> segments = new ArrayList<>();
+        File[] days = folder.getRoot().listFiles();
+        if (days != null) {
+            for (File day : days) {
+                File[] files = day.listFiles();
+                if (files != null) {
+                    segments.addAll(Arrays.asList(files));
+                }
+            }
+        }
+        Collections.sort(segments, new Comparator<File>() {
+            @Override
+            public int compare(File left, File right) {
+                return segmentIndex(left) - segmentIndex(right);
+            }
+        });
+        return segments;
+    }
+
+    private static int segmentIndex(File segment) {
+        String name = segment.getName();
+        return Integer.parseInt(name.substring(FILE_NAME.length() + 1, name.length() - MappedBlockLog.SEGMENT_SUFFIX.length()));
+    }
+}
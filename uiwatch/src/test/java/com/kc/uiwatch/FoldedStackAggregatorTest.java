@@ -0,0 +1,89 @@
+package com.kc.uiwatch;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 折叠堆栈的合并、淘汰,以及按帧id缓存的名称在字典变化后的失效
+ */
+public class FoldedStackAggregatorTest {
+
+    private final int[] frameIds = new int[16];
+
+    @Test
+    public void sameMethodsMerge() {
+        FrameTable table = new FrameTable();
+        LogStackQueue queue = new LogStackQueue(8);
+        //行号不同的帧折叠为同一个名称
+        add(table, queue, frame("com.demo.A", 1), frame("android.os.Looper", 2));
+        add(table, queue, frame("com.demo.A", 3), frame("android.os.Looper", 2));
+        add(table, queue, frame("com.demo.B", 1), frame("android.os.Looper", 2));
+        FoldedStackAggregator aggregator = new FoldedStackAggregator();
+        aggregator.add(table, queue, 300);
+
+        assertFolded(aggregator, false, "android.os.Looper.run;com.demo.A.run 2", "android.os.Looper.run;com.demo.B.run 1");
+        assertFolded(aggregator, true, "android.os.Looper.run;com.demo.A.run 200", "android.os.Looper.run;com.demo.B.run 100");
+    }
+
+    /**
+     * 帧字典清空后相同的id对应不同的帧,不能沿用缓存的名称
+     */
+    @Test
+    public void frameTableClearDropsCache() {
+        FrameTable table = new FrameTable();
+        LogStackQueue queue = new LogStackQueue(8);
+        FoldedStackAggregator aggregator = new FoldedStackAggregator();
+        add(table, queue, frame("com.demo.A", 1));
+        aggregator.add(table, queue, 100);
+
+        table.clear();
+        queue.clear();
+        add(table, queue, frame("com.demo.B", 1));
+        aggregator.add(table, queue, 100);
+
+        assertFolded(aggregator, false, "com.demo.A.run 1", "com.demo.B.run 1");
+    }
+
+    /**
+     * 淘汰后名称字典重建,缓存失效,之后合并的堆栈仍落到保留的堆栈上
+     */
+    @Test
+    public void evictKeepsHeaviestAndRebuildsNames() {
+        FrameTable table = new FrameTable();
+        FoldedStackAggregator aggregator = new FoldedStackAggregator(2);
+        LogStackQueue queue = new LogStackQueue(8);
+        add(table, queue, frame("com.demo.Light", 1));
+        aggregator.add(table, queue, 10);
+        queue.clear();
+        add(table, queue, frame("com.demo.Heavy", 1));
+        aggregator.add(table, queue, 300);
+        queue.clear();
+        add(table, queue, frame("com.demo.Middle", 1));
+        aggregator.add(table, queue, 100);
+        assertEquals(2, aggregator.size());
+
+        queue.clear();
+        add(table, queue, frame("com.demo.Heavy", 1));
+        aggregator.add(table, queue, 300);
+
+        assertEquals(2, aggregator.size());
+        assertFolded(aggregator, true, "[other] 10", "com.demo.Heavy.run 600", "com.demo.Middle.run 100");
+    }
+
+    private void add(FrameTable table, LogStackQueue queue, StackTraceElement... stack) {
+        queue.add(frameIds, table.encode(stack, frameIds));
+    }
+
+    private static void assertFolded(FoldedStackAggregator aggregator, boolean weightByDuration, String... lines) {
+        String[] actual = aggregator.toFoldedString(weightByDuration).split("\n");
+        Arrays.sort(actual);
+        assertEquals(Arrays.asList(lines), Arrays.asList(actual));
+    }
+
+    private static StackTraceElement frame(String className, int line) {
+        return new StackTraceElement(className, "run", className.substring(className.lastIndexOf('.') + 1) + ".java", line);
+    }
+}
@@ -0,0 +1,132 @@
+package com.kc.uiwatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 帧字典的分配、扩容、清空和压缩
+ */
+public class FrameTableTest {
+
+    @Test
+    public void equalFramesShareId() {
+        FrameTable table = new FrameTable();
+        int id = table.intern(frame("com.demo.A", 1));
+        assertEquals(id, table.intern(frame("com.demo.A", 1)));
+        assertNotEquals(id, table.intern(frame("com.demo.A", 2)));
+        assertEquals(2, table.size());
+        assertEquals("com.demo.A.run(A.java:1)", table.getFrameText(id));
+    }
+
+    @Test
+    public void idsStableAcrossRehash() {
+        FrameTable table = new FrameTable();
+        int[] ids = new int[2000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = table.intern(frame("com.demo.C" + i, i));
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(i, ids[i]);
+            assertEquals(ids[i], table.intern(frame("com.demo.C" + i, i)));
+            assertEquals("com.demo.C" + i, table.getFrame(ids[i]).getClassName());
+        }
+    }
+
+    @Test
+    public void clearStartsNewGeneration() {
+        FrameTable table = new FrameTable();
+        table.intern(frame("com.demo.A", 1));
+        int generation = table.getGeneration();
+        table.clear();
+
+        assertEquals(0, table.size());
+        assertNotEquals(generation, table.getGeneration());
+        assertEquals(0, table.intern(frame("com.demo.B", 1)));
+    }
+
+    /**
+     * 压缩后队列中的id被重新映射,签名随之更新,相同堆栈仍然能合并
+     */
+    @Test
+    public void compactRemapsAndResignsQueue() {
+        FrameTable table = new FrameTable();
+        LogStackQueue queue = new LogStackQueue(8);
+        StackTraceElement[] stack = {frame("com.demo.Live", 1), frame("android.os.Looper", 2)};
+        int[] buffer = new int[8];
+        //让存活的帧分配到较大的id
+        for (int i = 0; i < FrameTable.MAX_FRAME_COUNT; i++) {
+            table.intern(frame("com.demo.Dead" + i, i));
+        }
+        queue.add(buffer, table.encode(stack, buffer), Thread.State.RUNNABLE);
+        long oldSignature = queue.get(0).getSignature();
+        int generation = table.getGeneration();
+        assertTrue(table.isOverflow());
+
+        table.compact(queue);
+
+        assertFalse(table.isOverflow());
+        assertEquals(2, table.size());
+        assertNotEquals(generation, table.getGeneration());
+        LogStackInfo info = queue.get(0);
+        assertSame(stack[0], table.getFrame(info.getFrameIds()[0]));
+        assertSame(stack[1], table.getFrame(info.getFrameIds()[1]));
+        assertNotEquals(oldSignature, info.getSignature());
+
+        //按压缩后的字典重新编码,与队列中的堆栈合并
+        queue.add(buffer, table.encode(stack, buffer), Thread.State.RUNNABLE);
+        assertEquals(1, queue.entryCount());
+        assertEquals(2, queue.get(0).getCount());
+    }
+
+    /**
+     * 压缩后仍被引用的帧较多时放大上限,避免每次采样都压缩
+     */
+    @Test
+    public void compactRaisesThresholdForLargeLiveSet() {
+        FrameTable table = new FrameTable();
+        LogStackQueue queue = new LogStackQueue(2);
+        int[] buffer = new int[FrameTable.MAX_FRAME_COUNT + 1];
+        for (int i = 0; i < buffer.length; i++) {
+            buffer[i] = table.intern(frame("com.demo.Deep" + i, i));
+        }
+        queue.add(buffer, buffer.length);
+
+        table.compact(queue);
+
+        assertEquals(buffer.length, table.size());
+        assertFalse(table.isOverflow());
+        table.intern(frame("com.demo.Extra", 1));
+        assertFalse(table.isOverflow());
+    }
+
+    /**
+     * 关键词的匹配结果按id缓存,压缩后不能沿用旧id的结果
+     */
+    @Test
+    public void compactDropsKeyWordCache() {
+        FrameTable table = new FrameTable();
+        LogStackQueue queue = new LogStackQueue(2);
+        KeyWordMatcher matcher = new KeyWordMatcher(new String[]{"com.demo.Hit"});
+        int miss = table.intern(frame("com.demo.Miss", 1));
+        int hit = table.intern(frame("com.demo.Hit", 1));
+        assertFalse(table.matchesKeyWord(miss, matcher));
+        assertTrue(table.matchesKeyWord(hit, matcher));
+        int[] buffer = {hit};
+        queue.add(buffer, 1);
+
+        table.compact(queue);
+
+        int newHit = queue.get(0).getFrameIds()[0];
+        assertEquals(0, newHit);
+        assertTrue(table.matchesKeyWord(newHit, matcher));
+    }
+
+    private static StackTraceElement frame(String className, int line) {
+        return new StackTraceElement(className, "run", className.substring(className.lastIndexOf('.') + 1) + ".java", line);
+    }
+}
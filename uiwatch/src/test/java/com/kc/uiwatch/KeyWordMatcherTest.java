@@ -0,0 +1,64 @@
+package com.kc.uiwatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 关键词自动机的匹配
+ */
+public class KeyWordMatcherTest {
+
+    @Test
+    public void overlappingKeyWords() {
+        KeyWordMatcher matcher = new KeyWordMatcher(new String[]{"she", "he", "hers"});
+        assertTrue(matcher.matches("ushers"));
+        assertTrue(matcher.matches("ahe"));
+        assertFalse(matcher.matches("hsr"));
+    }
+
+    /**
+     * 部分匹配失败后沿失配跳转继续,不会漏掉从中间开始的关键词
+     */
+    @Test
+    public void failureLinks() {
+        KeyWordMatcher matcher = new KeyWordMatcher(new String[]{"bcx", "cd"});
+        assertTrue(matcher.matches("abcd"));
+        assertFalse(matcher.matches("abcbx"));
+    }
+
+    /**
+     * 关键词是另一个关键词的后缀时,在较长关键词的路径上也能匹配
+     */
+    @Test
+    public void suffixKeyWord() {
+        KeyWordMatcher matcher = new KeyWordMatcher(new String[]{"abcd", "bc"});
+        assertTrue(matcher.matches("xabcx"));
+        assertFalse(matcher.matches("abd"));
+    }
+
+    @Test
+    public void matchesAcrossClassAndMethod() {
+        StackTraceElement frame = new StackTraceElement("com.demo.ListAdapter", "onBind", "ListAdapter.java", 42);
+        assertTrue(new KeyWordMatcher(new String[]{"Adapter.onBind"}).matches(frame));
+        assertTrue(new KeyWordMatcher(new String[]{"r.o"}).matches(frame));
+        assertTrue(new KeyWordMatcher(new String[]{"com.demo"}).matches(frame));
+        assertTrue(new KeyWordMatcher(new String[]{"onBind"}).matches(frame));
+        assertFalse(new KeyWordMatcher(new String[]{"AdapteronBind"}).matches(frame));
+        assertFalse(new KeyWordMatcher(new String[]{"java"}).matches(frame));
+    }
+
+    @Test
+    public void emptyAndNullKeyWordsIgnored() {
+        KeyWordMatcher empty = new KeyWordMatcher(new String[]{"", null});
+        assertTrue(empty.isEmpty());
+        assertFalse(empty.matches("anything"));
+        assertTrue(new KeyWordMatcher(new String[0]).isEmpty());
+
+        KeyWordMatcher matcher = new KeyWordMatcher(new String[]{null, "", "demo"});
+        assertFalse(matcher.isEmpty());
+        assertTrue(matcher.matches("com.demo"));
+        assertFalse(matcher.matches("com.other"));
+    }
+}
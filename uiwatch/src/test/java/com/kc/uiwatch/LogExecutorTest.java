@@ -0,0 +1,103 @@
+package com.kc.uiwatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 在调用线程上直接收集和输出(单线程采样模式),检查关键词筛选后输出的卡顿
+ */
+public class LogExecutorTest {
+
+    private static final StackTraceElement[] FRAMEWORK_STACK = {
+            new StackTraceElement("android.view.View", "draw", "View.java", 100),
+            new StackTraceElement("android.os.Looper", "loop", "Looper.java", 193)
+    };
+
+    private static final StackTraceElement[] APP_STACK = {
+            new StackTraceElement("android.widget.TextView", "setText", "TextView.java", 10),
+            new StackTraceElement("com.demo.ListAdapter", "bind", "ListAdapter.java", 42),
+            new StackTraceElement("android.os.Handler", "dispatchMessage", "Handler.java", 99),
+            new StackTraceElement("android.os.Looper", "loop", "Looper.java", 193)
+    };
+
+    private final List<BlockEvent> events = new ArrayList<>();
+    private LogExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = LogExecutor.getInstance();
+        executor.discardCollectedLog();
+        executor.setPrintLog(false);
+        executor.setNeedCacheToFile(false);
+        executor.setKeyWords(new String[]{"com.demo"});
+        BlockEventDispatcher dispatcher = new BlockEventDispatcher(1, UiWatcher.OVERFLOW_DROP_OLDEST, null, null, 1, 0) {
+            @Override
+            public boolean dispatch(BlockEvent event) {
+                events.add(event);
+                return true;
+            }
+        };
+        executor.setEventDispatcher(dispatcher);
+    }
+
+    @After
+    public void tearDown() {
+        executor.discardCollectedLog();
+        executor.setKeyWords(null);
+        executor.setEventDispatcher(null);
+        executor.setPrintLog(true);
+        executor.setNeedCacheToFile(true);
+    }
+
+    /**
+     * 采样全部被关键词筛掉时仍输出卡顿,只附带筛掉的次数
+     */
+    @Test
+    public void allSamplesFilteredStillReported() {
+        executor.collectStack(FRAMEWORK_STACK, Thread.State.RUNNABLE);
+        executor.collectStack(FRAMEWORK_STACK, Thread.State.RUNNABLE);
+        executor.outputBlock(120);
+
+        assertEquals(1, events.size());
+        BlockEvent event = events.get(0);
+        assertEquals(120, event.getDurationMs());
+        assertEquals(2, event.getFilteredSampleCount());
+        assertTrue(event.getSamples().isEmpty());
+        assertTrue(event.toText().contains("filtered:2 \n"));
+    }
+
+    @Test
+    public void nothingCollectedNotReported() {
+        executor.outputBlock(120);
+        assertTrue(events.isEmpty());
+    }
+
+    /**
+     * 筛选后只保留到最外层关键词帧为止,筛掉的次数在输出或丢弃后清零
+     */
+    @Test
+    public void keyWordFramesTrimmed() {
+        executor.collectStack(FRAMEWORK_STACK, Thread.State.RUNNABLE);
+        executor.collectStack(APP_STACK, Thread.State.RUNNABLE);
+        executor.outputBlock(200);
+
+        BlockEvent event = events.get(0);
+        assertEquals(1, event.getFilteredSampleCount());
+        assertEquals(1, event.getSamples().size());
+        StackTraceElement[] frames = event.getSamples().get(0).getFrames();
+        assertEquals(2, frames.length);
+        assertEquals(APP_STACK[1], frames[1]);
+
+        executor.collectStack(FRAMEWORK_STACK, Thread.State.RUNNABLE);
+        executor.discardCollectedLog();
+        executor.outputBlock(200);
+        assertEquals(1, events.size());
+    }
+}
@@ -0,0 +1,130 @@
+package com.kc.uiwatch;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 堆栈队列的合并、覆盖、裁剪和容量调整
+ */
+public class LogStackQueueTest {
+
+    private static final int[] A = {1, 2, 3};
+    private static final int[] B = {4, 2, 3};
+    private static final int[] C = {5, 3};
+
+    @Test
+    public void nonAdjacentDuplicatesMerge() {
+        LogStackQueue queue = new LogStackQueue(8);
+        queue.add(A, A.length, Thread.State.BLOCKED);
+        queue.add(B, B.length, null);
+        queue.add(A, A.length, Thread.State.RUNNABLE);
+
+        assertEquals(2, queue.entryCount());
+        assertEquals(3, queue.size());
+        assertStack(queue.get(0), A, 2);
+        assertStack(queue.get(1), B, 1);
+        //相同堆栈保留首次采样的状态
+        assertEquals(Thread.State.BLOCKED, queue.get(0).getState());
+    }
+
+    @Test
+    public void prefixIsNotSameStack() {
+        LogStackQueue queue = new LogStackQueue(8);
+        int[] buffer = {1, 2, 3, 9};
+        queue.add(buffer, 4);
+        //缓冲区复用时只比较有效的帧
+        queue.add(buffer, 3);
+        queue.add(A, A.length);
+
+        assertEquals(2, queue.entryCount());
+        assertStack(queue.get(0), buffer, 1);
+        assertStack(queue.get(1), A, 2);
+    }
+
+    @Test
+    public void fullQueueOverwritesOldest() {
+        LogStackQueue queue = new LogStackQueue(2);
+        queue.add(A, A.length);
+        queue.add(A, A.length);
+        queue.add(B, B.length);
+        queue.add(C, C.length);
+
+        assertEquals(2, queue.entryCount());
+        assertEquals(2, queue.size());
+        assertStack(queue.get(0), B, 1);
+        assertStack(queue.get(1), C, 1);
+        //被覆盖的堆栈不再参与合并
+        queue.add(A, A.length);
+        assertStack(queue.get(1), A, 1);
+    }
+
+    @Test
+    public void trimKeepsSamplesBelowLimit() {
+        LogStackQueue queue = new LogStackQueue(8);
+        for (int i = 0; i < 3; i++) {
+            queue.add(A, A.length);
+        }
+        queue.add(B, B.length);
+        queue.add(C, C.length);
+
+        queue.trim(2);
+        assertEquals(2, queue.entryCount());
+        assertEquals(2, queue.size());
+        assertStack(queue.getFirst(), B, 1);
+
+        //最后一条始终保留
+        queue.trim(0);
+        assertEquals(1, queue.entryCount());
+        assertStack(queue.getFirst(), C, 1);
+    }
+
+    @Test
+    public void clearResetsCounts() {
+        LogStackQueue queue = new LogStackQueue(3);
+        queue.add(A, A.length);
+        queue.add(B, B.length);
+        queue.add(C, C.length);
+        queue.clear();
+
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+        queue.add(C, C.length, null);
+        assertEquals(1, queue.entryCount());
+        assertStack(queue.getFirst(), C, 1);
+        assertNull(queue.getFirst().getState());
+    }
+
+    @Test
+    public void setCapacityKeepsNewest() {
+        LogStackQueue queue = new LogStackQueue(3);
+        queue.add(A, A.length);
+        queue.add(B, B.length);
+        queue.add(C, C.length);
+        queue.add(C, C.length);
+        //环形缓冲区回绕后调整
+        queue.removeFirst();
+        queue.add(A, A.length);
+
+        queue.setCapacity(2);
+        assertEquals(2, queue.entryCount());
+        assertEquals(3, queue.size());
+        assertStack(queue.get(0), C, 2);
+        assertStack(queue.get(1), A, 1);
+
+        queue.setCapacity(4);
+        queue.add(B, B.length);
+        queue.add(C, C.length);
+        assertEquals(3, queue.entryCount());
+        assertStack(queue.get(0), C, 3);
+        assertStack(queue.get(2), B, 1);
+    }
+
+    private static void assertStack(LogStackInfo info, int[] frameIds, int count) {
+        assertEquals(count, info.getCount());
+        assertTrue(info.isSameStack(frameIds, frameIds.length));
+        assertEquals(LogStackInfo.computeSignature(frameIds, frameIds.length), info.getSignature());
+    }
+}